@@ -60,6 +60,7 @@ public class SVNAdmin extends AbstractSVNLauncher {
         AbstractSVNCommand.registerCommand(new SVNAdminSetUUIDCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminHotCopyCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminPackCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildPathHistoryCommand());
     }
 
     protected void registerOptions() {
@@ -208,14 +208,10 @@ public class DAVMergeHandler extends ServletDAVHandler {
         String clientOptions = sourceResource.getClientOptions(); 
         if (clientOptions != null) {
             if (clientOptions.indexOf(DAVLockInfoProvider.RELEASE_LOCKS_OPTION) != -1 && !locks.isEmpty()) {
-                for (Iterator locksIter = locks.keySet().iterator(); locksIter.hasNext();) {
-                    String path = (String) locksIter.next();
-                    String lockToken = (String) locks.get(path);
-                    try {
-                        fsfs.unlockPath(path, lockToken, sourceResource.getUserName(), false, true);
-                    } catch (SVNException svne) {
-                        // TODO: ignore exceptions. maybe add logging
-                    }
+                try {
+                    fsfs.unlockPaths(locks, sourceResource.getUserName(), false, true, null);
+                } catch (SVNException svne) {
+                    // TODO: ignore exceptions. maybe add logging
                 }
             }
             
@@ -78,7 +78,7 @@ public class DAVReportHandler extends ServletDAVHandler {
     private OutputStream myDiffWindowWriter;
 
     private boolean myWriteTextDeltaHeader = true;
-    private boolean mySVNDiffVersion = false;
+    private int mySVNDiffVersion = 0;
     private boolean myIsUnknownReport;
 
     static {
@@ -124,11 +124,7 @@ public class DAVReportHandler extends ServletDAVHandler {
         }
     }
 
-    public boolean doCompress() {
-        return mySVNDiffVersion;
-    }
-
-    public void setSVNDiffVersion(boolean SVNDiffVersion) {
+    public void setSVNDiffVersion(int SVNDiffVersion) {
         mySVNDiffVersion = SVNDiffVersion;
     }
 
@@ -248,7 +244,7 @@ public class DAVReportHandler extends ServletDAVHandler {
             myDiffWindowWriter = new DAVBase64OutputStream(getResponseWriter());
         }
         try {
-            diffWindow.writeTo(myDiffWindowWriter, isWriteTextDeltaHeader(), doCompress());
+            diffWindow.writeTo(myDiffWindowWriter, isWriteTextDeltaHeader(), mySVNDiffVersion);
         } catch (IOException e) {
             SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.RA_DAV_REQUEST_FAILED, e), e, SVNLogType.NETWORK);
         } finally {
@@ -11,11 +11,9 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -106,10 +104,10 @@ public class SVNDeltaCombiner {
         }
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
-        if (version == 1) {
+        if (version == 1 || version == 2) {
             // decompress instructions and new data, put back to the buffer.
             try {
-                int[] lenghts = decompress(instructionsLength, dataLength);
+                int[] lenghts = decompress(version, instructionsLength, dataLength);
                 instructionsLength = lenghts[0];
                 dataLength = lenghts[1];
             } catch (IOException e) {
@@ -122,7 +120,7 @@ public class SVNDeltaCombiner {
         return window;
     }
 
-    private int[] decompress(int instructionsLength, int dataLength) throws IOException {
+    private int[] decompress(int version, int instructionsLength, int dataLength) throws IOException {
         int originalPosition = myReadWindowBuffer.position();
         int realInstructionsLength = readOffset(myReadWindowBuffer);
         byte[] instructionsData = new byte[realInstructionsLength];
@@ -133,14 +131,9 @@ public class SVNDeltaCombiner {
             System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
             myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
         } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
+            SVNDeltaCompression.decompress(version, myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedLength,
+                    instructionsData, 0, realInstructionsLength);
             myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-            int read = 0;
-            while(read < realInstructionsLength) {
-                read += is.read(instructionsData, read, realInstructionsLength - read);
-            }
         }
         if (dataLength > 0) {
             originalPosition = myReadWindowBuffer.position();
@@ -151,14 +144,9 @@ public class SVNDeltaCombiner {
                 System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
                 myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
             } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
+                SVNDeltaCompression.decompress(version, myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedLength,
+                        data, 0, realDataLength);
                 myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while(read < realDataLength) {
-                    read += is.read(data, read, realDataLength - read);
-                }
             }
         }
         myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
@@ -0,0 +1,392 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of svndiff window sections: zlib for svndiff1 and LZ4 block format for
+ * svndiff2. Deflaters and inflaters are taken from bounded pools and reset after use
+ * instead of being created for every window, instances which do not fit into a pool
+ * are ended explicitly so that their native memory is released without waiting for
+ * finalization. LZ4 is implemented here in Java.
+ *
+ * <p/>
+ * The zlib compression level is {@link Deflater#DEFAULT_COMPRESSION} by default and may be
+ * set with the <code>svnkit.svndiff.compressionLevel</code> system property, 0 stores
+ * sections uncompressed. LZ4 is much cheaper to compress and decompress, but compresses
+ * worse than zlib; with the <code>svnkit.svndiff.preferLZ4</code> system property set,
+ * svndiff2 is preferred over svndiff1 where the protocol lets the client choose.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDeltaCompression {
+
+    public static final String COMPRESSION_LEVEL_PROPERTY = "svnkit.svndiff.compressionLevel";
+    public static final String PREFER_LZ4_PROPERTY = "svnkit.svndiff.preferLZ4";
+
+    private static final int POOL_SIZE = 16;
+
+    private static final int LZ4_MIN_MATCH = 4;
+    private static final int LZ4_LAST_LITERALS = 5;
+    private static final int LZ4_MATCH_FIND_LIMIT = 12;
+    private static final int LZ4_MAX_DISTANCE = 0xFFFF;
+    private static final int LZ4_HASH_LOG = 14;
+
+    private static int ourCompressionLevel = Integer.getInteger(COMPRESSION_LEVEL_PROPERTY, Deflater.DEFAULT_COMPRESSION).intValue();
+    private static boolean ourIsLZ4Preferred = Boolean.getBoolean(PREFER_LZ4_PROPERTY);
+
+    private static final List<Deflater> ourDeflaters = new ArrayList<Deflater>();
+    private static final List<Inflater> ourInflaters = new ArrayList<Inflater>();
+    private static final List<int[]> ourHashTables = new ArrayList<int[]>();
+
+    private SVNDeltaCompression() {
+    }
+
+    public static synchronized int getCompressionLevel() {
+        return ourCompressionLevel;
+    }
+
+    public static synchronized void setCompressionLevel(int level) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("invalid compression level: " + level);
+        }
+        ourCompressionLevel = level;
+    }
+
+    public static synchronized boolean isLZ4Preferred() {
+        return ourIsLZ4Preferred;
+    }
+
+    public static synchronized void setLZ4Preferred(boolean preferred) {
+        ourIsLZ4Preferred = preferred;
+    }
+
+    /**
+     * Compresses a section of an svndiff window of the given <code>version</code>, 1 for zlib
+     * or 2 for LZ4.
+     *
+     * @return the compressed length, or -1 when the data is not to be compressed or the
+     *         compressed data does not fit into <code>dstLength</code> bytes
+     */
+    public static int compress(int version, byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) {
+        if (version == 2) {
+            return compressLZ4(src, offset, length, dst, dstOffset, dstLength);
+        }
+        return compress(src, offset, length, dst, dstOffset, dstLength);
+    }
+
+    /**
+     * Decompresses a section of an svndiff window of the given <code>version</code>, 1 for zlib
+     * or 2 for LZ4.
+     */
+    public static void decompress(int version, byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        if (version == 2) {
+            decompressLZ4(src, offset, length, dst, dstOffset, dstLength);
+        } else {
+            decompress(src, offset, length, dst, dstOffset, dstLength);
+        }
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>src</code> into <code>dst</code>
+     * starting at <code>dstOffset</code>.
+     *
+     * @return the compressed length, or -1 when compression is disabled or the compressed
+     *         data does not fit into <code>dstLength</code> bytes
+     */
+    public static int compress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) {
+        int level = getCompressionLevel();
+        if (level == Deflater.NO_COMPRESSION) {
+            return -1;
+        }
+        Deflater deflater = acquireDeflater(level);
+        try {
+            deflater.setInput(src, offset, length);
+            deflater.finish();
+            int written = 0;
+            while (!deflater.finished() && written < dstLength) {
+                written += deflater.deflate(dst, dstOffset + written, dstLength - written);
+            }
+            return deflater.finished() ? written : -1;
+        } finally {
+            release(deflater);
+        }
+    }
+
+    /**
+     * Decompresses <code>length</code> bytes of <code>src</code> into exactly
+     * <code>dstLength</code> bytes of <code>dst</code>.
+     */
+    public static void decompress(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(src, offset, length);
+            int read = 0;
+            while (read < dstLength) {
+                int r = inflater.inflate(dst, dstOffset + read, dstLength - read);
+                if (r == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Decompression of svndiff data failed: " + read + " of " + dstLength + " bytes read");
+                }
+                read += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Decompression of svndiff data failed: " + e.getMessage());
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>src</code> into an LZ4 block written
+     * to <code>dst</code> starting at <code>dstOffset</code>.
+     *
+     * @return the compressed length, or -1 when the block does not fit into
+     *         <code>dstLength</code> bytes
+     */
+    public static int compressLZ4(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) {
+        int end = offset + length;
+        int matchFindLimit = end - LZ4_MATCH_FIND_LIMIT;
+        int matchLimit = end - LZ4_LAST_LITERALS;
+        int anchor = offset;
+        int position = offset;
+        int[] writePosition = new int[] {dstOffset};
+        int dstEnd = dstOffset + dstLength;
+
+        int[] table = acquireHashTable();
+        try {
+            if (length > LZ4_MATCH_FIND_LIMIT) {
+                position++;
+                while (position < matchFindLimit) {
+                    int sequence = readInt(src, position);
+                    int slot = (sequence * -1640531535) >>> (32 - LZ4_HASH_LOG);
+                    // positions are stored relative to the offset plus one, zero means no position.
+                    int reference = table[slot] - 1 + offset;
+                    table[slot] = position - offset + 1;
+                    if (reference < offset || position - reference > LZ4_MAX_DISTANCE || readInt(src, reference) != sequence) {
+                        position++;
+                        continue;
+                    }
+                    while (position > anchor && reference > offset && src[position - 1] == src[reference - 1]) {
+                        position--;
+                        reference--;
+                    }
+                    int matchLength = LZ4_MIN_MATCH;
+                    while (position + matchLength < matchLimit && src[reference + matchLength] == src[position + matchLength]) {
+                        matchLength++;
+                    }
+                    if (!writeSequence(src, anchor, position - anchor, position - reference, matchLength, dst, writePosition, dstEnd)) {
+                        return -1;
+                    }
+                    position += matchLength;
+                    anchor = position;
+                }
+            }
+            if (!writeSequence(src, anchor, end - anchor, 0, 0, dst, writePosition, dstEnd)) {
+                return -1;
+            }
+            return writePosition[0] - dstOffset;
+        } finally {
+            release(table);
+        }
+    }
+
+    /**
+     * Decompresses an LZ4 block of <code>length</code> bytes of <code>src</code> into exactly
+     * <code>dstLength</code> bytes of <code>dst</code>.
+     */
+    public static void decompressLZ4(byte[] src, int offset, int length, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        int position = offset;
+        int end = offset + length;
+        int writePosition = dstOffset;
+        int dstEnd = dstOffset + dstLength;
+        while (position < end) {
+            int token = src[position++] & 0xFF;
+            int literalsLength = token >>> 4;
+            if (literalsLength == 15) {
+                int b;
+                do {
+                    if (position >= end) {
+                        throw createLZ4Exception();
+                    }
+                    b = src[position++] & 0xFF;
+                    literalsLength += b;
+                } while (b == 255);
+            }
+            if (literalsLength > end - position || literalsLength > dstEnd - writePosition) {
+                throw createLZ4Exception();
+            }
+            System.arraycopy(src, position, dst, writePosition, literalsLength);
+            position += literalsLength;
+            writePosition += literalsLength;
+            if (position == end) {
+                // the last sequence has literals only.
+                break;
+            }
+            if (end - position < 2) {
+                throw createLZ4Exception();
+            }
+            int distance = (src[position] & 0xFF) | ((src[position + 1] & 0xFF) << 8);
+            position += 2;
+            int matchLength = token & 0x0F;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (position >= end) {
+                        throw createLZ4Exception();
+                    }
+                    b = src[position++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += LZ4_MIN_MATCH;
+            int reference = writePosition - distance;
+            if (distance == 0 || reference < dstOffset || matchLength > dstEnd - writePosition) {
+                throw createLZ4Exception();
+            }
+            if (distance >= matchLength) {
+                System.arraycopy(dst, reference, dst, writePosition, matchLength);
+                writePosition += matchLength;
+            } else {
+                // overlapping match repeats the last bytes written.
+                for (int i = 0; i < matchLength; i++) {
+                    dst[writePosition++] = dst[reference++];
+                }
+            }
+        }
+        if (writePosition != dstEnd) {
+            throw createLZ4Exception();
+        }
+    }
+
+    private static boolean writeSequence(byte[] src, int literalsOffset, int literalsLength, int distance, int matchLength,
+                                         byte[] dst, int[] writePosition, int dstEnd) {
+        int position = writePosition[0];
+        int required = 1 + literalsLength + literalsLength / 255 + 1 + (matchLength > 0 ? 2 + (matchLength - LZ4_MIN_MATCH) / 255 + 1 : 0);
+        if (required > dstEnd - position) {
+            return false;
+        }
+        int tokenPosition = position++;
+        int token;
+        if (literalsLength >= 15) {
+            token = 15 << 4;
+            position = writeLength(dst, position, literalsLength - 15);
+        } else {
+            token = literalsLength << 4;
+        }
+        System.arraycopy(src, literalsOffset, dst, position, literalsLength);
+        position += literalsLength;
+        if (matchLength > 0) {
+            dst[position++] = (byte) distance;
+            dst[position++] = (byte) (distance >>> 8);
+            int length = matchLength - LZ4_MIN_MATCH;
+            if (length >= 15) {
+                token |= 15;
+                position = writeLength(dst, position, length - 15);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenPosition] = (byte) token;
+        writePosition[0] = position;
+        return true;
+    }
+
+    private static int writeLength(byte[] dst, int position, int length) {
+        while (length >= 255) {
+            dst[position++] = (byte) 255;
+            length -= 255;
+        }
+        dst[position++] = (byte) length;
+        return position;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    private static IOException createLZ4Exception() {
+        return new IOException("Decompression of svndiff data failed: malformed LZ4 block");
+    }
+
+    private static int[] acquireHashTable() {
+        synchronized (ourHashTables) {
+            if (!ourHashTables.isEmpty()) {
+                int[] table = ourHashTables.remove(ourHashTables.size() - 1);
+                Arrays.fill(table, 0);
+                return table;
+            }
+        }
+        return new int[1 << LZ4_HASH_LOG];
+    }
+
+    private static void release(int[] table) {
+        synchronized (ourHashTables) {
+            if (ourHashTables.size() < POOL_SIZE) {
+                ourHashTables.add(table);
+            }
+        }
+    }
+
+    private static Deflater acquireDeflater(int level) {
+        Deflater deflater = null;
+        synchronized (ourDeflaters) {
+            if (!ourDeflaters.isEmpty()) {
+                deflater = ourDeflaters.remove(ourDeflaters.size() - 1);
+            }
+        }
+        if (deflater == null) {
+            return new Deflater(level);
+        }
+        // takes effect with the first deflate() call after reset().
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    private static Inflater acquireInflater() {
+        synchronized (ourInflaters) {
+            if (!ourInflaters.isEmpty()) {
+                return ourInflaters.remove(ourInflaters.size() - 1);
+            }
+        }
+        return new Inflater();
+    }
+
+    private static void release(Deflater deflater) {
+        deflater.reset();
+        synchronized (ourDeflaters) {
+            if (ourDeflaters.size() < POOL_SIZE) {
+                ourDeflaters.add(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    private static void release(Inflater inflater) {
+        inflater.reset();
+        synchronized (ourInflaters) {
+            if (ourInflaters.size() < POOL_SIZE) {
+                ourInflaters.add(inflater);
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
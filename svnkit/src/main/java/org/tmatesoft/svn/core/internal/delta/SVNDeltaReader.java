@@ -11,13 +11,10 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -74,7 +71,7 @@ public class SVNDeltaReader {
                 return;
             }
             if (myBuffer.get(0) != 'S' || myBuffer.get(1) != 'V' || myBuffer.get(2) != 'N' ||
-                    (myBuffer.get(3) != '\0' && myBuffer.get(3) != '\1')) {
+                    (myBuffer.get(3) != '\0' && myBuffer.get(3) != '\1' && myBuffer.get(3) != '\2')) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, "Svndiff has invalid header");
                 SVNErrorManager.error(err, SVNLogType.DEFAULT);
             }
@@ -120,7 +117,7 @@ public class SVNDeltaReader {
             myLastSourceLength = sourceLength;
             SVNDiffWindow window = null;
             int allDataLength = newDataLength + instructionsLength;
-            if (myVersion == 1) {
+            if (myVersion == 1 || myVersion == 2) {
                 ByteArrayOutputStream out = new ByteArrayOutputStream();
                 int bufferPosition = myBuffer.position();
                 try {
@@ -159,22 +156,15 @@ public class SVNDeltaReader {
         int originalPosition = myBuffer.position();
         int uncompressedLength = readOffset();
         // substract offset length from the total length.
-        if (uncompressedLength == (compressedLength - (myBuffer.position() - originalPosition))) {
+        int dataLength = compressedLength - (myBuffer.position() - originalPosition);
+        if (uncompressedLength == dataLength) {
             int offset = myBuffer.arrayOffset() + myBuffer.position();
             out.write(myBuffer.array(), offset, uncompressedLength);
         } else {
             byte[] uncompressedData = new byte[uncompressedLength];
             byte[] compressed = myBuffer.array();
             int offset = myBuffer.arrayOffset() + myBuffer.position();
-            InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed, offset, compressedLength));
-            int read = 0;
-            while(read < uncompressedLength) {
-                int r = in.read(uncompressedData, read, uncompressedLength - read);
-                if (r < 0) {
-                    break;
-                }
-                read += r;
-            }
+            SVNDeltaCompression.decompress(myVersion, compressed, offset, dataLength, uncompressedData, 0, uncompressedLength);
             out.write(uncompressedData);
         }
         myBuffer.position(originalPosition + compressedLength);
@@ -11,48 +11,65 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.util.Map;
-
-import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import java.util.Arrays;
 
 /**
+ * Blocks of the source are kept in an open addressing table of checksums and
+ * positions, which is reused for all windows computed by the same instance, so
+ * that computing a delta does not allocate anything once the table is large enough.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
-    
+
     private static final int MATCH_BLOCK_SIZE = 64;
-    
+    private static final int MIN_TABLE_SIZE = 16;
+    private static final int NO_POSITION = -1;
+
+    private final PseudoAdler32 myAdler32 = new PseudoAdler32();
+    private int[] myChecksums;
+    private int[] myPositions;
+    private int myTableMask;
+
+    private int myMatchPosition;
+    private int myMatchLength;
+    private int myMatchAdvance;
+    private int myInsertionLength;
+
     public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
         if (bLength < MATCH_BLOCK_SIZE) {
             copyFromNewData(b, 0, bLength);
             return;
         }
-        PseudoAdler32 bAdler = new PseudoAdler32();
-        Map aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
+        PseudoAdler32 bAdler = myAdler32;
+        bAdler.reset();
+        createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
         bAdler.reset();
         bAdler.add(b, 0, MATCH_BLOCK_SIZE);
 
         int lo = 0;
         int size = bLength;
-        Match previousInsertion = null;
-        
+        int insertionPosition = 0;
+        myInsertionLength = 0;
+
         while(lo < size) {
-            Match match = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo, previousInsertion);
-            if (match == null) {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    previousInsertion.length++;
+            boolean found = findMatch(bAdler, a, aLength, b, bLength, lo);
+            if (!found) {
+                if (myInsertionLength > 0) {
+                    myInsertionLength++;
                 } else {
-                    previousInsertion = new Match(lo, 1);
+                    insertionPosition = lo;
+                    myInsertionLength = 1;
                 }
             } else {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-                    previousInsertion = null;
+                if (myInsertionLength > 0) {
+                    copyFromNewData(b, insertionPosition, myInsertionLength);
+                    myInsertionLength = 0;
                 }
-                copyFromSource(match.position, match.length);                
+                copyFromSource(myMatchPosition, myMatchLength);
             }
-            int advance = match != null ? match.advance : 1;
+            int advance = found ? myMatchAdvance : 1;
             for (int next = lo; next < lo + advance; next++) {
                 bAdler.remove(b[next]);
                 if (next + MATCH_BLOCK_SIZE < bLength) {
@@ -61,58 +78,92 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
             }
             lo += advance;
         }
-        if (previousInsertion != null && previousInsertion.length > 0) {
-            copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-            previousInsertion = null;
+        if (myInsertionLength > 0) {
+            copyFromNewData(b, insertionPosition, myInsertionLength);
+            myInsertionLength = 0;
         }
     }
-    
-    private static Match findMatch(Map matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, Match previousInsertion) {
-        Match existingMatch = (Match) matchesTable.get(new Integer(checksum.getValue()));
-        if (existingMatch == null) {
-            return null;
+
+    private boolean findMatch(PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos) {
+        int position = lookup(checksum.getValue());
+        if (position == NO_POSITION) {
+            return false;
         }
-        if (!equals(a, aLength, existingMatch.position, existingMatch.length, b, bLength, bPos)) {
-            return null;
+        int length = Math.min(MATCH_BLOCK_SIZE, aLength - position);
+        if (!equals(a, aLength, position, length, b, bLength, bPos)) {
+            return false;
         }
-        existingMatch = new Match(existingMatch.position, existingMatch.length);
-        existingMatch.advance = existingMatch.length;
+        int advance = length;
 
-        // extend forward 
-        while(existingMatch.position + existingMatch.length < aLength &&
-                bPos + existingMatch.advance < bLength &&
-                a[existingMatch.position + existingMatch.length] == b[bPos + existingMatch.advance]) {
-            existingMatch.length++;
-            existingMatch.advance++;
+        // extend forward
+        while(position + length < aLength &&
+                bPos + advance < bLength &&
+                a[position + length] == b[bPos + advance]) {
+            length++;
+            advance++;
         }
         // extend backward
-        if (previousInsertion != null) {
-            while(existingMatch.position > 0 && bPos > 0 &&
-                    a[existingMatch.position - 1] == b[bPos -1] &&
-                    previousInsertion.length != 0) {
-                previousInsertion.length--;
-                bPos--;
-                existingMatch.position--;
-                existingMatch.length++;
-            }
-        }
-        return existingMatch;
+        while(position > 0 && bPos > 0 &&
+                a[position - 1] == b[bPos -1] &&
+                myInsertionLength != 0) {
+            myInsertionLength--;
+            bPos--;
+            position--;
+            length++;
+        }
+        myMatchPosition = position;
+        myMatchLength = length;
+        myMatchAdvance = advance;
+        return true;
     }
-    
-    private static Map createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
-        Map matchesTable = new SVNHashMap();
+
+    private void createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
+        int blocksCount = (dataLength + blockLength - 1) / blockLength;
+        int tableSize = MIN_TABLE_SIZE;
+        while (tableSize < blocksCount * 2) {
+            tableSize <<= 1;
+        }
+        if (myPositions == null || myPositions.length < tableSize) {
+            myChecksums = new int[tableSize];
+            myPositions = new int[tableSize];
+        }
+        Arrays.fill(myPositions, 0, tableSize, NO_POSITION);
+        myTableMask = tableSize - 1;
+
         for(int i = 0; i < dataLength; i+= blockLength) {
             int length = i + blockLength >= dataLength ? dataLength - i : blockLength;
             adler32.add(data, i, length);
-            Integer checksum = new Integer(adler32.getValue());
-            if (!matchesTable.containsKey(checksum)) {
-                matchesTable.put(checksum, new Match(i, length));
+            int checksum = adler32.getValue();
+            // the first block with a given checksum is kept.
+            int slot = hash(checksum) & myTableMask;
+            while (myPositions[slot] != NO_POSITION && myChecksums[slot] != checksum) {
+                slot = (slot + 1) & myTableMask;
+            }
+            if (myPositions[slot] == NO_POSITION) {
+                myChecksums[slot] = checksum;
+                myPositions[slot] = i;
             }
             adler32.reset();
         }
-        return matchesTable;
     }
-    
+
+    private int lookup(int checksum) {
+        int slot = hash(checksum) & myTableMask;
+        while (myPositions[slot] != NO_POSITION) {
+            if (myChecksums[slot] == checksum) {
+                return myPositions[slot];
+            }
+            slot = (slot + 1) & myTableMask;
+        }
+        return NO_POSITION;
+    }
+
+    private static int hash(int checksum) {
+        // both halves of the checksum are 16 bit sums, mix them before taking the low bits.
+        int h = checksum * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     private static boolean equals(byte[] a, int aLength, int aPos, int length, byte[] b, int bLength, int bPos) {
         if (aPos + length - 1 > aLength || bPos + length > bLength) {
             return false;
@@ -124,31 +175,19 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
         }
         return true;
     }
-    
-    private static class Match {
-        
-        public Match(int p, int l) {
-            position = p;
-            length = l;
-        }
-        
-        public int position;
-        public int length;
-        public int advance;
-    }
 
     private static int ADLER32_MASK = 0x0000FFFF;
 
-    private static class PseudoAdler32 {        
-        
+    private static class PseudoAdler32 {
+
         private int myS1;
         private int myS2;
         private int myLength;
-        
+
         public PseudoAdler32() {
             reset();
         }
-        
+
         public void add(byte b) {
             int z = b & 0x000000FF;
             myS1 = myS1 + z;
@@ -157,7 +196,7 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
             myS2 = myS2 & ADLER32_MASK;
             myLength++;
         }
-        
+
         public void remove(byte b) {
             int z = b & 0x000000FF;
             myS1 = myS1 - z;
@@ -166,17 +205,17 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
             myS2 = myS2 & ADLER32_MASK;
             myLength--;
         }
-        
+
         public void add(byte[] data, int offset, int length) {
             for (int i = offset; i < offset + length; i++) {
                 add(data[i]);
             }
         }
-        
+
         public int getValue() {
             return (myS2 << 16) | myS1;
         }
-        
+
         public void reset() {
             myS1 = 1;
             myS2 = 0;
@@ -184,4 +223,3 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
         }
     }
 }
- 
\ No newline at end of file
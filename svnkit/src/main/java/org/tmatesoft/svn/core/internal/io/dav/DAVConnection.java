@@ -25,6 +25,7 @@ import org.tmatesoft.svn.core.SVNLock;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
 import org.tmatesoft.svn.core.internal.io.dav.handlers.DAVGetLocksHandler;
 import org.tmatesoft.svn.core.internal.io.dav.handlers.DAVLockHandler;
 import org.tmatesoft.svn.core.internal.io.dav.handlers.DAVMergeHandler;
@@ -355,7 +356,9 @@ public class DAVConnection {
         httpConnection.setSpoolResponse(spool || isReportResponseSpooled());
         try {
             HTTPHeader header = new HTTPHeader();
-            header.addHeaderValue(HTTPHeader.ACCEPT_ENCODING_HEADER, "svndiff1;q=0.9,svndiff;q=0.8");
+            // svndiff2 trades compression ratio for much cheaper compression, only prefer it when asked to.
+            header.addHeaderValue(HTTPHeader.ACCEPT_ENCODING_HEADER, SVNDeltaCompression.isLZ4Preferred() ?
+                    "svndiff2;q=0.9,svndiff1;q=0.8,svndiff;q=0.7" : "svndiff1;q=0.9,svndiff2;q=0.8,svndiff;q=0.7");
             return performHttpRequest(httpConnection, "REPORT", path, header, requestBody, -1, 0, null, handler);
         } finally {
             httpConnection.setSpoolResponse(false);
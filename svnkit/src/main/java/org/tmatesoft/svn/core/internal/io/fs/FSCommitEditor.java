@@ -16,6 +16,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Stack;
 
@@ -392,19 +393,21 @@ public class FSCommitEditor implements ISVNEditor {
     }
 
     private void releaseLocks(Map<String, String> pathsToLockTokens, boolean breakLocks, boolean runHooks) {
-        if (pathsToLockTokens == null) {
+        if (pathsToLockTokens == null || pathsToLockTokens.isEmpty()) {
             return;
         }
+        Map<String, String> absPathsToLockTokens = new LinkedHashMap<String, String>();
         for (Iterator<String> paths = pathsToLockTokens.keySet().iterator(); paths.hasNext();) {
             String path = (String) paths.next();
             String token = (String) pathsToLockTokens.get(path);
             String absPath = !path.startsWith("/") ? SVNPathUtil.getAbsolutePath(SVNPathUtil.append(myBasePath, path)) : path;
+            absPathsToLockTokens.put(absPath, token);
+        }
 
-            try {
-                myFSFS.unlockPath(absPath, token, getAuthor(), breakLocks, runHooks);
-            } catch (SVNException svne) {
-                // ignore exceptions
-            }
+        try {
+            myFSFS.unlockPaths(absPathsToLockTokens, getAuthor(), breakLocks, runHooks, null);
+        } catch (SVNException svne) {
+            // ignore exceptions
         }
     }
 
@@ -0,0 +1,213 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Groups the work that follows commits of a repository, so that it is done once for
+ * several commits completed at about the same time. There is one queue per repository,
+ * shared by all FSFS instances.
+ *
+ * <p/>
+ * Commits are added to the queue in revision order while the write lock of the repository
+ * is still held, so each commit is visible in <code>db/current</code> on its own. After
+ * releasing the lock a committer waits for its commit to be flushed; the first waiting
+ * committer becomes the leader and inserts the representations of all queued commits into
+ * the rep-cache in a single write transaction, the others wait for it to finish. With
+ * {@link FSDurability#DIRECTORY} durability the <code>db</code> directory is flushed once for
+ * the group as well, rather than once per commit.
+ *
+ * <p/>
+ * The queue is disabled by default and may be enabled with the
+ * <code>svnkit.fsfs.commitQueue</code> system property.
+ * <code>svnkit.fsfs.commitQueue.window</code> sets the number of milliseconds the leader
+ * waits for more commits to join the group before flushing it (0 by default).
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCommitQueue {
+
+    public static final String COMMIT_QUEUE_PROPERTY = "svnkit.fsfs.commitQueue";
+    public static final String WINDOW_PROPERTY = "svnkit.fsfs.commitQueue.window";
+
+    private static boolean ourIsEnabled = Boolean.getBoolean(COMMIT_QUEUE_PROPERTY);
+    private static long ourWindow = Long.getLong(WINDOW_PROPERTY, 0).longValue();
+
+    private static final Map<File, FSCommitQueue> ourQueues = new HashMap<File, FSCommitQueue>();
+
+    private List<Entry> myEntries;
+    private long myEnqueuedCount;
+    private long myFlushedCount;
+    private long myGroupsCount;
+    private boolean myIsFlushing;
+
+    private FSCommitQueue() {
+        myEntries = new ArrayList<Entry>();
+    }
+
+    public static FSCommitQueue getCommitQueue(FSFS owner) {
+        final File repositoryRoot = owner.getRepositoryRoot().getAbsoluteFile();
+        synchronized (ourQueues) {
+            FSCommitQueue queue = ourQueues.get(repositoryRoot);
+            if (queue == null) {
+                queue = new FSCommitQueue();
+                ourQueues.put(repositoryRoot, queue);
+            }
+            return queue;
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static synchronized long getWindow() {
+        return ourWindow;
+    }
+
+    public static synchronized void setWindow(long window) {
+        ourWindow = window;
+    }
+
+    /**
+     * Adds a committed revision to the queue, has to be called with the write lock held.
+     * <code>directoryToSync</code>, if not <span class="javakeyword">null</span>, is flushed
+     * to disk once for the whole group before the commits are reported as flushed.
+     *
+     * @return the ticket to pass to {@link #waitFlushed(FSFS, long)}
+     */
+    public synchronized long enqueue(Collection<FSRepresentation> representations, File directoryToSync) {
+        myEntries.add(new Entry(representations, directoryToSync));
+        return ++myEnqueuedCount;
+    }
+
+    /**
+     * Returns once the commit with the given ticket has been flushed, flushing the
+     * queued commits on the calling thread when no other thread is doing that.
+     */
+    public void waitFlushed(FSFS owner, long ticket) {
+        while (true) {
+            final List<Entry> group;
+            final long groupCount;
+            synchronized (this) {
+                while (myFlushedCount < ticket && myIsFlushing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (myFlushedCount >= ticket) {
+                    return;
+                }
+                myIsFlushing = true;
+            }
+            final long window = getWindow();
+            if (window > 0) {
+                try {
+                    Thread.sleep(window);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (this) {
+                group = myEntries;
+                groupCount = myEnqueuedCount;
+                myEntries = new ArrayList<Entry>();
+            }
+            try {
+                flush(owner, group);
+            } finally {
+                synchronized (this) {
+                    myFlushedCount = groupCount;
+                    myGroupsCount++;
+                    myIsFlushing = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    public synchronized long getFlushedCount() {
+        return myFlushedCount;
+    }
+
+    public synchronized long getGroupsCount() {
+        return myGroupsCount;
+    }
+
+    private void flush(final FSFS owner, final List<Entry> group) {
+        final Set<File> directories = new LinkedHashSet<File>();
+        for (Entry entry : group) {
+            if (entry.myDirectoryToSync != null) {
+                directories.add(entry.myDirectoryToSync);
+            }
+        }
+        for (File directory : directories) {
+            try {
+                long start = System.nanoTime();
+                SVNFileUtil.syncDirectory(directory);
+                owner.getCommitStatistics().directorySynced(System.nanoTime() - start);
+            } catch (SVNException e) {
+                // revisions of the group are committed already.
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            }
+        }
+
+        final IFSRepresentationCacheManager cacheManager = owner.getRepositoryCacheManager();
+        if (cacheManager == null || group.isEmpty()) {
+            return;
+        }
+        final List<FSRepresentation> representations = new ArrayList<FSRepresentation>();
+        for (Entry entry : group) {
+            if (entry.myRepresentations != null) {
+                representations.addAll(entry.myRepresentations);
+            }
+        }
+        try {
+            cacheManager.insert(representations);
+        } catch (SVNException e) {
+            // ignore, as a failed rep-cache insert does not fail a commit.
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+        }
+    }
+
+    private static class Entry {
+
+        final Collection<FSRepresentation> myRepresentations;
+        final File myDirectoryToSync;
+
+        Entry(Collection<FSRepresentation> representations, File directoryToSync) {
+            myRepresentations = representations;
+            myDirectoryToSync = directoryToSync;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commit latency counters of a repository, shared by all FSFS instances. Keeps the
+ * time commits took from the merge with the youngest revision until they returned,
+ * the time the write lock was held, and the time spent flushing files and directories
+ * to disk, so that the cost of each {@link FSDurability} may be measured.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCommitStatistics {
+
+    private static final Map<File, FSCommitStatistics> ourStatistics = new HashMap<File, FSCommitStatistics>();
+
+    private long myCommitsCount;
+    private long myCommitTime;
+    private long myMaxCommitTime;
+    private long myWriteLockTime;
+    private long myFileSyncsCount;
+    private long myFileSyncTime;
+    private long myDirectorySyncsCount;
+    private long myDirectorySyncTime;
+
+    public static FSCommitStatistics getStatistics(FSFS owner) {
+        final File repositoryRoot = owner.getRepositoryRoot().getAbsoluteFile();
+        synchronized (ourStatistics) {
+            FSCommitStatistics statistics = ourStatistics.get(repositoryRoot);
+            if (statistics == null) {
+                statistics = new FSCommitStatistics();
+                ourStatistics.put(repositoryRoot, statistics);
+            }
+            return statistics;
+        }
+    }
+
+    public synchronized void commitCompleted(long commitNanos, long writeLockNanos) {
+        myCommitsCount++;
+        myCommitTime += commitNanos;
+        myMaxCommitTime = Math.max(myMaxCommitTime, commitNanos);
+        myWriteLockTime += writeLockNanos;
+    }
+
+    public synchronized void fileSynced(long nanos) {
+        myFileSyncsCount++;
+        myFileSyncTime += nanos;
+    }
+
+    public synchronized void directorySynced(long nanos) {
+        myDirectorySyncsCount++;
+        myDirectorySyncTime += nanos;
+    }
+
+    public synchronized long getCommitsCount() {
+        return myCommitsCount;
+    }
+
+    /**
+     * Returns the total time of all commits in milliseconds.
+     */
+    public synchronized long getCommitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(myCommitTime);
+    }
+
+    public synchronized long getMaxCommitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(myMaxCommitTime);
+    }
+
+    public synchronized long getAverageCommitTime() {
+        return myCommitsCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(myCommitTime / myCommitsCount);
+    }
+
+    public synchronized long getWriteLockTime() {
+        return TimeUnit.NANOSECONDS.toMillis(myWriteLockTime);
+    }
+
+    public synchronized long getFileSyncsCount() {
+        return myFileSyncsCount;
+    }
+
+    public synchronized long getFileSyncTime() {
+        return TimeUnit.NANOSECONDS.toMillis(myFileSyncTime);
+    }
+
+    public synchronized long getDirectorySyncsCount() {
+        return myDirectorySyncsCount;
+    }
+
+    public synchronized long getDirectorySyncTime() {
+        return TimeUnit.NANOSECONDS.toMillis(myDirectorySyncTime);
+    }
+
+    public synchronized void reset() {
+        myCommitsCount = 0;
+        myCommitTime = 0;
+        myMaxCommitTime = 0;
+        myWriteLockTime = 0;
+        myFileSyncsCount = 0;
+        myFileSyncTime = 0;
+        myDirectorySyncsCount = 0;
+        myDirectorySyncTime = 0;
+    }
+
+    public synchronized String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("{[");
+        buffer.append("Commits:");
+        buffer.append(myCommitsCount);
+        buffer.append("][");
+        buffer.append("Average:");
+        buffer.append(getAverageCommitTime());
+        buffer.append("ms][");
+        buffer.append("Max:");
+        buffer.append(getMaxCommitTime());
+        buffer.append("ms][");
+        buffer.append("WriteLock:");
+        buffer.append(getWriteLockTime());
+        buffer.append("ms][");
+        buffer.append("FileSyncs:");
+        buffer.append(myFileSyncsCount);
+        buffer.append("/");
+        buffer.append(getFileSyncTime());
+        buffer.append("ms][");
+        buffer.append("DirectorySyncs:");
+        buffer.append(myDirectorySyncsCount);
+        buffer.append("/");
+        buffer.append(getDirectorySyncTime());
+        buffer.append("ms]}");
+        return buffer.toString();
+    }
+}
@@ -288,7 +288,7 @@ public class FSCommitter {
 
     public long commitTxn(boolean runPreCommitHook, boolean runPostCommitHook, SVNErrorMessage[] postCommitHookError, StringBuffer conflictPath) throws SVNException {
         if (myFSFS.isHooksEnabled() && runPreCommitHook) {
-            FSHooks.runPreCommitHook(myFSFS.getRepositoryRoot(), myTxn.getTxnId());
+            FSHooks.runPreCommitHook(myFSFS, myTxn.getTxnId());
         }
 
         final SVNProperties txnProperties = myFSFS.getTransactionProperties(myTxn.getTxnId());
@@ -299,73 +299,104 @@ public class FSCommitter {
         }
 
         long newRevision = SVNRepository.INVALID_REVISION;
+        final long commitStart = System.nanoTime();
+        long writeLockTime = 0;
 
-        while (true) {
-            long youngishRev = myFSFS.getYoungestRevision();
-            FSRevisionRoot youngishRoot = myFSFS.createRevisionRoot(youngishRev);
-
-            FSRevisionNode youngishRootNode = youngishRoot.getRevisionNode("/");
-
-            mergeChanges(myFSFS, getTxnRoot(), youngishRootNode, conflictPath);
-            myTxn.setBaseRevision(youngishRev);
-
-            FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
-            final Collection<FSRepresentation> representations = myFSFS.getRepositoryCacheManager() != null ?
-                    new ArrayList<FSRepresentation>() : null;
-            synchronized (writeLock) {
-                try {
-                    writeLock.lock();
-                    newRevision = commit(representations);
-                } catch (SVNException svne) {
-                    if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
-                        long youngestRev = myFSFS.getYoungestRevision();
-                        if (youngishRev == youngestRev) {
-                            throw svne;
+        FSHookEvent postCommitEvent = null;
+        boolean isPostCommitEventReleased = false;
+        try {
+            while (true) {
+                long youngishRev = myFSFS.readYoungestRevision();
+                FSRevisionRoot youngishRoot = myFSFS.createRevisionRoot(youngishRev);
+
+                FSRevisionNode youngishRootNode = youngishRoot.getRevisionNode("/");
+
+                mergeChanges(myFSFS, getTxnRoot(), youngishRootNode, conflictPath);
+                myTxn.setBaseRevision(youngishRev);
+
+                FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
+                final Collection<FSRepresentation> representations = myFSFS.getRepositoryCacheManager() != null ?
+                        new ArrayList<FSRepresentation>() : null;
+                final FSCommitQueue commitQueue = FSCommitQueue.isEnabled() ? FSCommitQueue.getCommitQueue(myFSFS) : null;
+                long commitTicket = -1;
+                synchronized (writeLock) {
+                    long writeLockStart = -1;
+                    try {
+                        writeLock.lock();
+                        writeLockStart = System.nanoTime();
+                        newRevision = commit(representations);
+                        if (myFSFS.isHooksEnabled() && runPostCommitHook) {
+                            // taken under the write lock, so that asynchronous hooks are run in order of revisions.
+                            postCommitEvent = FSHooks.schedulePostCommitHook(myFSFS, newRevision);
+                        }
+                        if (commitQueue != null) {
+                            commitTicket = commitQueue.enqueue(representations, myFSFS.getDurability() == FSDurability.DIRECTORY ? myFSFS.getDBRoot() : null);
+                        }
+                    } catch (SVNException svne) {
+                        if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_TXN_OUT_OF_DATE) {
+                            long youngestRev = myFSFS.readYoungestRevision();
+                            if (youngishRev == youngestRev) {
+                                throw svne;
+                            }
+                            continue;
+                        }
+                        throw svne;
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                        if (writeLockStart >= 0) {
+                            writeLockTime += System.nanoTime() - writeLockStart;
                         }
-                        continue;
                     }
-                    throw svne;
-                } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
                 }
-            }
-            // write representations here.
-            if (representations != null && !representations.isEmpty()) {
-                if (myFSFS.getRepositoryCacheManager() != null) {
-                    try {
-                        myFSFS.getRepositoryCacheManager().runWriteTransaction(new IFSSqlJetTransaction() {
-                            public void run() throws SVNException {
-                                for (FSRepresentation fsRepresentation : representations) {
-                                    myFSFS.getRepositoryCacheManager().insert(fsRepresentation, false);
-                                }
-                            }
-                        });
-                    } catch (SVNException e) {
-                        // ignore
-                        SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                if (commitQueue != null) {
+                    commitQueue.waitFlushed(myFSFS, commitTicket);
+                    break;
+                }
+                try {
+                    myFSFS.syncDirectory(myFSFS.getDBRoot());
+                } catch (SVNException e) {
+                    // the revision is committed already.
+                    SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                }
+                if (representations != null && !representations.isEmpty()) {
+                    // write representations here.
+                    if (myFSFS.getRepositoryCacheManager() != null) {
+                        try {
+                            myFSFS.getRepositoryCacheManager().insert(representations);
+                        } catch (SVNException e) {
+                            // ignore
+                            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                        }
                     }
                 }
+                break;
             }
-            break;
-        }
+            myFSFS.getCommitStatistics().commitCompleted(System.nanoTime() - commitStart, writeLockTime);
+            myFSFS.updatePathHistoryIndex();
 
-        if (myFSFS.isHooksEnabled() && runPostCommitHook) {
-            try {
-                FSHooks.runPostCommitHook(myFSFS.getRepositoryRoot(), newRevision);
-             } catch (SVNException svne) {
-                 SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_COMMIT_HOOK_FAILED,
-                         "Commit succeeded, but post-commit hook failed", SVNErrorMessage.TYPE_WARNING);
-                 SVNErrorMessage childErr = svne.getErrorMessage();
-                 childErr.setDontShowErrorCode(true);
-                 errorMessage.setChildErrorMessage(childErr);
-
-                 if (postCommitHookError != null && postCommitHookError.length > 0) {
-                     postCommitHookError[0] = errorMessage;
-                 } else {
-                     SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+            if (myFSFS.isHooksEnabled() && runPostCommitHook) {
+                isPostCommitEventReleased = true;
+                try {
+                    FSHooks.runPostCommitHook(myFSFS, newRevision, postCommitEvent);
+                 } catch (SVNException svne) {
+                     SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_COMMIT_HOOK_FAILED,
+                             "Commit succeeded, but post-commit hook failed", SVNErrorMessage.TYPE_WARNING);
+                     SVNErrorMessage childErr = svne.getErrorMessage();
+                     childErr.setDontShowErrorCode(true);
+                     errorMessage.setChildErrorMessage(childErr);
+
+                     if (postCommitHookError != null && postCommitHookError.length > 0) {
+                         postCommitHookError[0] = errorMessage;
+                     } else {
+                         SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+                     }
                  }
-             }
+            }
+        } finally {
+            if (postCommitEvent != null && !isPostCommitEventReleased) {
+                FSHooks.cancelPostCommitHook(myFSFS, postCommitEvent);
+            }
         }
         return newRevision;
     }
@@ -486,7 +517,7 @@ public class FSCommitter {
     }
 
     private long commit(Collection<FSRepresentation> representations) throws SVNException {
-        long oldRev = myFSFS.getYoungestRevision();
+        long oldRev = myFSFS.readYoungestRevision();
 
         if (myTxn.getBaseRevision() != oldRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_TXN_OUT_OF_DATE, "Transaction out of date");
@@ -510,6 +541,7 @@ public class FSCommitter {
         final OutputStream protoFileOS = null;
         final FSID newRootId = null;
         final FSTransactionRoot txnRoot = getTxnRoot();
+        final File dstRevFile = myFSFS.getNewRevisionFile(newRevision);
         FSWriteLock txnWriteLock = FSWriteLock.getWriteLockForTxn(myTxn.getTxnId(), myFSFS);
         synchronized (txnWriteLock) {
             try {
@@ -518,7 +550,7 @@ public class FSCommitter {
                 final File revisionPrototypeFile = txnRoot.getWritableTransactionProtoRevFile();
                 final long offset = revisionPrototypeFile.length();
                 commit(startNodeId, startCopyId, newRevision, protoFileOS, newRootId, txnRoot, revisionPrototypeFile, offset, representations);
-                File dstRevFile = myFSFS.getNewRevisionFile(newRevision);
+                myFSFS.syncFile(revisionPrototypeFile);
                 SVNFileUtil.rename(revisionPrototypeFile, dstRevFile);
             } finally {
                txnWriteLock.unlock();
@@ -536,10 +568,20 @@ public class FSCommitter {
 
         if (myFSFS.getDBFormat() < FSFS.MIN_PACKED_REVPROP_FORMAT || newRevision >= myFSFS.getMinUnpackedRevProp()){
             File dstRevPropsFile = myFSFS.getNewRevisionPropertiesFile(newRevision);
+            myFSFS.syncFile(txnPropsFile);
             SVNFileUtil.rename(txnPropsFile, dstRevPropsFile);
+            myFSFS.syncDirectory(dstRevPropsFile.getParentFile());
+            if (isNewShard(newRevision)) {
+                myFSFS.syncDirectory(dstRevPropsFile.getParentFile().getParentFile());
+            }
         } else {
             // TODO pack property?
         }
+        // new revision files have to be on disk before db/current points to them.
+        myFSFS.syncDirectory(dstRevFile.getParentFile());
+        if (isNewShard(newRevision)) {
+            myFSFS.syncDirectory(dstRevFile.getParentFile().getParentFile());
+        }
 
         try {
             txnRoot.writeFinalCurrentFile(newRevision, startNodeId, startCopyId);
@@ -552,6 +594,10 @@ public class FSCommitter {
         return newRevision;
     }
 
+    private boolean isNewShard(long revision) {
+        return myFSFS.getMaxFilesPerDirectory() > 0 && revision % myFSFS.getMaxFilesPerDirectory() == 0;
+    }
+
     private void commit(String startNodeId, String startCopyId, long newRevision, OutputStream protoFileOS, FSID newRootId, FSTransactionRoot txnRoot, File revisionPrototypeFile, long offset,
             Collection<FSRepresentation> representations) throws SVNException {
         try {
@@ -782,7 +828,7 @@ public class FSCommitter {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(fsfs.getDigestFileFromRepositoryPath(path), handler, haveWriteLock);
+            fsfs.walkLocks(path, handler, haveWriteLock);
         } else {
             SVNLock lock = fsfs.getLockHelper(path, haveWriteLock);
             if (lock != null) {
@@ -0,0 +1,53 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+/**
+ * Defines what is flushed to disk when a revision is written.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public enum FSDurability {
+
+    /**
+     * Nothing is flushed, the operating system decides when data reaches the disk.
+     */
+    NONE,
+
+    /**
+     * Proto-revision, revision properties and <code>db/current</code> files are flushed before
+     * they are renamed into place, the rep-cache database is written in synchronous mode.
+     */
+    DATA,
+
+    /**
+     * In addition to {@link #DATA}, directories which got new revision files are flushed,
+     * so that renames survive a power loss as well.
+     */
+    DIRECTORY;
+
+    /**
+     * Returns the durability named by <code>value</code> ignoring case ("none", "data" or
+     * "directory"), or {@link #NONE} for <span class="javakeyword">null</span> and unknown values.
+     */
+    public static FSDurability fromString(String value) {
+        if (value != null) {
+            for (FSDurability durability : values()) {
+                if (durability.name().equalsIgnoreCase(value.trim())) {
+                    return durability;
+                }
+            }
+        }
+        return NONE;
+    }
+}
@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -34,6 +35,9 @@ import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSL2PProtoIndex;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevProps;
@@ -56,6 +60,7 @@ import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -85,6 +90,8 @@ public class FSFS {
     public static final String MANIFEST_FILE = "manifest";
 
     public static final String REP_CACHE_DB = "rep-cache.db";
+    public static final String PATH_HISTORY_DB = "path-history.db";
+    public static final String LOCKS_DB = "locks.db";
     public static final String PACK_EXT = ".pack";
     public static final String PACK_KIND_PACK = "pack";
     public static final String PACK_KIND_MANIFEST = "manifest";
@@ -94,6 +101,10 @@ public class FSFS {
     public static final String COMPRESS_PACKED_REVPROPS_OPTION = "compress-packed-revprops";
     public static final String REVPROP_PACK_SIZE_OPTION = "revprop-pack-size";
 
+    public static final String LOCKS_SECTION = "locks";
+    public static final String LOCK_STORAGE_OPTION = "lock-storage";
+    public static final String LOCK_STORAGE_SQLITE = "sqlite";
+
     public static final String IO_SECTION = "io";
     public static final String BLOCK_SIZE_OPTION = "block-size";
     public static final String L2P_PAGE_SIZE_OPTION = "l2p-page-size";
@@ -147,6 +158,9 @@ public class FSFS {
     public static final String REVISION_PROPERTIES_DB = "revprops.db";
     public static final String REVISION_PROPERTIES_TABLE = "revprop";
     public static final String MIN_UNPACKED_REV = "min-unpacked-rev";
+    public static final String REVPROP_GENERATION = "revprop-generation";
+
+    public static final String DURABILITY_PROPERTY = "svnkit.fsfs.durability";
 
     public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = true;
     //public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = false;
@@ -173,12 +187,21 @@ public class FSFS {
     private File myFSTypeFile;
     private File myMinUnpackedRevFile;
     private File myRepositoryCacheFile;
+    private File myPathHistoryIndexFile;
+    private File myLockDatabaseFile;
     private long myMaxFilesPerDirectory;
     private long myYoungestRevisionCache;
+    private FSYoungestRevisionWatcher myYoungestRevisionWatcher;
     private long myMinUnpackedRevision;
     private boolean myUseLogAddressing;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
+    private FSPathHistoryIndex myPathHistoryIndex;
+    private boolean myIsPathHistoryIndexOpened;
+    private FSLockDatabase myLockDatabase;
+    private boolean myIsLockDatabaseEnabled;
+    private FSDurability myDurability;
+    private final List<IFSHook> myHooks = new CopyOnWriteArrayList<IFSHook>();
     private long myMinUnpackedRevProp;
     
     private boolean myIsHooksEnabled;
@@ -190,10 +213,54 @@ public class FSFS {
     private long myL2PPageSize;
     private long myP2LPageSize;
 
+    private String myCacheNamespace;
+
     public FSFS(File repositoryRoot) {
         myRepositoryRoot = repositoryRoot;
         myMaxFilesPerDirectory = 0;
         setHooksEnabled(true);
+        setDurability(FSDurability.fromString(System.getProperty(DURABILITY_PROPERTY)));
+    }
+
+    /**
+     * Sets what is flushed to disk when revisions are written, the default is taken from the
+     * <code>svnkit.fsfs.durability</code> system property ("none", "data" or "directory").
+     * The rep-cache database picks the setting up when the repository is opened.
+     */
+    public void setDurability(FSDurability durability) {
+        myDurability = durability == null ? FSDurability.NONE : durability;
+    }
+
+    public FSDurability getDurability() {
+        return myDurability;
+    }
+
+    public FSCommitStatistics getCommitStatistics() {
+        return FSCommitStatistics.getStatistics(this);
+    }
+
+    /**
+     * Flushes the file to disk unless durability is {@link FSDurability#NONE}.
+     */
+    public void syncFile(File file) throws SVNException {
+        if (getDurability() == FSDurability.NONE) {
+            return;
+        }
+        long start = System.nanoTime();
+        SVNFileUtil.syncFile(file);
+        getCommitStatistics().fileSynced(System.nanoTime() - start);
+    }
+
+    /**
+     * Flushes entries of the directory to disk if durability is {@link FSDurability#DIRECTORY}.
+     */
+    public void syncDirectory(File directory) throws SVNException {
+        if (getDurability() != FSDurability.DIRECTORY) {
+            return;
+        }
+        long start = System.nanoTime();
+        SVNFileUtil.syncDirectory(directory);
+        getCommitStatistics().directorySynced(System.nanoTime() - start);
     }
     
     public void setHooksEnabled(boolean enabled) {
@@ -204,6 +271,24 @@ public class FSFS {
         return myIsHooksEnabled;
     }
 
+    /**
+     * Adds a Java hook run for operations made through this instance only, in addition
+     * to the hooks registered with {@link FSRepositoryFactory#registerHook(IFSHook)}.
+     */
+    public void addHook(IFSHook hook) {
+        if (hook != null && !myHooks.contains(hook)) {
+            myHooks.add(hook);
+        }
+    }
+
+    public void removeHook(IFSHook hook) {
+        myHooks.remove(hook);
+    }
+
+    public List<IFSHook> getHooks() {
+        return Collections.unmodifiableList(myHooks);
+    }
+
     public int getDBFormat() {
         return myDBFormat;
     }
@@ -230,6 +315,15 @@ public class FSFS {
             myReposCacheManager.close();
             myReposCacheManager = null;
         }
+        if (myPathHistoryIndex != null) {
+            myPathHistoryIndex.close();
+            myPathHistoryIndex = null;
+        }
+        myIsPathHistoryIndexOpened = false;
+        if (myLockDatabase != null) {
+            myLockDatabase.close();
+            myLockDatabase = null;
+        }
     }
 
     public void openForRecovery() throws SVNException {
@@ -300,6 +394,8 @@ public class FSFS {
         }
         myIsRepSharingAllowed = isRepSharingAllowed;
 
+        myIsLockDatabaseEnabled = config != null && LOCK_STORAGE_SQLITE.equals(config.getPropertyValue(LOCKS_SECTION, LOCK_STORAGE_OPTION));
+
         if (myDBFormat >= MIN_REP_SHARING_FORMAT && isRepSharingAllowed) {
             myReposCacheManager = FSRepresentationCacheUtil.open(this);
         }
@@ -524,6 +620,20 @@ public class FSFS {
         return myRepositoryCacheFile;
     }
 
+    public File getPathHistoryIndexFile() {
+        if (myPathHistoryIndexFile == null) {
+            myPathHistoryIndexFile = new File(getDBRoot(), PATH_HISTORY_DB);
+        }
+        return myPathHistoryIndexFile;
+    }
+
+    public File getLockDatabaseFile() {
+        if (myLockDatabaseFile == null) {
+            myLockDatabaseFile = new File(getDBLocksDir(), LOCKS_DB);
+        }
+        return myLockDatabaseFile;
+    }
+
     public File getDBLogsLockFile() throws SVNException {
         File lockFile = new File(getDBRoot(), LOCKS_DIR + "/" + DB_LOGS_LOCK_FILE);
         if (!lockFile.exists()) {
@@ -574,24 +684,41 @@ public class FSFS {
     }
 
     public long getYoungestRevision() throws SVNException {
-        FSFile file = new FSFile(getCurrentFile());
-        try {
-            String line = file.readLine(180);
-            int spaceIndex = line.indexOf(' ');
-            if (spaceIndex > 0) {
-                myYoungestRevisionCache = Long.parseLong(line.substring(0, spaceIndex));
-            } else {
-                myYoungestRevisionCache = Long.parseLong(line);
-            }
-            return myYoungestRevisionCache;
-        } catch (NumberFormatException nfe) {
-            myYoungestRevisionCache = 0;
-        } finally {
-            file.close();
-        }
+        myYoungestRevisionCache = getYoungestRevisionWatcher().getYoungestRevision();
         return myYoungestRevisionCache;
     }
 
+    /**
+     * Reads the youngest revision from <code>db/current</code>, even when it is cached
+     * by the youngest revision watcher. Has to be used while the write lock is held,
+     * as another process might have committed since the cached value was read.
+     */
+    public long readYoungestRevision() throws SVNException {
+        myYoungestRevisionCache = getYoungestRevisionWatcher().readYoungestRevision();
+        return myYoungestRevisionCache;
+    }
+
+    /**
+     * Registers a listener notified when the youngest revision of this repository changes.
+     * Listeners are shared by all FSFS instances of the repository and are notified of
+     * commits made by this process right away, and of commits made by other processes
+     * as soon as they are noticed.
+     */
+    public void addYoungestRevisionListener(IFSYoungestRevisionListener listener) {
+        getYoungestRevisionWatcher().addListener(listener);
+    }
+
+    public void removeYoungestRevisionListener(IFSYoungestRevisionListener listener) {
+        getYoungestRevisionWatcher().removeListener(listener);
+    }
+
+    private FSYoungestRevisionWatcher getYoungestRevisionWatcher() {
+        if (myYoungestRevisionWatcher == null) {
+            myYoungestRevisionWatcher = FSYoungestRevisionWatcher.getWatcher(this);
+        }
+        return myYoungestRevisionWatcher;
+    }
+
     public long getMinUnpackedRev() throws SVNException {
         FSFile file = new FSFile(getMinUnpackedRevFile());
         try {
@@ -726,10 +853,51 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such packed revision {0}", (Long) revision);
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        // an odd generation means revision properties are being changed right now, bypass the caches
+        final long generation = getRevPropGeneration();
+        final boolean useCache = generation >= 0 && generation % 2 == 0;
+        final FSCacheKey cacheKey = useCache ? new FSCacheKey(getCacheNamespace(), revision, generation) : null;
+        if (useCache) {
+            final SVNProperties cachedProperties = FSCacheManager.getRevisionPropertiesCache().get(cacheKey);
+            if (cachedProperties != null) {
+                return new SVNProperties(cachedProperties);
+            }
+        }
         final File packFile = getPackedRevPropFile(revision);
-        final SVNFSFSPackedRevProps packedRevProps = SVNFSFSPackedRevProps.fromPackFile(packFile);
-        final SVNProperties properties = packedRevProps.parseProperties(revision);
-        return properties == null ? new SVNProperties() : properties;
+        final SVNFSFSPackedRevProps packedRevProps;
+        if (useCache) {
+            final String packKey = getCacheNamespace() + ":" + generation + ":" + packFile.getName();
+            final FSCache<String, SVNFSFSPackedRevProps> packsCache = FSCacheManager.getRevPropPacksCache();
+            SVNFSFSPackedRevProps cachedPack = packsCache.get(packKey);
+            if (cachedPack == null) {
+                cachedPack = SVNFSFSPackedRevProps.fromPackFile(packFile);
+                packsCache.put(packKey, cachedPack, 256 + cachedPack.getTotalSize());
+            }
+            packedRevProps = cachedPack;
+        } else {
+            packedRevProps = SVNFSFSPackedRevProps.fromPackFile(packFile);
+        }
+        SVNProperties properties = packedRevProps.parseProperties(revision);
+        if (properties == null) {
+            properties = new SVNProperties();
+        }
+        if (useCache) {
+            FSCacheManager.getRevisionPropertiesCache().put(cacheKey, new SVNProperties(properties), estimatePropertiesSize(properties));
+        }
+        return properties;
+    }
+
+    private static long estimatePropertiesSize(SVNProperties properties) {
+        long size = 128;
+        for (Iterator names = properties.nameSet().iterator(); names.hasNext();) {
+            String name = (String) names.next();
+            SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            size += 64 + 2 * name.length();
+            if (value != null) {
+                size += value.isString() ? 2 * value.getString().length() : value.getBytes().length;
+            }
+        }
+        return size;
     }
 
     private File getPackedRevPropFile(long revision) throws SVNException {
@@ -857,11 +1025,17 @@ public class FSFS {
 
     public FSRevisionNode getRevisionNode(FSID id) throws SVNException  {
         FSFile revisionFile = null;
+        FSCacheKey cacheKey = null;
 
         if (id.isTxn()) {
             File file = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
             revisionFile = new FSFile(file);
         } else {
+            cacheKey = new FSCacheKey(getCacheNamespace(), id.getRevision(), id.getOffset());
+            FSRevisionNode cachedNode = FSCacheManager.getNodeRevisionsCache().get(cacheKey);
+            if (cachedNode != null) {
+                return FSRevisionNode.dumpRevisionNode(cachedNode);
+            }
             revisionFile = openAndSeekRevision(id.getRevision(), id.getOffset());
         }
 
@@ -876,9 +1050,34 @@ public class FSFS {
         if (node.isFreshTxnRoot()) {
             node.setFreshRootPredecessorId(node.getPredecessorId());
         }
+        if (cacheKey != null) {
+            // committed node-revisions never change, the cache keeps a private copy
+            FSCacheManager.getNodeRevisionsCache().put(cacheKey, FSRevisionNode.dumpRevisionNode(node), estimateHeaderSize(headers));
+        }
         return node;
     }
 
+    /**
+     * Returns a string that identifies this repository in process-wide caches.
+     * Repository UUID is a part of the namespace, so a repository recreated at
+     * the same location does not see entries cached for the old one.
+     */
+    public String getCacheNamespace() throws SVNException {
+        if (myCacheNamespace == null) {
+            myCacheNamespace = myRepositoryRoot.getAbsolutePath() + ":" + getUUID();
+        }
+        return myCacheNamespace;
+    }
+
+    private static long estimateHeaderSize(Map headers) {
+        long size = 256;
+        for (Iterator entries = headers.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry entry = (Map.Entry) entries.next();
+            size += 2 * (((String) entry.getKey()).length() + ((String) entry.getValue()).length());
+        }
+        return size;
+    }
+
     public Map getDirContents(FSRevisionNode revNode) throws SVNException {
         FSRepresentation txtRep = revNode.getTextRepresentation();
         if (txtRep != null && txtRep.isTxn()) {
@@ -896,11 +1095,37 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
-            return parsePlainRepresentation(parseProperties(txtRep), false);
+            FSCacheKey cacheKey = new FSCacheKey(getCacheNamespace(), txtRep.getRevision(), txtRep.getItemIndex());
+            Map cachedEntries = FSCacheManager.getDirContentsCache().get(cacheKey);
+            if (cachedEntries != null) {
+                return copyDirEntries(cachedEntries);
+            }
+            Map entries = parsePlainRepresentation(parseProperties(txtRep), false);
+            // callers are free to modify both the map and its entries
+            FSCacheManager.getDirContentsCache().put(cacheKey, copyDirEntries(entries), estimateDirEntriesSize(entries));
+            return entries;
         }
         return new SVNHashMap();// returns an empty map, must not be null!!
     }
 
+    private static Map copyDirEntries(Map entries) {
+        Map copy = new SVNHashMap();
+        for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+            FSEntry entry = (FSEntry) iterator.next();
+            copy.put(entry.getName(), new FSEntry(entry.getId(), entry.getType(), entry.getName()));
+        }
+        return copy;
+    }
+
+    private static long estimateDirEntriesSize(Map entries) {
+        long size = 64;
+        for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+            FSEntry entry = (FSEntry) iterator.next();
+            size += 160 + 2 * entry.getName().length();
+        }
+        return size;
+    }
+
     private byte[] parseRawDeltaProperties(FSRepresentation txtRep, StringBuilder outputChecksum) throws SVNException {
         FSFile revisionFile = null;
         revisionFile = openAndSeekRepresentation(txtRep);
@@ -1271,12 +1496,17 @@ public class FSFS {
 
             FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
             synchronized (writeLock) {
+                long generation = -1;
                 try {
                     writeLock.lock();
+                    generation = beginRevPropChange();
 
                     if (!isPackedRevisionProperties(revision)) {
-                        SVNWCProperties revProps = new SVNWCProperties(getRevisionPropertiesFile(revision, false), null);
+                        File revPropsFile = getRevisionPropertiesFile(revision, false);
+                        SVNWCProperties revProps = new SVNWCProperties(revPropsFile, null);
                         revProps.setPropertyValue(propertyName, propertyValue);
+                        syncFile(revPropsFile);
+                        syncDirectory(revPropsFile.getParentFile());
                     } else {
                         final File packShardDirectory = getPackedRevPropsShardPath(revision);
                         final File manifestFile = new File(packShardDirectory, MANIFEST_FILE);
@@ -1295,6 +1525,7 @@ public class FSFS {
                         if (packs.size() == 1) {
                             final SVNFSFSPackedRevProps pack = packs.get(0);
                             pack.writeToFile(tmpFile, isCompressPackedRevprops());
+                            syncFile(tmpFile);
                             SVNFileUtil.rename(tmpFile, packedRevPropFile);
                         } else {
                             final Set<String> packNamesToDelete = new HashSet<String>(3);
@@ -1305,8 +1536,10 @@ public class FSFS {
                                 final String packName = manifest.updatePackName(pack.getFirstRevision(), (int) pack.getRevisionsCount());
                                 File packFile = new File(packShardDirectory, packName);
                                 pack.writeToFile(packFile, isCompressPackedRevprops());
+                                syncFile(packFile);
                             }
                             SVNFileUtil.writeToFile(tmpFile, manifest.asString(), "UTF-8");
+                            syncFile(tmpFile);
                             SVNFileUtil.rename(tmpFile, manifestFile);
 
                             for (String packNameToDelete : packNamesToDelete) {
@@ -1314,14 +1547,67 @@ public class FSFS {
                                 SVNFileUtil.deleteFile(packFile);
                             }
                         }
+                        syncDirectory(packShardDirectory);
                     }
                 } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
+                    try {
+                        endRevPropChange(generation);
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
                 }
             }
     }
 
+    /**
+     * Returns the revprop generation, it is advanced by two on every change of revision
+     * properties and is odd while a change is in progress. Returns <code>-1</code>
+     * if the generation file can't be parsed.
+     */
+    public long getRevPropGeneration() throws SVNException {
+        File generationFile = getRevPropGenerationFile();
+        if (myDBFormat < MIN_PACKED_REVPROP_FORMAT || !generationFile.isFile()) {
+            return 0;
+        }
+        FSFile file = new FSFile(generationFile);
+        try {
+            return file.readLong();
+        } catch (NumberFormatException nfe) {
+            return -1;
+        } finally {
+            file.close();
+        }
+    }
+
+    public File getRevPropGenerationFile() {
+        return SVNFileUtil.createFilePath(getDBRoot(), REVPROP_GENERATION);
+    }
+
+    private long beginRevPropChange() throws SVNException {
+        if (myDBFormat < MIN_PACKED_REVPROP_FORMAT) {
+            return -1;
+        }
+        long generation = Math.max(0, getRevPropGeneration());
+        if (generation % 2 == 0) {
+            generation++;
+        }
+        writeRevPropGeneration(generation);
+        return generation;
+    }
+
+    private void endRevPropChange(long generation) throws SVNException {
+        if (generation >= 0) {
+            writeRevPropGeneration(generation + 1);
+        }
+    }
+
+    private void writeRevPropGeneration(long generation) throws SVNException {
+        File tmpFile = SVNFileUtil.createUniqueFile(getDBRoot(), REVPROP_GENERATION, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, String.valueOf(generation) + '\n', "US-ASCII");
+        SVNFileUtil.rename(tmpFile, getRevPropGenerationFile());
+    }
+
     protected long getRevPropPackSize() {
         return myRevpropPackSize;
     }
@@ -1484,7 +1770,8 @@ public class FSFS {
     public SVNLock getLock(String repositoryPath, boolean haveWriteLock, boolean throwError) throws SVNException {
         repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
 
-        SVNLock lock = fetchLockFromDigestFile(null, repositoryPath, null);
+        FSLockDatabase lockDatabase = getLockDatabase();
+        SVNLock lock = lockDatabase != null ? lockDatabase.getLock(repositoryPath) : fetchLockFromDigestFile(null, repositoryPath, null);
 
         if (lock == null) {
             if (!throwError) {
@@ -1508,6 +1795,11 @@ public class FSFS {
     }
 
     public void deleteLock(SVNLock lock) throws SVNException {
+        FSLockDatabase lockDatabase = getLockDatabaseForWrite();
+        if (lockDatabase != null) {
+            lockDatabase.deleteLocks(Collections.singletonList(lock.getPath()));
+            return;
+        }
         String reposPath = lock.getPath();
         String childToKill = null;
         Collection<String> children = new ArrayList<String>();
@@ -1539,6 +1831,129 @@ public class FSFS {
         }
     }
 
+    /**
+     * Stores locks, replacing existing locks of the same paths, must be called under the write lock.
+     * The lock database stores them in a single transaction.
+     */
+    public void setLocks(Collection<SVNLock> locks) throws SVNException {
+        FSLockDatabase lockDatabase = getLockDatabaseForWrite();
+        if (lockDatabase != null) {
+            lockDatabase.setLocks(locks);
+            return;
+        }
+        for (SVNLock lock : locks) {
+            setLock(lock, lock instanceof FSLock && ((FSLock) lock).isDAVComment());
+        }
+    }
+
+    /**
+     * Removes locks, must be called under the write lock. The lock database removes them
+     * in a single transaction.
+     */
+    public void deleteLocks(Collection<SVNLock> locks) throws SVNException {
+        FSLockDatabase lockDatabase = getLockDatabaseForWrite();
+        if (lockDatabase != null) {
+            Collection<String> paths = new ArrayList<String>(locks.size());
+            for (SVNLock lock : locks) {
+                paths.add(lock.getPath());
+            }
+            lockDatabase.deleteLocks(paths);
+            return;
+        }
+        for (SVNLock lock : locks) {
+            deleteLock(lock);
+        }
+    }
+
+    /**
+     * Reports unexpired locks of <code>repositoryPath</code> and of all paths below it,
+     * expired locks are removed when <code>haveWriteLock</code> is <span class="javakeyword">true</span>.
+     */
+    public void walkLocks(String repositoryPath, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
+        repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
+        FSLockDatabase lockDatabase = haveWriteLock ? getLockDatabaseForWrite() : getLockDatabase();
+        if (lockDatabase == null) {
+            walkDigestFiles(getDigestFileFromRepositoryPath(repositoryPath), getLocksHandler, haveWriteLock);
+            return;
+        }
+        Date current = new Date(System.currentTimeMillis());
+        Collection<SVNLock> expiredLocks = new ArrayList<SVNLock>();
+        for (SVNLock lock : lockDatabase.getLocks(repositoryPath)) {
+            if (lock.getExpirationDate() == null || current.compareTo(lock.getExpirationDate()) < 0) {
+                getLocksHandler.handleLock(lock.getPath(), lock, null);
+            } else {
+                expiredLocks.add(lock);
+            }
+        }
+        if (haveWriteLock && !expiredLocks.isEmpty()) {
+            deleteLocks(expiredLocks);
+        }
+    }
+
+    public boolean isLockDatabaseEnabled() {
+        return myIsLockDatabaseEnabled;
+    }
+
+    /**
+     * Returns the lock database when the repository is configured to use it and the database
+     * exists, otherwise <span class="javakeyword">null</span> and locks are read from digest files.
+     */
+    public FSLockDatabase getLockDatabase() throws SVNException {
+        if (myLockDatabase == null && myIsLockDatabaseEnabled && getLockDatabaseFile().isFile()) {
+            myLockDatabase = FSLockDatabase.open(this);
+        }
+        return myLockDatabase;
+    }
+
+    /**
+     * Same as {@link #getLockDatabase()}, but first moves locks of digest files to the database
+     * when it does not exist yet, so that read-only users never have to write to the repository.
+     * Must be called under the write lock.
+     */
+    private FSLockDatabase getLockDatabaseForWrite() throws SVNException {
+        if (myLockDatabase == null && myIsLockDatabaseEnabled && !getLockDatabaseFile().isFile()) {
+            createLockDatabase();
+        }
+        return getLockDatabase();
+    }
+
+    /**
+     * Moves locks of digest files to a new lock database, must be called under the write lock.
+     */
+    private void createLockDatabase() throws SVNException {
+        File lockDatabaseFile = getLockDatabaseFile();
+        final Collection<SVNLock> locks = new ArrayList<SVNLock>();
+        File rootDigestFile = getDigestFileFromRepositoryPath("/");
+        if (rootDigestFile.isFile()) {
+            walkDigestFiles(rootDigestFile, new ISVNLockHandler() {
+                public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                    locks.add(lock);
+                }
+
+                public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                }
+            }, false);
+        }
+        if (!ensureDirExists(getDBLocksDir(), true)) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Can''t create a directory at ''{0}''", getDBLocksDir());
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        File tmpFile = SVNFileUtil.createUniqueFile(getDBLocksDir(), LOCKS_DB, ".tmp", false);
+        try {
+            FSLockDatabase.createLockDatabase(tmpFile, locks);
+            SVNFileUtil.rename(tmpFile, lockDatabaseFile);
+        } finally {
+            SVNFileUtil.deleteFile(tmpFile);
+        }
+        // locks have been moved to the database.
+        File[] children = SVNFileListUtil.listFiles(getDBLocksDir());
+        for (int i = 0; children != null && i < children.length; i++) {
+            if (children[i].isDirectory() && children[i].getName().length() == DIGEST_SUBDIR_LEN) {
+                SVNFileUtil.deleteAll(children[i], true);
+            }
+        }
+    }
+
     public void walkDigestFiles(File digestFile, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
         Collection children = new LinkedList();
         SVNLock lock = fetchLockFromDigestFile(digestFile, null, children);
@@ -1667,7 +2082,7 @@ public class FSFS {
         }
 
         if (enableHooks && isHooksEnabled()) {
-            FSHooks.runPreUnlockHook(myRepositoryRoot, path, username);
+            FSHooks.runPreUnlockHook(this, path, username);
         }
 
         FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
@@ -1683,7 +2098,7 @@ public class FSFS {
 
         if (enableHooks && isHooksEnabled()) {
             try {
-                FSHooks.runPostUnlockHook(myRepositoryRoot, paths, username);
+                FSHooks.runPostUnlockHook(this, paths, username);
             } catch (SVNException svne) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_UNLOCK_HOOK_FAILED, "Unlock succeeded, but post-unlock hook failed");
                 err.setChildErrorMessage(svne.getErrorMessage());
@@ -1706,7 +2121,7 @@ public class FSFS {
 
         String customToken = null;
         if (isHooksEnabled()) {
-            customToken = FSHooks.runPreLockHook(myRepositoryRoot, path, username, comment, stealLock);
+            customToken = FSHooks.runPreLockHook(this, path, username, comment, stealLock);
             if (customToken != null) {
                 token = customToken;
             }
@@ -1727,7 +2142,7 @@ public class FSFS {
 
         if (isHooksEnabled()) {
             try {
-                FSHooks.runPostLockHook(myRepositoryRoot, paths, username);
+                FSHooks.runPostLockHook(this, paths, username);
             } catch (SVNException svne) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_LOCK_HOOK_FAILED, "Lock succeeded, but post-lock hook failed");
                 err.setChildErrorMessage(svne.getErrorMessage());
@@ -1737,6 +2152,184 @@ public class FSFS {
         return lock;
     }
 
+    /**
+     * Locks several paths at once. The pre-lock hook runs for every path first, then all
+     * locks are created under a single acquisition of the write lock and stored together,
+     * and the post-lock hook runs once with the list of locked paths.
+     *
+     * <p/>
+     * <code>pathsToRevisions</code> maps repository paths to the revisions the caller
+     * expects them to be at, <span class="javakeyword">null</span> or an invalid revision
+     * skips the out-of-date check. Paths which can not be locked are reported to
+     * <code>handler</code> with an error, like {@link ISVNLockHandler#handleLock} is used
+     * by {@link org.tmatesoft.svn.core.io.SVNRepository#lock(Map, String, boolean, ISVNLockHandler)};
+     * other errors, including hook failures, abort the whole operation.
+     */
+    public void lockPaths(Map<String, Long> pathsToRevisions, String username, String comment, Date expirationDate,
+            boolean stealLock, boolean isDAVComment, ISVNLockHandler handler) throws SVNException {
+        if (username == null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_USER,
+                    "Cannot lock path ''{0}'', no authenticated username available.", pathsToRevisions.keySet().iterator().next());
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        Map<String, String> pathsToTokens = new LinkedHashMap<String, String>();
+        for (String path : pathsToRevisions.keySet()) {
+            String canonicalPath = SVNPathUtil.canonicalizeAbsolutePath(path);
+            String customToken = null;
+            if (isHooksEnabled()) {
+                customToken = FSHooks.runPreLockHook(this, canonicalPath, username, comment, stealLock);
+            }
+            pathsToTokens.put(path, customToken);
+        }
+
+        Map<String, SVNLock> locks = new LinkedHashMap<String, SVNLock>();
+        Map<String, SVNErrorMessage> errors = new LinkedHashMap<String, SVNErrorMessage>();
+
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                FSRevisionRoot root = createRevisionRoot(readYoungestRevision());
+                Collection<SVNLock> locksToSteal = new ArrayList<SVNLock>();
+                for (String path : pathsToTokens.keySet()) {
+                    Long revision = pathsToRevisions.get(path);
+                    long currentRevision = revision != null ? revision.longValue() : SVNRepository.INVALID_REVISION;
+                    try {
+                        locks.put(path, createLock(root, SVNPathUtil.canonicalizeAbsolutePath(path), pathsToTokens.get(path), username, comment,
+                                expirationDate, currentRevision, stealLock, isDAVComment, locksToSteal));
+                    } catch (SVNException svne) {
+                        if (!FSErrors.isLockError(svne.getErrorMessage())) {
+                            throw svne;
+                        }
+                        errors.put(path, svne.getErrorMessage());
+                    }
+                }
+                if (!locksToSteal.isEmpty()) {
+                    deleteLocks(locksToSteal);
+                }
+                if (!locks.isEmpty()) {
+                    setLocks(locks.values());
+                }
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
+
+        SVNErrorMessage hookError = null;
+        if (isHooksEnabled() && !locks.isEmpty()) {
+            String[] paths = new String[locks.size()];
+            int i = 0;
+            for (SVNLock lock : locks.values()) {
+                paths[i++] = lock.getPath();
+            }
+            try {
+                FSHooks.runPostLockHook(this, paths, username);
+            } catch (SVNException svne) {
+                hookError = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_LOCK_HOOK_FAILED, "Lock succeeded, but post-lock hook failed");
+                hookError.setChildErrorMessage(svne.getErrorMessage());
+            }
+        }
+
+        if (handler != null) {
+            for (String path : pathsToRevisions.keySet()) {
+                handler.handleLock(path, locks.get(path), errors.get(path));
+            }
+        }
+        if (hookError != null) {
+            SVNErrorManager.error(hookError, SVNLogType.FSFS);
+        }
+    }
+
+    /**
+     * Unlocks several paths at once. The pre-unlock hook runs for every path first, then
+     * all locks are removed under a single acquisition of the write lock, and the
+     * post-unlock hook runs once with the list of unlocked paths.
+     *
+     * <p/>
+     * Paths rejected by the pre-unlock hook or which can not be unlocked are reported to
+     * <code>handler</code> with an error, and the other paths are still unlocked. The first
+     * error which is not a regular unlock error is thrown once all paths are processed.
+     */
+    public void unlockPaths(Map<String, String> pathsToTokens, String username, boolean breakLock, boolean enableHooks,
+            ISVNLockHandler handler) throws SVNException {
+        if (!breakLock && username == null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_USER, "Cannot unlock path ''{0}'', no authenticated username available",
+                    pathsToTokens.keySet().iterator().next());
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+
+        Map<String, SVNLock> locks = new LinkedHashMap<String, SVNLock>();
+        Map<String, SVNErrorMessage> errors = new LinkedHashMap<String, SVNErrorMessage>();
+        // a path which can not be unlocked does not prevent the others from being unlocked.
+        SVNException pathError = null;
+
+        if (enableHooks && isHooksEnabled()) {
+            for (String path : pathsToTokens.keySet()) {
+                try {
+                    FSHooks.runPreUnlockHook(this, SVNPathUtil.canonicalizeAbsolutePath(path), username);
+                } catch (SVNException svne) {
+                    errors.put(path, svne.getErrorMessage());
+                }
+            }
+        }
+
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                for (String path : pathsToTokens.keySet()) {
+                    if (errors.containsKey(path)) {
+                        continue;
+                    }
+                    try {
+                        locks.put(path, getLockToRemove(SVNPathUtil.canonicalizeAbsolutePath(path), pathsToTokens.get(path), username, breakLock));
+                    } catch (SVNException svne) {
+                        if (!FSErrors.isUnlockError(svne.getErrorMessage()) && pathError == null) {
+                            pathError = svne;
+                        }
+                        errors.put(path, svne.getErrorMessage());
+                    }
+                }
+                if (!locks.isEmpty()) {
+                    deleteLocks(locks.values());
+                }
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
+
+        SVNErrorMessage hookError = null;
+        if (enableHooks && isHooksEnabled() && !locks.isEmpty()) {
+            String[] paths = new String[locks.size()];
+            int i = 0;
+            for (SVNLock lock : locks.values()) {
+                paths[i++] = lock.getPath();
+            }
+            try {
+                FSHooks.runPostUnlockHook(this, paths, username);
+            } catch (SVNException svne) {
+                hookError = SVNErrorMessage.create(SVNErrorCode.REPOS_POST_UNLOCK_HOOK_FAILED, "Unlock succeeded, but post-unlock hook failed");
+                hookError.setChildErrorMessage(svne.getErrorMessage());
+            }
+        }
+
+        if (handler != null) {
+            for (String path : pathsToTokens.keySet()) {
+                SVNLock lock = locks.get(path);
+                handler.handleUnlock(path, lock != null ? lock : new SVNLock(path, pathsToTokens.get(path), null, null, null, null), errors.get(path));
+            }
+        }
+        if (hookError != null) {
+            SVNErrorManager.error(hookError, SVNLogType.FSFS);
+        }
+        if (pathError != null) {
+            throw pathError;
+        }
+    }
+
     public SVNProperties compoundMetaProperties(long revision) throws SVNException {
         SVNProperties metaProperties = new SVNProperties();
         SVNProperties revProps = getRevisionProperties(revision);
@@ -1800,6 +2393,32 @@ public class FSFS {
             }
         }
 
+        FSPathHistoryIndex index = getPathHistoryIndex();
+        long[] candidates = index != null ? index.getDeletionCandidates(path, startRev, endRev) : null;
+        if (candidates != null && candidates.length == 0) {
+            // neither the path nor its parents were deleted or replaced in the range.
+            return SVNRepository.INVALID_REVISION;
+        }
+        if (candidates != null) {
+            // the path may only be deleted or replaced where it or one of its parents was,
+            // look for the first such revision where the node is gone.
+            int low = 0;
+            int high = candidates.length - 1;
+            long deletedRev = SVNRepository.INVALID_REVISION;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (isDeletedOrReplaced(path, candidates[middle], startNodeId, startRev)) {
+                    deletedRev = candidates[middle];
+                    high = middle - 1;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            if (FSRepository.isValidRevision(deletedRev)) {
+                return deletedRev;
+            }
+        }
+
         long midRev = (startRev + endRev)/2;
         while (true) {
             FSRevisionRoot root = createRevisionRoot(midRev);
@@ -1834,6 +2453,23 @@ public class FSFS {
         }
     }
 
+    private boolean isDeletedOrReplaced(String path, long revision, FSID startNodeId, long startRev) throws SVNException {
+        FSRevisionRoot root = createRevisionRoot(revision);
+        FSRevisionNode node = null;
+        try {
+            node = root.getRevisionNode(path);
+        } catch (SVNException svne) {
+            if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_NOT_FOUND) {
+                return true;
+            }
+            throw svne;
+        }
+        FSClosestCopy closestCopy = root.getClosestCopy(path);
+        return startNodeId.compareTo(node.getId()) == -1 || (closestCopy != null &&
+                closestCopy.getRevisionRoot() != null &&
+                closestCopy.getRevisionRoot().getRevision() > startRev);
+    }
+
     public SVNLocationEntry getPreviousLocation(String path, long revision, long[] appearedRevision) throws SVNException {
         if (appearedRevision != null && appearedRevision.length > 0) {
             appearedRevision[0] = SVNRepository.INVALID_REVISION;
@@ -1959,6 +2595,65 @@ public class FSFS {
         return myReposCacheManager;
     }
 
+    /**
+     * Returns the path history index of the repository, <code>null</code> unless it has been
+     * built with {@link #buildPathHistoryIndex()}.
+     */
+    public FSPathHistoryIndex getPathHistoryIndex() {
+        if (!myIsPathHistoryIndexOpened && getPathHistoryIndexFile().isFile()) {
+            // do not retry if the index could not be opened.
+            myIsPathHistoryIndexOpened = true;
+            myPathHistoryIndex = FSPathHistoryIndex.open(this);
+        }
+        return myPathHistoryIndex;
+    }
+
+    /**
+     * (Re)builds the path history index of all revisions of the repository, from then on
+     * the index is kept up to date by commits.
+     */
+    public void buildPathHistoryIndex() throws SVNException {
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                if (myPathHistoryIndex != null) {
+                    myPathHistoryIndex.close();
+                    myPathHistoryIndex = null;
+                }
+                myIsPathHistoryIndexOpened = false;
+                FSPathHistoryIndex.createPathHistoryIndex(getPathHistoryIndexFile());
+                FSPathHistoryIndex index = getPathHistoryIndex();
+                if (index == null) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Can''t open path history index ''{0}''", getPathHistoryIndexFile());
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                index.update();
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
+    }
+
+    /**
+     * Indexes new revisions if the repository has path history index. Called after the write
+     * lock is released, so that revisions committed by other processes are not indexed while
+     * holding it. Failures are not reported, the index is brought up to date by the next commit.
+     */
+    public void updatePathHistoryIndex() {
+        FSPathHistoryIndex index = getPathHistoryIndex();
+        if (index != null) {
+            try {
+                index.update();
+            } catch (SVNException e) {
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            } catch (RuntimeException e) {
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
     public static File findRepositoryRoot(File path) {
         if (path == null) {
             path = new File("");
@@ -2045,11 +2740,19 @@ public class FSFS {
 
     protected FSFile getPackOrRevisionFSFile(long revision) throws SVNException {
         File file = getAbsoluteRevisionPath(revision);
+        if (FSMappedFile.isEnabled()) {
+            FSMappedFile mappedFile = FSMappedFile.getMappedFile(file);
+            if (mappedFile == null) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            return new FSFile(mappedFile);
+        }
         if (!file.exists()) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        return FSFilePool.openFile(this, file);
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -2155,27 +2858,47 @@ public class FSFS {
             SVNFileUtil.closeFile(currentOS);
         }
 
+        syncFile(tmpCurrentFile);
         SVNFileUtil.rename(tmpCurrentFile, currentFile);
+        getYoungestRevisionWatcher().revisionCommitted(revision);
     }
 
     protected long getPackedOffset(long revision) throws SVNException {
-        //TODO: later on introduce invoking memcache here to fetch\store the requested data
-        //long shard = revision / myMaxFilesPerDirectory;
+        long[] manifest = getPackManifest(revision);
+        int index = (int) (revision % myMaxFilesPerDirectory);
+        SVNErrorManager.assertionFailure(index < manifest.length, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
+        return manifest[index];
+    }
+
+    private long[] getPackManifest(long revision) throws SVNException {
+        long shard = revision / myMaxFilesPerDirectory;
+        FSCacheKey cacheKey = new FSCacheKey(getCacheNamespace(), shard * myMaxFilesPerDirectory, 0);
+        long[] manifest = FSCacheManager.getPackManifestsCache().get(cacheKey);
+        if (manifest != null) {
+            return manifest;
+        }
+
         File manifestFile = getPackedRevPath(revision, PACK_KIND_MANIFEST);
         BufferedReader reader = null;
-        LinkedList manifest = new LinkedList();
+        long[] offsets = new long[(int) myMaxFilesPerDirectory];
+        int count = 0;
         try {
             reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile)));
             String line = null;
             while ((line = reader.readLine()) != null) {
-                Long offset = null;
+                long offset = 0;
                 try {
-                    offset = Long.valueOf(line);
+                    offset = Long.parseLong(line);
                 } catch (NumberFormatException nfe) {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT);
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                manifest.add(offset);
+                if (count == offsets.length) {
+                    long[] newOffsets = new long[offsets.length * 2 + 1];
+                    System.arraycopy(offsets, 0, newOffsets, 0, count);
+                    offsets = newOffsets;
+                }
+                offsets[count++] = offset;
             }
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
@@ -2184,9 +2907,14 @@ public class FSFS {
             SVNFileUtil.closeFile(reader);
         }
 
-        Long revOffsetLong = (Long) manifest.get((int) (revision % myMaxFilesPerDirectory));
-        SVNErrorManager.assertionFailure(revOffsetLong != null, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
-        return revOffsetLong.longValue();
+        manifest = new long[count];
+        System.arraycopy(offsets, 0, manifest, 0, count);
+        FSCacheManager.getPackManifestsCache().put(cacheKey, manifest, 64 + 8 * (long) count);
+        return manifest;
+    }
+
+    protected void invalidatePackManifest(long shard) throws SVNException {
+        FSCacheManager.getPackManifestsCache().remove(new FSCacheKey(getCacheNamespace(), shard * myMaxFilesPerDirectory, 0));
     }
 
     private SVNConfigFile loadConfig() {
@@ -2209,7 +2937,8 @@ public class FSFS {
             return;
         }
 
-        getYoungestRevision();
+        // a cached youngest revision may not know of commits of other processes yet.
+        readYoungestRevision();
 
         if (revision <= myYoungestRevisionCache) {
             return;
@@ -2230,6 +2959,10 @@ public class FSFS {
     }
 
     private void unlock(String path, String token, String username, boolean breakLock) throws SVNException {
+        deleteLock(getLockToRemove(path, token, username, breakLock));
+    }
+
+    private SVNLock getLockToRemove(String path, String token, String username, boolean breakLock) throws SVNException {
         SVNLock lock = getLock(path, true, true);
         if (!breakLock) {
             if (token == null || !token.equals(lock.getID())) {
@@ -2242,13 +2975,23 @@ public class FSFS {
                 SVNErrorManager.error(FSErrors.errorLockOwnerMismatch(username, lock.getOwner(), this), SVNLogType.FSFS);
             }
         }
-        deleteLock(lock);
+        return lock;
     }
 
     private SVNLock lock(String path, String token, String username, String comment, Date expirationDate, long currentRevision,
             boolean stealLock, boolean isDAVComment) throws SVNException {
-        long youngestRev = getYoungestRevision();
-        FSRevisionRoot root = createRevisionRoot(youngestRev);
+        FSRevisionRoot root = createRevisionRoot(readYoungestRevision());
+        Collection<SVNLock> locksToSteal = new ArrayList<SVNLock>(1);
+        SVNLock lock = createLock(root, path, token, username, comment, expirationDate, currentRevision, stealLock, isDAVComment, locksToSteal);
+        for (SVNLock lockToSteal : locksToSteal) {
+            deleteLock(lockToSteal);
+        }
+        setLock(lock, isDAVComment);
+        return lock;
+    }
+
+    private SVNLock createLock(FSRevisionRoot root, String path, String token, String username, String comment, Date expirationDate,
+            long currentRevision, boolean stealLock, boolean isDAVComment, Collection<SVNLock> locksToSteal) throws SVNException {
         SVNNodeKind kind = root.checkNodeKind(path);
         
         if (token != null) {
@@ -2306,20 +3049,14 @@ public class FSFS {
             if (!stealLock) {
                 SVNErrorManager.error(FSErrors.errorPathAlreadyLocked(existingLock.getPath(), existingLock.getOwner(), this), SVNLogType.FSFS);
             } else {
-                deleteLock(existingLock);
+                locksToSteal.add(existingLock);
             }
         }
 
-        SVNLock lock = null;
         if (token == null) {
             token = FSRepositoryUtil.generateLockToken();
-            lock = new FSLock(path, token, username, comment, new Date(System.currentTimeMillis()), expirationDate, isDAVComment);
-        } else {
-            lock = new FSLock(path, token, username, comment, new Date(System.currentTimeMillis()), expirationDate, isDAVComment);
         }
-
-        setLock(lock, isDAVComment);
-        return lock;
+        return new FSLock(path, token, username, comment, new Date(System.currentTimeMillis()), expirationDate, isDAVComment);
     }
 
     private void setLock(SVNLock lock, boolean isDAVComment) throws SVNException {
@@ -2327,6 +3064,11 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "FATAL error: attempted to set a null lock");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        FSLockDatabase lockDatabase = getLockDatabaseForWrite();
+        if (lockDatabase != null) {
+            lockDatabase.setLocks(Collections.singletonList(lock));
+            return;
+        }
         String lastChild = "";
         String path = lock.getPath();
         Collection children = new ArrayList();
@@ -41,6 +41,9 @@ public class FSFile {
     private int myOffset;
     private int myLength;
     private FileChannel myChannel;
+    private FSMappedFile myMappedFile;
+    private String myPoolKey;
+    private long myLastModified;
     private InputStream myInputStream;
     private long myPosition;
     
@@ -66,12 +69,38 @@ public class FSFile {
         myBufferPosition = 0;
         myBuffer = ByteBuffer.allocate(1024);
         myReadLineBuffer = ByteBuffer.allocate(1024);
-        myDecoder = Charset.forName("UTF-8").newDecoder();
-        myDecoder = myDecoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        myDecoder = createDecoder();
         myL2POffset = -1;
         myP2LOffset = -1;
     }
 
+    FSFile(File file, String poolKey, int bufferSize, FSFilePool.Handle handle) {
+        myFile = file;
+        myData = null;
+        myPoolKey = poolKey;
+        myPosition = 0;
+        if (handle != null) {
+            myChannel = handle.myChannel;
+            myLastModified = handle.myLastModified;
+            myInputStream = handle.myInputStream;
+            myBuffer = handle.myBuffer;
+            myBufferPosition = handle.myBufferPosition;
+            myReadLineBuffer = handle.myReadLineBuffer;
+            myDecoder = handle.myDecoder;
+        } else {
+            myBufferPosition = 0;
+            myBuffer = ByteBuffer.allocate(bufferSize);
+            myReadLineBuffer = ByteBuffer.allocate(1024);
+        }
+        myL2POffset = -1;
+        myP2LOffset = -1;
+    }
+
+    public FSFile(FSMappedFile mappedFile) {
+        this(mappedFile.getFile());
+        myMappedFile = mappedFile;
+    }
+
     public FSFile(byte[] data) {
         this(data, 0, data.length);
     }
@@ -85,8 +114,7 @@ public class FSFile {
         myBufferPosition = 0;
         myBuffer = ByteBuffer.allocate(1024);
         myReadLineBuffer = ByteBuffer.allocate(1024);
-        myDecoder = Charset.forName("UTF-8").newDecoder();
-        myDecoder = myDecoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+        myDecoder = createDecoder();
         myL2POffset = -1;
         myP2LOffset = -1;
     }
@@ -100,6 +128,9 @@ public class FSFile {
     }
 
     public long size() {
+        if (myMappedFile != null) {
+            return myMappedFile.length();
+        }
         return myData == null ? myFile.length() : myLength;
     }
     
@@ -163,7 +194,7 @@ public class FSFile {
                 }
             }
             myReadLineBuffer.flip();
-            return myDecoder.decode(myReadLineBuffer).toString();
+            return getDecoder().decode(myReadLineBuffer).toString();
         } catch (IOException e) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Can''t read length line from file {0}: {1}", new Object[]{getFile(), e.getLocalizedMessage()});
             SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
@@ -194,7 +225,7 @@ public class FSFile {
 	                lineStart = false;
                 }
                 myReadLineBuffer.flip();
-                buffer.append(myDecoder.decode(myReadLineBuffer).toString());
+                buffer.append(getDecoder().decode(myReadLineBuffer).toString());
             }
         } catch (IOException e) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Can''t read length line from file {0}: {1}", new Object[]{getFile(), e.getLocalizedMessage()});
@@ -246,7 +277,7 @@ public class FSFile {
                 int limit = myReadLineBuffer.limit();
                 String key = null;
                 try {
-                    key = myDecoder.decode(myReadLineBuffer).toString();
+                    key = getDecoder().decode(myReadLineBuffer).toString();
                 } catch (MalformedInputException mfi) {
                     key = new String(myReadLineBuffer.array(), myReadLineBuffer.arrayOffset() + pos, limit - pos);
                 }
@@ -276,7 +307,7 @@ public class FSFile {
                 pos = myReadLineBuffer.position();
                 limit = myReadLineBuffer.limit();
                 try {
-                    properties.put(key, myDecoder.decode(myReadLineBuffer).toString());
+                    properties.put(key, getDecoder().decode(myReadLineBuffer).toString());
                 } catch (CharacterCodingException cce) {
                     if (allowBinaryValues){
                         byte[] dst = new byte[limit - pos];
@@ -363,6 +394,16 @@ public class FSFile {
             }
             return myData[((int) (myOffset + myPosition - 1))] & 0xff;
         }
+        if (myMappedFile != null) {
+            int r = myMappedFile.read(myPosition);
+            if (r >= 0) {
+                myPosition++;
+                if (myDigest != null) {
+                    myDigest.update((byte) r);
+                }
+            }
+            return r;
+        }
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
             if (fill() <= 0) {
                 return -1;
@@ -388,6 +429,18 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedFile != null) {
+            int readFrom = target.arrayOffset() + target.position();
+            int read = myMappedFile.read(myPosition, target.array(), readFrom, target.remaining());
+            if (read > 0) {
+                if (myDigest != null) {
+                    myDigest.update(target.array(), readFrom, read);
+                }
+                target.position(target.position() + read);
+                myPosition += read;
+            }
+            return read;
+        }
         int read = 0;
         while(target.hasRemaining()) {
             if (fill() < 0) {
@@ -418,6 +471,16 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (myMappedFile != null) {
+            int read = myMappedFile.read(myPosition, buffer, offset, length);
+            if (read > 0) {
+                if (myDigest != null) {
+                    myDigest.update(buffer, offset, read);
+                }
+                myPosition += read;
+            }
+            return read;
+        }
         int read = 0;
         int toRead = length;
         while(toRead > 0) {
@@ -444,6 +507,17 @@ public class FSFile {
     }
 
     public void close() {
+        if (myPoolKey != null && myChannel != null) {
+            FSFilePool.Handle handle = new FSFilePool.Handle(myFile, myLastModified, myChannel, myInputStream, myBuffer, myBufferPosition, myReadLineBuffer, myDecoder);
+            if (FSFilePool.release(myPoolKey, handle)) {
+                // buffers now belong to the pool and are allocated again if this file is reused
+                myBuffer = null;
+                myReadLineBuffer = null;
+                myDecoder = null;
+                myChannel = null;
+                myInputStream = null;
+            }
+        }
         if (myChannel != null) {
             try {
                 myChannel.close();
@@ -460,6 +534,9 @@ public class FSFile {
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || (myPosition >= myBufferPosition + myBuffer.limit())) {
             myBufferPosition = myPosition;
             getChannel().position(myBufferPosition);
+            if (myBuffer == null) {
+                myBuffer = ByteBuffer.allocate(1024);
+            }
             myBuffer.clear();
             int read = getChannel().read(myBuffer);
             myBuffer.position(0);
@@ -470,18 +547,33 @@ public class FSFile {
     }
     
     private void allocateReadBuffer(int limit) {
-        if (limit > myReadLineBuffer.capacity()) {
+        if (myReadLineBuffer == null || limit > myReadLineBuffer.capacity()) {
             myReadLineBuffer = ByteBuffer.allocate(limit*3/2);
         }
         myReadLineBuffer.clear();
         myReadLineBuffer.limit(limit);
     }
     
+    private CharsetDecoder getDecoder() {
+        if (myDecoder == null) {
+            myDecoder = createDecoder();
+        }
+        return myDecoder;
+    }
+
+    private static CharsetDecoder createDecoder() {
+        CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
+        return decoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
     private FileChannel getChannel() throws IOException {
         if (myChannel == null) {
             final FileInputStream fileInputStream = SVNFileUtil.createFileInputStream(myFile);
             myChannel = fileInputStream.getChannel();
             myInputStream = fileInputStream;
+            if (myPoolKey != null) {
+                myLastModified = myFile.lastModified();
+            }
         }
         return myChannel;
     }
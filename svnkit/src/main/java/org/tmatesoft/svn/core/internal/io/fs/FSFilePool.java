@@ -0,0 +1,189 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Keeps channels and read buffers of closed revision and pack {@link FSFile}s open,
+ * so that the next <code>FSFile</code> of the same file reuses them instead of
+ * opening the file again. The least recently released handles are closed when the
+ * pool is full. The pool is shared by all FSFS instances, files of different
+ * repositories are told apart by the repository cache namespace.
+ *
+ * <p/>
+ * The maximal number of idle handles may be set with the <code>svnkit.fsfs.filePool.size</code>
+ * system property, zero disables pooling. A handle is not reused if the size or the
+ * modification time of its file changed since it was opened, as the file may have been
+ * replaced, for instance by recovery or by restoring a backup.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSFilePool {
+
+    public static final String FILE_POOL_SIZE_PROPERTY = "svnkit.fsfs.filePool.size";
+
+    private static final int MAX_BUFFER_SIZE = 0x100000;
+
+    private static int ourMaxIdleHandlesCount = Integer.getInteger(FILE_POOL_SIZE_PROPERTY, 64).intValue();
+
+    private static final Map<String, LinkedList<Handle>> ourIdleHandles = new HashMap<String, LinkedList<Handle>>();
+    private static final LinkedHashMap<Handle, String> ourReleaseOrder = new LinkedHashMap<Handle, String>();
+
+    public static FSFile openFile(FSFS owner, File file) throws SVNException {
+        if (getMaxIdleHandlesCount() <= 0) {
+            return new FSFile(file);
+        }
+        final String key = owner.getCacheNamespace() + ":" + file.getPath();
+        Handle handle = null;
+        synchronized (ourIdleHandles) {
+            final LinkedList<Handle> idleHandles = ourIdleHandles.get(key);
+            if (idleHandles != null) {
+                handle = idleHandles.removeLast();
+                if (idleHandles.isEmpty()) {
+                    ourIdleHandles.remove(key);
+                }
+                ourReleaseOrder.remove(handle);
+            }
+        }
+        if (handle != null && isStale(handle)) {
+            closeChannel(handle);
+            handle = null;
+        }
+        final int bufferSize = (int) Math.max(1024, Math.min(MAX_BUFFER_SIZE, owner.getBlockSize()));
+        return new FSFile(file, key, bufferSize, handle);
+    }
+
+    public static synchronized int getMaxIdleHandlesCount() {
+        return ourMaxIdleHandlesCount;
+    }
+
+    public static void setMaxIdleHandlesCount(int count) {
+        synchronized (FSFilePool.class) {
+            ourMaxIdleHandlesCount = count;
+        }
+        synchronized (ourIdleHandles) {
+            closeEldest(count);
+        }
+    }
+
+    /**
+     * Closes idle handles of files in <code>directory</code>, called before the files are deleted.
+     */
+    public static void releaseDirectory(File directory) {
+        synchronized (ourIdleHandles) {
+            for (Iterator<Map.Entry<Handle, String>> entries = ourReleaseOrder.entrySet().iterator(); entries.hasNext();) {
+                final Map.Entry<Handle, String> entry = entries.next();
+                if (directory.equals(entry.getKey().myFile.getParentFile())) {
+                    entries.remove();
+                    close(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (ourIdleHandles) {
+            closeEldest(0);
+        }
+    }
+
+    static boolean release(String key, Handle handle) {
+        final int maxCount = getMaxIdleHandlesCount();
+        if (maxCount <= 0) {
+            return false;
+        }
+        synchronized (ourIdleHandles) {
+            LinkedList<Handle> idleHandles = ourIdleHandles.get(key);
+            if (idleHandles == null) {
+                idleHandles = new LinkedList<Handle>();
+                ourIdleHandles.put(key, idleHandles);
+            }
+            idleHandles.add(handle);
+            ourReleaseOrder.put(handle, key);
+            closeEldest(maxCount);
+            return true;
+        }
+    }
+
+    private static void closeEldest(int maxCount) {
+        for (Iterator<Map.Entry<Handle, String>> entries = ourReleaseOrder.entrySet().iterator(); ourReleaseOrder.size() > maxCount && entries.hasNext();) {
+            final Map.Entry<Handle, String> entry = entries.next();
+            entries.remove();
+            close(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void close(Handle handle, String key) {
+        final LinkedList<Handle> idleHandles = ourIdleHandles.get(key);
+        if (idleHandles != null) {
+            idleHandles.remove(handle);
+            if (idleHandles.isEmpty()) {
+                ourIdleHandles.remove(key);
+            }
+        }
+        closeChannel(handle);
+    }
+
+    private static void closeChannel(Handle handle) {
+        try {
+            handle.myChannel.close();
+        } catch (IOException e) {
+        }
+        SVNFileUtil.closeFile(handle.myInputStream);
+    }
+
+    private static boolean isStale(Handle handle) {
+        try {
+            return handle.myFile.lastModified() != handle.myLastModified || handle.myFile.length() != handle.myChannel.size();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    static class Handle {
+
+        final File myFile;
+        final long myLastModified;
+        final FileChannel myChannel;
+        final InputStream myInputStream;
+        final ByteBuffer myBuffer;
+        final long myBufferPosition;
+        final ByteBuffer myReadLineBuffer;
+        final CharsetDecoder myDecoder;
+
+        Handle(File file, long lastModified, FileChannel channel, InputStream inputStream, ByteBuffer buffer, long bufferPosition, ByteBuffer readLineBuffer, CharsetDecoder decoder) {
+            myFile = file;
+            myLastModified = lastModified;
+            myChannel = channel;
+            myInputStream = inputStream;
+            myBuffer = buffer;
+            myBufferPosition = bufferPosition;
+            myReadLineBuffer = readLineBuffer;
+            myDecoder = decoder;
+        }
+    }
+}
@@ -12,10 +12,14 @@
 package org.tmatesoft.svn.core.internal.io.fs;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,18 +38,37 @@ import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
 import org.tmatesoft.svn.core.io.SVNFileRevision;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Finds revisions of a file and sends them with deltas against the previous revision
+ * to a handler, as used by blame.
+ *
+ * <p/>
+ * Deltas may be computed ahead of the handler on pooled threads, the number of revisions
+ * computed ahead is set with the <code>svnkit.fsfs.fileRevisions.prefetch</code> system property
+ * (prefetching is disabled by default) and the number of threads with
+ * <code>svnkit.fsfs.fileRevisions.prefetchThreads</code>.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSFileRevisionsFinder {
+
+    public static final String PREFETCH_PROPERTY = "svnkit.fsfs.fileRevisions.prefetch";
+    public static final String PREFETCH_THREADS_PROPERTY = "svnkit.fsfs.fileRevisions.prefetchThreads";
+
+    private static int ourPrefetchCount = Integer.getInteger(PREFETCH_PROPERTY, 0).intValue();
+    private static final int ourPrefetchThreadsCount = Math.max(1, Integer.getInteger(PREFETCH_THREADS_PROPERTY,
+            Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
+
     private FSFS myFSFS;
     private SVNDeltaGenerator myDeltaGenerator;
     
@@ -68,31 +91,66 @@ public class FSFileRevisionsFinder {
        
         SVNErrorManager.assertionFailure(!mainLinePathRevisions.isEmpty(), "no main line path revisions found", SVNLogType.FSFS);
 
-        SendBaton sb = new SendBaton();
-        sb.myLastProps = new SVNProperties();
+        List<SVNLocationEntry> pathRevisions = new ArrayList<SVNLocationEntry>(mainLinePathRevisions.size() + mergedPathRevisions.size());
         int mainLinePos = mainLinePathRevisions.size() - 1;
         int mergedPos = mergedPathRevisions.size() - 1;
-        int i = 0;
         while (mainLinePos >= 0 && mergedPos >= 0) {
             SVNLocationEntry mainPathRev = (SVNLocationEntry) mainLinePathRevisions.get(mainLinePos);
             SVNLocationEntry mergedPathRev = (SVNLocationEntry) mergedPathRevisions.get(mergedPos);
             if (mainPathRev.getRevision() <= mergedPathRev.getRevision()) {
-                sendPathRevision(mainPathRev, sb, handler);
+                pathRevisions.add(mainPathRev);
                 mainLinePos--;
             } else {
-                sendPathRevision(mergedPathRev, sb, handler);
+                pathRevisions.add(mergedPathRev);
                 mergedPos--;
             }
-            i++;
         }
         
         for (; mainLinePos >= 0; mainLinePos--) {
-            SVNLocationEntry mainPathRev = (SVNLocationEntry) mainLinePathRevisions.get(mainLinePos);
-            sendPathRevision(mainPathRev, sb, handler);
-            i++;
+            pathRevisions.add((SVNLocationEntry) mainLinePathRevisions.get(mainLinePos));
         }
-        
-        return i;
+
+        SendBaton sb = new SendBaton();
+        sb.myLastProps = new SVNProperties();
+        FileRevisionPrefetcher prefetcher = createPrefetcher(pathRevisions, handler);
+        try {
+            for (int i = 0; i < pathRevisions.size(); i++) {
+                if (prefetcher != null) {
+                    FileRevision fileRevision = prefetcher.get(i);
+                    if (fileRevision == null) {
+                        fileRevision = createFileRevision(i > 0 ? pathRevisions.get(i - 1) : null, pathRevisions.get(i), getDeltaGenerator());
+                    }
+                    sendPrefetchedPathRevision(pathRevisions.get(i), fileRevision, sb, handler);
+                } else {
+                    sendPathRevision(pathRevisions.get(i), sb, handler);
+                }
+            }
+        } finally {
+            if (prefetcher != null) {
+                prefetcher.dispose();
+            }
+        }
+        return pathRevisions.size();
+    }
+
+    public static synchronized int getPrefetchCount() {
+        return ourPrefetchCount;
+    }
+
+    /**
+     * Sets the number of file revisions whose deltas are computed ahead on pooled threads
+     * while the handler consumes the current one, zero disables prefetching.
+     */
+    public static synchronized void setPrefetchCount(int count) {
+        ourPrefetchCount = count;
+    }
+
+    private FileRevisionPrefetcher createPrefetcher(List<SVNLocationEntry> pathRevisions, ISVNFileRevisionHandler handler) {
+        int prefetchCount = getPrefetchCount();
+        if (handler == null || prefetchCount <= 0 || pathRevisions.size() < 2) {
+            return null;
+        }
+        return new FileRevisionPrefetcher(pathRevisions, prefetchCount);
     }
     
     private void sendPathRevision(SVNLocationEntry pathRevision, SendBaton sendBaton, 
@@ -152,6 +210,75 @@ public class FSFileRevisionsFinder {
         return myDeltaGenerator;
     }
     
+    private void sendPrefetchedPathRevision(SVNLocationEntry pathRevision, FileRevision fileRevision, SendBaton sendBaton, 
+            ISVNFileRevisionHandler handler) throws SVNException {
+        SVNProperties propDiffs = FSRepositoryUtil.getPropsDiffs(sendBaton.myLastProps, fileRevision.myProperties);
+        handler.openRevision(new SVNFileRevision(pathRevision.getPath(), pathRevision.getRevision(), 
+                fileRevision.myRevisionProperties, propDiffs, pathRevision.isResultOfMerge()));
+        if (fileRevision.myWindows != null) {
+            handler.applyTextDelta(pathRevision.getPath(), null);
+            for (Iterator<SVNDiffWindow> windows = fileRevision.myWindows.iterator(); windows.hasNext();) {
+                OutputStream os = handler.textDeltaChunk(pathRevision.getPath(), windows.next());
+                SVNFileUtil.closeFile(os);
+            }
+            handler.textDeltaEnd(pathRevision.getPath());
+        }
+        handler.closeRevision(pathRevision.getPath());
+        sendBaton.myLastProps = fileRevision.myProperties;
+    }
+
+    private FileRevision createFileRevision(SVNLocationEntry previousPathRevision, SVNLocationEntry pathRevision, 
+            SVNDeltaGenerator deltaGenerator) throws SVNException {
+        FileRevision fileRevision = new FileRevision();
+        fileRevision.myRevisionProperties = myFSFS.getRevisionProperties(pathRevision.getRevision());
+        FSRevisionRoot root = myFSFS.createRevisionRoot(pathRevision.getRevision());
+        FSRevisionNode fileNode = root.getRevisionNode(pathRevision.getPath());
+        fileRevision.myProperties = fileNode.getProperties(myFSFS);
+
+        FSRevisionRoot lastRoot = null;
+        boolean contentsChanged = true;
+        if (previousPathRevision != null) {
+            lastRoot = myFSFS.createRevisionRoot(previousPathRevision.getRevision());
+            contentsChanged = FSRepositoryUtil.areFileContentsChanged(lastRoot, previousPathRevision.getPath(), 
+                    root, pathRevision.getPath());
+        }
+        if (!contentsChanged) {
+            return fileRevision;
+        }
+        
+        final List<SVNDiffWindow> windows = new ArrayList<SVNDiffWindow>();
+        InputStream sourceStream = null;
+        InputStream targetStream = null;
+        try {
+            if (lastRoot != null) {
+                sourceStream = lastRoot.getFileStreamForPath(new SVNDeltaCombiner(), previousPathRevision.getPath());
+            } else {
+                sourceStream = FSInputStream.createDeltaStream(new SVNDeltaCombiner(), (FSRevisionNode) null, myFSFS);
+            }
+            targetStream = root.getFileStreamForPath(new SVNDeltaCombiner(), pathRevision.getPath());
+            deltaGenerator.sendDelta(pathRevision.getPath(), sourceStream, 0, targetStream, new ISVNDeltaConsumer() {
+                public void applyTextDelta(String path, String baseChecksum) {
+                }
+
+                public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                    if (diffWindow.getDataLength() > 0) {
+                        diffWindow = diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength()));
+                    }
+                    windows.add(diffWindow);
+                    return null;
+                }
+
+                public void textDeltaEnd(String path) {
+                }
+            }, false);
+        } finally {
+            SVNFileUtil.closeFile(sourceStream);
+            SVNFileUtil.closeFile(targetStream);
+        }
+        fileRevision.myWindows = windows;
+        return fileRevision;
+    }
+    
     private LinkedList findMergedRevisions(LinkedList mainLinePathRevisions, Map duplicatePathRevs) throws SVNException {
         LinkedList mergedPathRevisions = new LinkedList();
         LinkedList oldPathRevisions = mainLinePathRevisions;
@@ -244,6 +371,10 @@ public class FSFileRevisionsFinder {
     }
 
     private Map getMergedMergeInfo(String path, long revision) throws SVNException {
+        FSPathHistoryIndex index = myFSFS.getPathHistoryIndex();
+        if (index != null && index.isMergeInfoUnchanged(path, revision)) {
+            return new TreeMap();
+        }
         Map currentMergeInfo = getPathMergeInfo(path, revision);
         Map previousMergeInfo = null; 
         try {    
@@ -280,4 +411,34 @@ public class FSFileRevisionsFinder {
         private String myLastPath;
         private SVNProperties myLastProps;
     }
+
+    private static class FileRevision {
+        private SVNProperties myRevisionProperties;
+        private SVNProperties myProperties;
+        private List<SVNDiffWindow> myWindows;
+    }
+
+    /**
+     * Computes file revisions ahead of the handler on pooled threads, so that the number
+     * of buffered deltas stays bounded by the prefetch count. Each worker reuses its own
+     * delta generator.
+     */
+    private class FileRevisionPrefetcher extends FSOrderedPrefetcher<FileRevision, SVNDeltaGenerator> {
+
+        private final List<SVNLocationEntry> myPathRevisions;
+
+        public FileRevisionPrefetcher(List<SVNLocationEntry> pathRevisions, int prefetchCount) {
+            super(pathRevisions.size(), prefetchCount, ourPrefetchThreadsCount);
+            myPathRevisions = pathRevisions;
+        }
+
+        protected SVNDeltaGenerator createWorkerState() {
+            return new SVNDeltaGenerator();
+        }
+
+        protected FileRevision prefetch(int index, SVNDeltaGenerator deltaGenerator) throws SVNException {
+            SVNLocationEntry previousPathRevision = index > 0 ? myPathRevisions.get(index - 1) : null;
+            return createFileRevision(previousPathRevision, myPathRevisions.get(index), deltaGenerator);
+        }
+    }
 }
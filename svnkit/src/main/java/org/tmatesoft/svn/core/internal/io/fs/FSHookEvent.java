@@ -0,0 +1,156 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.List;
+
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+
+
+/**
+ * Describes an operation an {@link IFSHook} is run for. Which of the values are
+ * set depends on the hook type, they are the ones a hook script of that type gets.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSHookEvent {
+
+    private String myHookName;
+    private File myRepositoryRoot;
+    private long myRevision;
+    private String myTxnName;
+    private String myUserName;
+    private String[] myPaths;
+    private String myPropertyName;
+    private byte[] myPropertyValue;
+    private String myAction;
+    private String myComment;
+    private boolean myIsStealLock;
+    private List<?> myCapabilities;
+
+    FSHookEvent(String hookName, File repositoryRoot) {
+        myHookName = hookName;
+        myRepositoryRoot = repositoryRoot;
+        myRevision = -1;
+    }
+
+    public String getHookName() {
+        return myHookName;
+    }
+
+    public File getRepositoryRoot() {
+        return myRepositoryRoot;
+    }
+
+    /**
+     * Returns the committed revision for <code>post-commit</code>, or the revision
+     * whose property is changed for the revprop change hooks.
+     */
+    public long getRevision() {
+        return myRevision;
+    }
+
+    /**
+     * Returns the name of the transaction being committed for <code>pre-commit</code>.
+     */
+    public String getTxnName() {
+        return myTxnName;
+    }
+
+    /**
+     * Returns the name of the user performing the operation, for <code>start-commit</code>
+     * it is the value of the {@link SVNRevisionProperty#AUTHOR} property.
+     */
+    public String getUserName() {
+        return myUserName;
+    }
+
+    /**
+     * Returns the path being locked or unlocked for pre-hooks, or all of the locked
+     * or unlocked paths for post-hooks.
+     */
+    public String[] getPaths() {
+        return myPaths;
+    }
+
+    public String getPropertyName() {
+        return myPropertyName;
+    }
+
+    /**
+     * Returns the new value of the property for <code>pre-revprop-change</code>
+     * and the old one for <code>post-revprop-change</code>.
+     */
+    public byte[] getPropertyValue() {
+        return myPropertyValue;
+    }
+
+    /**
+     * Returns one of {@link FSHooks#REVPROP_ADD}, {@link FSHooks#REVPROP_MODIFY}
+     * or {@link FSHooks#REVPROP_DELETE}.
+     */
+    public String getAction() {
+        return myAction;
+    }
+
+    public String getComment() {
+        return myComment;
+    }
+
+    public boolean isStealLock() {
+        return myIsStealLock;
+    }
+
+    public List<?> getCapabilities() {
+        return myCapabilities;
+    }
+
+    void setRevision(long revision) {
+        myRevision = revision;
+    }
+
+    void setTxnName(String txnName) {
+        myTxnName = txnName;
+    }
+
+    void setUserName(String userName) {
+        myUserName = userName;
+    }
+
+    void setPaths(String[] paths) {
+        myPaths = paths;
+    }
+
+    void setProperty(String propertyName, byte[] propertyValue, String action) {
+        myPropertyName = propertyName;
+        myPropertyValue = propertyValue;
+        myAction = action;
+    }
+
+    void setComment(String comment) {
+        myComment = comment;
+    }
+
+    void setStealLock(boolean stealLock) {
+        myIsStealLock = stealLock;
+    }
+
+    void setCapabilities(List<?> capabilities) {
+        myCapabilities = capabilities;
+    }
+
+    public String toString() {
+        return myHookName + " " + myRepositoryRoot;
+    }
+}
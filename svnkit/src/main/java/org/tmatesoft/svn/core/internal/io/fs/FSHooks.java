@@ -15,18 +15,39 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.ISVNThreadPool;
 import org.tmatesoft.svn.core.internal.util.SVNStreamGobbler;
+import org.tmatesoft.svn.core.internal.wc.SVNClassLoader;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileType;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
+ * Runs repository hooks: hook scripts from the <code>hooks</code> directory of the
+ * repository and {@link IFSHook}s registered in this JVM. Java hooks are run first.
+ *
+ * <p/>
+ * Java <code>post-commit</code> hooks are run on a pooled thread, so that commits do not
+ * wait for them; hooks of one repository are run one at a time in order of revisions.
+ * The place of an event among the events of the repository is taken with
+ * {@link #schedulePostCommitHook(FSFS, long)} under the repository write lock, and the event
+ * is run once the commit is complete and released with {@link #runPostCommitHook(FSFS, long, FSHookEvent)}.
+ * Set the <code>svnkit.hooks.asyncPostCommit</code> system property to <code>false</code>
+ * to run them on the committing thread instead.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
@@ -52,7 +73,14 @@ public class FSHooks {
             ".exe", ".bat", ".cmd"
     };
     
+    public static final String ASYNC_POST_COMMIT_PROPERTY = "svnkit.hooks.asyncPostCommit";
+
     private static Boolean ourIsHooksEnabled;
+    private static boolean ourIsAsyncPostCommit = Boolean.valueOf(System.getProperty(ASYNC_POST_COMMIT_PROPERTY, "true")).booleanValue();
+
+    private static final List<IFSHook> ourHooks = new CopyOnWriteArrayList<IFSHook>();
+    private static final Map<File, PostCommitHooksRunner> ourPostCommitRunners = new HashMap<File, PostCommitHooksRunner>();
+    private static ISVNThreadPool ourPostCommitThreadPool;
     
     public static void setHooksEnabled(boolean enabled) {
         ourIsHooksEnabled = enabled ? Boolean.TRUE : Boolean.FALSE;
@@ -65,6 +93,156 @@ public class FSHooks {
         return ourIsHooksEnabled.booleanValue();
     }
 
+    public static void registerHook(IFSHook hook) {
+        if (hook != null && !ourHooks.contains(hook)) {
+            ourHooks.add(hook);
+        }
+    }
+
+    public static void unregisterHook(IFSHook hook) {
+        ourHooks.remove(hook);
+    }
+
+    public static synchronized boolean isAsyncPostCommit() {
+        return ourIsAsyncPostCommit;
+    }
+
+    public static synchronized void setAsyncPostCommit(boolean async) {
+        ourIsAsyncPostCommit = async;
+    }
+
+    /**
+     * Waits until asynchronous post-commit hooks of the repository have been run for all
+     * commits made so far.
+     */
+    public static void waitForPostCommitHooks(File reposRootDir) {
+        PostCommitHooksRunner runner;
+        synchronized (ourPostCommitRunners) {
+            runner = ourPostCommitRunners.get(reposRootDir.getAbsoluteFile());
+        }
+        if (runner != null) {
+            runner.waitForEvents();
+        }
+    }
+
+    public static String runPreLockHook(FSFS owner, String path, String username, String comment, boolean stealLock) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_PRE_LOCK, owner.getRepositoryRoot());
+        event.setPaths(new String[] {path});
+        event.setUserName(username);
+        event.setComment(comment);
+        event.setStealLock(stealLock);
+        String token = runJavaHooks(owner, event);
+        String scriptToken = runPreLockHook(owner.getRepositoryRoot(), path, username, comment, stealLock);
+        return scriptToken != null && scriptToken.length() > 0 ? scriptToken : token;
+    }
+
+    public static void runPostLockHook(FSFS owner, String[] paths, String username) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_POST_LOCK, owner.getRepositoryRoot());
+        event.setPaths(paths);
+        event.setUserName(username);
+        runJavaHooks(owner, event);
+        runPostLockHook(owner.getRepositoryRoot(), paths, username);
+    }
+
+    public static void runPreUnlockHook(FSFS owner, String path, String username) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_PRE_UNLOCK, owner.getRepositoryRoot());
+        event.setPaths(new String[] {path});
+        event.setUserName(username);
+        runJavaHooks(owner, event);
+        runPreUnlockHook(owner.getRepositoryRoot(), path, username);
+    }
+
+    public static void runPostUnlockHook(FSFS owner, String[] paths, String username) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_POST_UNLOCK, owner.getRepositoryRoot());
+        event.setPaths(paths);
+        event.setUserName(username);
+        runJavaHooks(owner, event);
+        runPostUnlockHook(owner.getRepositoryRoot(), paths, username);
+    }
+
+    public static void runPreRevPropChangeHook(FSFS owner, String propName, byte[] propNewValue, String author, long revision, String action) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_PRE_REVPROP_CHANGE, owner.getRepositoryRoot());
+        event.setRevision(revision);
+        event.setUserName(author);
+        event.setProperty(propName, propNewValue, action);
+        runJavaHooks(owner, event);
+        if (hasJavaHooks(owner, SVN_REPOS_HOOK_PRE_REVPROP_CHANGE) && getHookFile(owner.getRepositoryRoot(), SVN_REPOS_HOOK_PRE_REVPROP_CHANGE) == null) {
+            // revprop changes are enabled by the java hook.
+            return;
+        }
+        runPreRevPropChangeHook(owner.getRepositoryRoot(), propName, propNewValue, author, revision, action);
+    }
+
+    public static void runPostRevPropChangeHook(FSFS owner, String propName, byte[] propOldValue, String author, long revision, String action) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_POST_REVPROP_CHANGE, owner.getRepositoryRoot());
+        event.setRevision(revision);
+        event.setUserName(author);
+        event.setProperty(propName, propOldValue, action);
+        runJavaHooks(owner, event);
+        runPostRevPropChangeHook(owner.getRepositoryRoot(), propName, propOldValue, author, revision, action);
+    }
+
+    public static void runStartCommitHook(FSFS owner, String author, List<?> capabilities) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_START_COMMIT, owner.getRepositoryRoot());
+        event.setUserName(author);
+        event.setCapabilities(capabilities);
+        runJavaHooks(owner, event);
+        runStartCommitHook(owner.getRepositoryRoot(), author, capabilities);
+    }
+
+    public static void runPreCommitHook(FSFS owner, String txnName) throws SVNException {
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_PRE_COMMIT, owner.getRepositoryRoot());
+        event.setTxnName(txnName);
+        runJavaHooks(owner, event);
+        runPreCommitHook(owner.getRepositoryRoot(), txnName);
+    }
+
+    public static void runPostCommitHook(FSFS owner, long committedRevision) throws SVNException {
+        runPostCommitHook(owner, committedRevision, schedulePostCommitHook(owner, committedRevision));
+    }
+
+    /**
+     * Takes the place of the asynchronous post-commit event of <code>committedRevision</code>,
+     * must be called under the repository write lock. The event is not run until it is
+     * released with {@link #runPostCommitHook(FSFS, long, FSHookEvent)} or dropped with
+     * {@link #cancelPostCommitHook(FSFS, FSHookEvent)}, events of later revisions wait for it.
+     * Returns <code>null</code> if there are no Java hooks to run asynchronously.
+     */
+    public static FSHookEvent schedulePostCommitHook(FSFS owner, long committedRevision) {
+        if (!isAsyncPostCommit()) {
+            return null;
+        }
+        List<IFSHook> hooks = getJavaHooks(owner, SVN_REPOS_HOOK_POST_COMMIT);
+        if (hooks.isEmpty()) {
+            return null;
+        }
+        FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_POST_COMMIT, owner.getRepositoryRoot());
+        event.setRevision(committedRevision);
+        getPostCommitHooksRunner(owner.getRepositoryRoot()).addEvent(event, hooks);
+        return event;
+    }
+
+    public static void runPostCommitHook(FSFS owner, long committedRevision, FSHookEvent scheduledEvent) throws SVNException {
+        if (scheduledEvent != null) {
+            getPostCommitHooksRunner(owner.getRepositoryRoot()).releaseEvent(scheduledEvent);
+        } else if (!isAsyncPostCommit()) {
+            List<IFSHook> hooks = getJavaHooks(owner, SVN_REPOS_HOOK_POST_COMMIT);
+            if (!hooks.isEmpty()) {
+                FSHookEvent event = new FSHookEvent(SVN_REPOS_HOOK_POST_COMMIT, owner.getRepositoryRoot());
+                event.setRevision(committedRevision);
+                runJavaHooks(hooks, event);
+            }
+        }
+        runPostCommitHook(owner.getRepositoryRoot(), committedRevision);
+    }
+
+    /**
+     * Drops an event taken with {@link #schedulePostCommitHook(FSFS, long)} when the commit failed.
+     */
+    public static void cancelPostCommitHook(FSFS owner, FSHookEvent scheduledEvent) {
+        getPostCommitHooksRunner(owner.getRepositoryRoot()).cancelEvent(scheduledEvent);
+    }
+
     public static String runPreLockHook(File reposRootDir, String path, String username, String comment, boolean stealLock) throws SVNException {
         username = username == null ? "" : username;
         path = path == null ? "" : path;
@@ -238,16 +416,7 @@ public class FSHooks {
             }
             return inputGobbler.getResult();
         } else {
-            String actionName = null;
-            if (SVN_REPOS_HOOK_START_COMMIT.equals(hookName) || SVN_REPOS_HOOK_PRE_COMMIT.equals(hookName)) {
-                actionName = "Commit";
-            } else if (SVN_REPOS_HOOK_PRE_REVPROP_CHANGE.equals(hookName)) {
-                actionName = "Revprop change";
-            } else if (SVN_REPOS_HOOK_PRE_LOCK.equals(hookName)) {
-                actionName = "Lock";
-            } else if (SVN_REPOS_HOOK_PRE_UNLOCK.equals(hookName)) {
-                actionName = "Unlock";
-            }
+            String actionName = getActionName(hookName);
             String stdErrMessage = errorGobbler.getError() != null ? "[Error output could not be read.]" : errorGobbler.getResult();
             String errorMessage = actionName != null ? 
                     actionName + " blocked by {0} hook (exit code {1})" : "{0} hook failed (exit code {1})";
@@ -264,6 +433,79 @@ public class FSHooks {
         return null;
     }
 
+    private static boolean hasJavaHooks(FSFS owner, String hookName) {
+        return !getJavaHooks(owner, hookName).isEmpty();
+    }
+
+    private static List<IFSHook> getJavaHooks(FSFS owner, String hookName) {
+        List<IFSHook> hooks = new ArrayList<IFSHook>();
+        for (IFSHook hook : ourHooks) {
+            if (hook.isEnabled(hookName)) {
+                hooks.add(hook);
+            }
+        }
+        for (IFSHook hook : owner.getHooks()) {
+            if (hook.isEnabled(hookName) && !hooks.contains(hook)) {
+                hooks.add(hook);
+            }
+        }
+        return hooks;
+    }
+
+    private static String runJavaHooks(FSFS owner, FSHookEvent event) throws SVNException {
+        return runJavaHooks(getJavaHooks(owner, event.getHookName()), event);
+    }
+
+    private static String runJavaHooks(List<IFSHook> hooks, FSHookEvent event) throws SVNException {
+        String result = null;
+        for (IFSHook hook : hooks) {
+            String hookResult = null;
+            try {
+                hookResult = hook.run(event);
+            } catch (SVNException e) {
+                String actionName = getActionName(event.getHookName());
+                SVNErrorMessage err = actionName != null ?
+                        SVNErrorMessage.create(SVNErrorCode.REPOS_HOOK_FAILURE, "{0} blocked by {1} hook", new Object[] {actionName, event.getHookName()}) :
+                        SVNErrorMessage.create(SVNErrorCode.REPOS_HOOK_FAILURE, "{0} hook failed", event.getHookName());
+                err.setChildErrorMessage(e.getErrorMessage());
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } catch (RuntimeException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_HOOK_FAILURE, "{0} hook failed: {1}",
+                        new Object[] {event.getHookName(), e.getLocalizedMessage()});
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            }
+            if (hookResult != null && hookResult.length() > 0) {
+                result = hookResult;
+            }
+        }
+        return result;
+    }
+
+    private static String getActionName(String hookName) {
+        if (SVN_REPOS_HOOK_START_COMMIT.equals(hookName) || SVN_REPOS_HOOK_PRE_COMMIT.equals(hookName)) {
+            return "Commit";
+        } else if (SVN_REPOS_HOOK_PRE_REVPROP_CHANGE.equals(hookName)) {
+            return "Revprop change";
+        } else if (SVN_REPOS_HOOK_PRE_LOCK.equals(hookName)) {
+            return "Lock";
+        } else if (SVN_REPOS_HOOK_PRE_UNLOCK.equals(hookName)) {
+            return "Unlock";
+        }
+        return null;
+    }
+
+    private static PostCommitHooksRunner getPostCommitHooksRunner(File reposRootDir) {
+        final File root = reposRootDir.getAbsoluteFile();
+        synchronized (ourPostCommitRunners) {
+            PostCommitHooksRunner runner = ourPostCommitRunners.get(root);
+            if (runner == null) {
+                runner = new PostCommitHooksRunner();
+                ourPostCommitRunners.put(root, runner);
+            }
+            return runner;
+        }
+    }
+
     private static File getHookFile(File reposRootDir, String hookName) throws SVNException {
         if (!isHooksEnabled()) {
             return null;
@@ -315,4 +557,109 @@ public class FSHooks {
         }
         return buffer.toString();
     }
+
+    private static synchronized ISVNThreadPool getPostCommitThreadPool() {
+        if (ourPostCommitThreadPool == null) {
+            ourPostCommitThreadPool = SVNClassLoader.getThreadPool();
+        }
+        return ourPostCommitThreadPool;
+    }
+
+    /**
+     * Runs post-commit hooks of one repository on a pooled thread, one event at a time
+     * in the order the events were scheduled. An event is only run once it is released.
+     */
+    private static class PostCommitHooksRunner implements Runnable {
+
+        private final LinkedList<PostCommitEvent> myEvents = new LinkedList<PostCommitEvent>();
+        private boolean myIsRunning;
+
+        public synchronized void addEvent(FSHookEvent event, List<IFSHook> hooks) {
+            myEvents.addLast(new PostCommitEvent(event, hooks));
+        }
+
+        public synchronized void releaseEvent(FSHookEvent event) {
+            for (PostCommitEvent postCommitEvent : myEvents) {
+                if (postCommitEvent.myEvent == event) {
+                    postCommitEvent.myIsReleased = true;
+                }
+            }
+            start();
+        }
+
+        public synchronized void cancelEvent(FSHookEvent event) {
+            for (Iterator<PostCommitEvent> events = myEvents.iterator(); events.hasNext();) {
+                if (events.next().myEvent == event) {
+                    events.remove();
+                }
+            }
+            start();
+        }
+
+        public synchronized void waitForEvents() {
+            while (myIsRunning) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        public void run() {
+            boolean completed = false;
+            try {
+                while (true) {
+                    PostCommitEvent postCommitEvent;
+                    synchronized (this) {
+                        if (!hasReleasedEvent()) {
+                            myIsRunning = false;
+                            notifyAll();
+                            completed = true;
+                            return;
+                        }
+                        postCommitEvent = myEvents.removeFirst();
+                    }
+                    try {
+                        runJavaHooks(postCommitEvent.myHooks, postCommitEvent.myEvent);
+                    } catch (SVNException e) {
+                        SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                    }
+                }
+            } finally {
+                if (!completed) {
+                    // a hook threw an Error, go on with the next events on another thread.
+                    synchronized (this) {
+                        myIsRunning = false;
+                        notifyAll();
+                        start();
+                    }
+                }
+            }
+        }
+
+        private void start() {
+            if (!myIsRunning && hasReleasedEvent()) {
+                myIsRunning = true;
+                getPostCommitThreadPool().run(this, true);
+            }
+        }
+
+        private boolean hasReleasedEvent() {
+            return !myEvents.isEmpty() && myEvents.getFirst().myIsReleased;
+        }
+    }
+
+    private static class PostCommitEvent {
+
+        final FSHookEvent myEvent;
+        final List<IFSHook> myHooks;
+        boolean myIsReleased;
+
+        PostCommitEvent(FSHookEvent event, List<IFSHook> hooks) {
+            myEvent = event;
+            myHooks = hooks;
+        }
+    }
 }
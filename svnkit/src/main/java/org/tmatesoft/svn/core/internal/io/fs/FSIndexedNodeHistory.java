@@ -0,0 +1,64 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.SVNLocationEntry;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Node history which takes revisions from the {@link FSPathHistoryIndex} instead of
+ * walking node revision predecessors. Reports the same locations as {@link FSNodeHistory}
+ * does, once history leaves the index (which happens for the root directory) the rest
+ * of it is walked as usual.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSIndexedNodeHistory extends FSNodeHistory {
+
+    private FSPathHistoryIndex.HistorySegment mySegment;
+    private int myPosition;
+    private FSFS myOwner;
+
+    public FSIndexedNodeHistory(String path, long revision, FSPathHistoryIndex.HistorySegment segment, FSFS owner) {
+        this(new SVNLocationEntry(revision, path), segment, -1, owner);
+    }
+
+    private FSIndexedNodeHistory(SVNLocationEntry entry, FSPathHistoryIndex.HistorySegment segment, int position, FSFS owner) {
+        super(entry, position >= 0, new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), owner);
+        mySegment = segment;
+        myPosition = position;
+        myOwner = owner;
+    }
+
+    public FSNodeHistory getPreviousHistory(boolean crossCopies) throws SVNException {
+        long[] revisions = mySegment.getRevisions();
+        int position = myPosition + 1;
+        if (position < revisions.length) {
+            return new FSIndexedNodeHistory(new SVNLocationEntry(revisions[position], mySegment.getPath()), mySegment, position, myOwner);
+        }
+        String copyFromPath = mySegment.getCopyFromPath();
+        if (!crossCopies || copyFromPath == null) {
+            return null;
+        }
+        long copyFromRevision = mySegment.getCopyFromRevision();
+        FSPathHistoryIndex index = myOwner.getPathHistoryIndex();
+        FSPathHistoryIndex.HistorySegment segment = index != null ? index.getHistorySegment(copyFromPath, copyFromRevision) : null;
+        if (segment != null) {
+            return new FSIndexedNodeHistory(new SVNLocationEntry(segment.getRevisions()[0], copyFromPath), segment, 0, myOwner);
+        }
+        FSNodeHistory history = new FSNodeHistory(new SVNLocationEntry(copyFromRevision, copyFromPath), false,
+                new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), myOwner);
+        return history.getPreviousHistory(crossCopies);
+    }
+}
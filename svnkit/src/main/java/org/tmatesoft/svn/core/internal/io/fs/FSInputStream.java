@@ -11,6 +11,7 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -25,6 +26,8 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
@@ -45,14 +48,17 @@ public class FSInputStream extends InputStream {
     private MessageDigest myDigest;
     private ByteBuffer myBuffer;
     private SVNDeltaCombiner myCombiner;
+    private String myFulltextKey;
+    private byte[] myFulltext;
 
-    private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
+    private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner, String fulltextKey) throws SVNException {
         myCombiner = combiner;
         myChunkIndex = 0;
         isChecksumFinalized = false;
         myHexChecksum = representation.getMD5HexDigest();
         myOffset = 0;
         myLength = representation.getExpandedSize();
+        myFulltextKey = fulltextKey;
         try {
             myDigest = MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException nsae) {
@@ -70,6 +76,13 @@ public class FSInputStream extends InputStream {
             close();
             throw svne;
         }
+        if (FSWindowPrefetcher.isEnabledFor(myLength, myRepStateList.size())) {
+            for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
+                FSRepresentationState state = (FSRepresentationState) states.next();
+                state.myPrefetcher = new FSWindowPrefetcher(state);
+                state.myPrefetcher.start();
+            }
+        }
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRevisionNode fileNode, FSFS owner) throws SVNException {
@@ -83,14 +96,30 @@ public class FSInputStream extends InputStream {
         if (representation == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, representation, owner);
+        return createStream(combiner, representation, owner);
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRepresentation fileRep, FSFS owner) throws SVNException {
         if (fileRep == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, fileRep, owner);
+        return createStream(combiner, fileRep, owner);
+    }
+
+    private static InputStream createStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
+        final FSCache<String, byte[]> cache = FSCacheManager.getFulltextsCache();
+        final long length = representation.getExpandedSize();
+        if (!cache.isEnabled() || length <= 0 || length > FSCacheManager.getFulltextsMaxItemSize() || representation.getMD5HexDigest() == null) {
+            return new FSInputStream(combiner, representation, owner, null);
+        }
+        // fulltexts are identified by their contents, the namespace only keeps repositories apart
+        final String checksum = representation.getSHA1HexDigest() != null ? representation.getSHA1HexDigest() : representation.getMD5HexDigest();
+        final String key = owner.getCacheNamespace() + ":" + checksum + ":" + length;
+        final byte[] fulltext = cache.get(key);
+        if (fulltext != null) {
+            return new ByteArrayInputStream(fulltext);
+        }
+        return new FSInputStream(combiner, representation, owner, key);
     }
 
     public int read(byte[] buf, int offset, int length) throws IOException {
@@ -114,6 +143,16 @@ public class FSInputStream extends InputStream {
         length = getContents(buf, offset, length);
         if (!isChecksumFinalized && length >= 0) {
             myDigest.update(buf, offset, length);
+            if (myFulltextKey != null && myOffset == 0) {
+                myFulltext = new byte[(int) myLength];
+            }
+            if (myFulltext != null) {
+                if (myOffset + length > myFulltext.length) {
+                    myFulltext = null;
+                } else {
+                    System.arraycopy(buf, offset, myFulltext, (int) myOffset, length);
+                }
+            }
             myOffset += length;
 
             if (myOffset == myLength) {
@@ -126,6 +165,10 @@ public class FSInputStream extends InputStream {
                     });
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
+                if (myFulltext != null) {
+                    FSCacheManager.getFulltextsCache().put(myFulltextKey, myFulltext, myFulltext.length);
+                    myFulltext = null;
+                }
             }
         }
 
@@ -159,18 +202,27 @@ public class FSInputStream extends InputStream {
                     FSRepresentationState curState = (FSRepresentationState) states.next();
 
                     while (curState.myChunkIndex < myChunkIndex) {
-                        myCombiner.skipWindow(curState.myFile);
+                        if (curState.myPrefetcher != null) {
+                            curState.myPrefetcher.readWindow();
+                        } else {
+                            myCombiner.skipWindow(curState.myFile);
+                            curState.myOffset = curState.myFile.position();
+                        }
                         curState.myChunkIndex++;
-                        curState.myOffset = curState.myFile.position();
                         if (curState.myOffset >= curState.myEnd) {
                             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Reading one svndiff window read beyond the end of the representation");
                             SVNErrorManager.error(err, SVNLogType.FSFS);
                         }
                     }
-                    SVNDiffWindow window = myCombiner.readWindow(curState.myFile, curState.myVersion);
+                    SVNDiffWindow window;
+                    if (curState.myPrefetcher != null) {
+                        window = curState.myPrefetcher.readWindow();
+                    } else {
+                        window = myCombiner.readWindow(curState.myFile, curState.myVersion);
+                        curState.myOffset = curState.myFile.position();
+                    }
                     ByteBuffer target = myCombiner.addWindow(window);
                     curState.myChunkIndex++;
-                    curState.myOffset = curState.myFile.position();
                     if (target != null) {
                         myBuffer = target;
                         myChunkIndex++;
@@ -185,6 +237,9 @@ public class FSInputStream extends InputStream {
     public void close() {
         for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
             FSRepresentationState state = (FSRepresentationState) states.next();
+            if (state.myPrefetcher != null) {
+                state.myPrefetcher.dispose();
+            }
             if (state.myFile != null) {
                 state.myFile.close();
             }
@@ -325,6 +380,8 @@ public class FSInputStream extends InputStream {
         long myBaseRevision;
         long myBaseOffset;
         long myBaseLength;
+        /* Reads windows ahead when the file is reconstructed in parallel. */
+        FSWindowPrefetcher myPrefetcher;
     }
 
 }
@@ -0,0 +1,287 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Lock storage kept in <code>db/locks/locks.db</code>, used instead of the digest files
+ * when <code>lock-storage = sqlite</code> is set in the <code>[locks]</code> section of
+ * <code>db/fsfs.conf</code>.
+ *
+ * <p/>
+ * Locks are rows of a table keyed by their canonical path, so that setting or removing
+ * a lock is a single row update rather than rewriting a digest file for every parent
+ * directory, and locks below a path are found with a range scan of the key instead of
+ * walking the tree of digest files. Locks stored in this database are not visible to
+ * native Subversion tools.
+ *
+ * <p/>
+ * The database is created by {@link FSFS#openDB()}, which moves the locks found in digest
+ * files into it.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLockDatabase {
+
+    public static final String LOCKS_TABLE = "locks";
+
+    private static final int LOCKS_DB_FORMAT = 1;
+    private static final String LOCKS_DB_SQL = "create table locks (path text not null primary key, " +
+                                               "                    token text not null, " +
+                                               "                    owner text not null, " +
+                                               "                    comment text, " +
+                                               "                    is_dav_comment integer not null, " +
+                                               "                    creation_date text, " +
+                                               "                    expiration_date text); ";
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myTable;
+
+    private FSLockDatabase() {
+    }
+
+    public static FSLockDatabase open(FSFS fsfs) throws SVNException {
+        return open(fsfs.getLockDatabaseFile(), getSafetyLevel(fsfs.getDurability()));
+    }
+
+    /**
+     * Creates the database at <code>path</code> holding <code>locks</code>.
+     */
+    public static void createLockDatabase(File path, Collection<SVNLock> locks) throws SVNException {
+        FSLockDatabase database = open(path, SqlJetSafetyLevel.NORMAL);
+        try {
+            if (!locks.isEmpty()) {
+                database.setLocks(locks);
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private static FSLockDatabase open(File path, SqlJetSafetyLevel safetyLevel) throws SVNException {
+        final FSLockDatabase database = new FSLockDatabase();
+        try {
+            database.myDB = SqlJetDb.open(path, true);
+            database.myDB.setSafetyLevel(safetyLevel);
+
+            checkFormat(database.myDB);
+            database.myTable = database.myDB.getTable(LOCKS_TABLE);
+        } catch (SqlJetException e) {
+            if (database.myDB != null) {
+                try {
+                    database.myDB.close();
+                } catch (SqlJetException inner) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, inner);
+                }
+            }
+            SVNErrorMessage err = convertError(e).wrap("Can''t open lock database ''{0}''", path);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return database;
+    }
+
+    private static SqlJetSafetyLevel getSafetyLevel(FSDurability durability) {
+        // locks are not written along with revisions, keep them at least as safe as digest files.
+        return durability == FSDurability.DIRECTORY ? SqlJetSafetyLevel.FULL : SqlJetSafetyLevel.NORMAL;
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < LOCKS_DB_FORMAT) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(LOCKS_DB_FORMAT);
+                            db.createTable(LOCKS_DB_SQL);
+                            return null;
+                        }
+                    });
+                } else if (version > LOCKS_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myTable = null;
+                myDB = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the lock of <code>path</code>, expired or not, or <code>null</code>.
+     */
+    public SVNLock getLock(final String path) throws SVNException {
+        return (SVNLock) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                ISqlJetCursor cursor = myTable.lookup(myTable.getPrimaryKeyIndexName(), new Object[] {path});
+                try {
+                    return cursor.eof() ? null : readLock(cursor);
+                } finally {
+                    cursor.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns locks of <code>path</code> and of all paths below it, expired or not,
+     * ordered by path.
+     */
+    public List<SVNLock> getLocks(final String path) throws SVNException {
+        final List<SVNLock> locks = new ArrayList<SVNLock>();
+        runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                String indexName = myTable.getPrimaryKeyIndexName();
+                ISqlJetCursor cursor;
+                String prefix;
+                if ("/".equals(path)) {
+                    cursor = myTable.order(indexName);
+                    prefix = path;
+                } else {
+                    cursor = myTable.lookup(indexName, new Object[] {path});
+                    try {
+                        if (!cursor.eof()) {
+                            locks.add(readLock(cursor));
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    // '0' follows '/', so the scope covers all paths starting with the prefix.
+                    prefix = path + "/";
+                    cursor = myTable.scope(indexName, new Object[] {prefix}, new Object[] {path + "0"});
+                }
+                try {
+                    for (; !cursor.eof(); cursor.next()) {
+                        if (cursor.getString(0).startsWith(prefix)) {
+                            locks.add(readLock(cursor));
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return null;
+            }
+        });
+        return locks;
+    }
+
+    /**
+     * Stores <code>locks</code> in a single transaction, replacing locks of the same paths.
+     */
+    public void setLocks(final Collection<SVNLock> locks) throws SVNException {
+        runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                for (SVNLock lock : locks) {
+                    boolean isDAVComment = lock instanceof FSLock && ((FSLock) lock).isDAVComment();
+                    myTable.insertOr(SqlJetConflictAction.REPLACE, new Object[] {lock.getPath(), lock.getID(), lock.getOwner(),
+                            lock.getComment(), new Long(isDAVComment ? 1 : 0), formatDate(lock.getCreationDate()),
+                            formatDate(lock.getExpirationDate())});
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Removes locks of <code>paths</code> in a single transaction.
+     */
+    public void deleteLocks(final Collection<String> paths) throws SVNException {
+        runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                String indexName = myTable.getPrimaryKeyIndexName();
+                for (String path : paths) {
+                    ISqlJetCursor cursor = myTable.lookup(indexName, new Object[] {path});
+                    try {
+                        if (!cursor.eof()) {
+                            cursor.delete();
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private static SVNLock readLock(ISqlJetCursor cursor) throws SqlJetException {
+        String creationDate = cursor.getString(5);
+        String expirationDate = cursor.getString(6);
+        return new FSLock(cursor.getString(0), cursor.getString(1), cursor.getString(2), cursor.getString(3),
+                creationDate != null ? SVNDate.parseDate(creationDate) : null,
+                expirationDate != null ? SVNDate.parseDate(expirationDate) : null,
+                cursor.getInteger(4) != 0);
+    }
+
+    private static String formatDate(Date date) {
+        return date != null ? SVNDate.formatDate(date) : null;
+    }
+
+    private Object runReadTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return myDB.runReadTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private void runWriteTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            myDB.runWriteTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        SqlJetErrorCode sqlCode = e.getErrorCode();
+        SVNErrorCode errorCode = sqlCode == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR;
+        return SVNErrorMessage.create(errorCode, e.getMessage());
+    }
+}
@@ -25,6 +25,7 @@ import java.util.TreeMap;
 
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNMergeInfo;
@@ -40,6 +41,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNHashSet;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeDriver;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
 import org.tmatesoft.svn.core.io.ISVNLocationSegmentHandler;
@@ -47,6 +49,7 @@ import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNLocationSegment;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
@@ -55,6 +58,13 @@ import org.tmatesoft.svn.core.wc.SVNRevision;
  */
 public class FSLog {
     private static final int MAX_OPEN_HISTORIES = 128;  
+
+    public static final String PREFETCH_PROPERTY = "svnkit.fsfs.log.prefetch";
+    public static final String PREFETCH_THREADS_PROPERTY = "svnkit.fsfs.log.prefetchThreads";
+
+    private static int ourPrefetchCount = Integer.getInteger(PREFETCH_PROPERTY, 0).intValue();
+    private static final int ourPrefetchThreadsCount = Math.max(1, Integer.getInteger(PREFETCH_THREADS_PROPERTY,
+            Math.min(4, Runtime.getRuntime().availableProcessors())).intValue());
     
     private FSFS myFSFS;
     private String[] myPaths;
@@ -154,12 +164,23 @@ public class FSLog {
                 count = myLimit;
             }
         
+            long[] revisions = new long[(int) count];
             for (int i = 0; i < count; i++) {
                 long rev = myStartRevision + i;
                 if (myIsDescending) {
                     rev = myEndRevision - i;
                 }
-                sendLog(rev, null, null, false, false, false);
+                revisions[i] = rev;
+            }
+            LogEntryPrefetcher prefetcher = createPrefetcher(revisions, myIsDiscoverChangedPaths);
+            try {
+                for (int i = 0; i < revisions.length; i++) {
+                    sendLog(revisions[i], null, null, false, false, false, prefetcher, i);
+                }
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.dispose();
+                }
             }
             
             return count;
@@ -242,27 +263,38 @@ public class FSLog {
         nestedMerges = null;
 
         if (revisions != null) {
-            for (int i = 0; i < revisions.size(); i++) {
-                boolean hasChildren = false;
-                Map[] mergeInfo = null;
-                long rev = ((Long) revisions.get(revisions.size() - i - 1)).longValue();
+            long[] sendRevisions = new long[revisions.size()];
+            for (int i = 0; i < sendRevisions.length; i++) {
+                sendRevisions[i] = ((Long) revisions.get(revisions.size() - i - 1)).longValue();
+            }
+            LogEntryPrefetcher prefetcher = createPrefetcher(sendRevisions, myIsDiscoverChangedPaths || handlingMergedRevisions);
+            try {
+                for (int i = 0; i < sendRevisions.length; i++) {
+                    boolean hasChildren = false;
+                    Map[] mergeInfo = null;
+                    long rev = sendRevisions[i];
                 
-                if (revMergeInfo != null) {
-                    mergeInfo = (Map[]) revMergeInfo.get(new Long(rev));
-                    if (mergeInfo != null && mergeInfo.length == 2) {
-                        hasChildren = !mergeInfo[0].isEmpty() || !mergeInfo[1].isEmpty();
+                    if (revMergeInfo != null) {
+                        mergeInfo = (Map[]) revMergeInfo.get(new Long(rev));
+                        if (mergeInfo != null && mergeInfo.length == 2) {
+                            hasChildren = !mergeInfo[0].isEmpty() || !mergeInfo[1].isEmpty();
+                        }
                     }
-                }
-                sendLog(rev, logTargetHistoryAsMergeinfo, nestedMerges, subtractiveMerge, handlingMergedRevisions, hasChildren);
-                if (hasChildren) {
-                    if (nestedMerges == null) {
-                        nestedMerges = new SVNHashSet();
+                    sendLog(rev, logTargetHistoryAsMergeinfo, nestedMerges, subtractiveMerge, handlingMergedRevisions, hasChildren, prefetcher, i);
+                    if (hasChildren) {
+                        if (nestedMerges == null) {
+                            nestedMerges = new SVNHashSet();
+                        }
+                        handleMergedRevisions(mergeInfo[0], mergeInfo[1], logTargetHistoryAsMergeinfo, nestedMerges);
+                    }
+                    sendCount++;
+                    if (limit > 0 && sendCount >= limit) {
+                        break;
                     }
-                    handleMergedRevisions(mergeInfo[0], mergeInfo[1], logTargetHistoryAsMergeinfo, nestedMerges);
                 }
-                sendCount++;
-                if (limit > 0 && sendCount >= limit) {
-                    break;
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.dispose();
                 }
             }
         }
@@ -284,10 +316,18 @@ public class FSLog {
     }
 
     private void sendLog(long revision, Map logTargetHistoryAsMergeInfo, Set nestedMerges, boolean subtractiveMerge, boolean handlingMergedRevision, boolean hasChildren) throws SVNException {
+        sendLog(revision, logTargetHistoryAsMergeInfo, nestedMerges, subtractiveMerge, handlingMergedRevision, hasChildren, null, -1);
+    }
+
+    private void sendLog(long revision, Map logTargetHistoryAsMergeInfo, Set nestedMerges, boolean subtractiveMerge, boolean handlingMergedRevision, boolean hasChildren,
+            LogEntryPrefetcher prefetcher, int index) throws SVNException {
         if (myHandler == null) {
             return;
         }
-        SVNLogEntry logEntry = fillLogEntry(revision, myIsDiscoverChangedPaths || handlingMergedRevision);
+        SVNLogEntry logEntry = prefetcher != null ? prefetcher.get(index) : null;
+        if (logEntry == null) {
+            logEntry = fillLogEntry(revision, myIsDiscoverChangedPaths || handlingMergedRevision);
+        }
         logEntry.setHasChildren(hasChildren);
         logEntry.setSubtractiveMerge(subtractiveMerge);
         boolean revisionIsInteresting = true;
@@ -333,6 +373,26 @@ public class FSLog {
         }
     }
 
+    public static synchronized int getPrefetchCount() {
+        return ourPrefetchCount;
+    }
+
+    /**
+     * Sets the number of log entries read ahead on pooled threads while the handler
+     * consumes the current one, zero disables prefetching.
+     */
+    public static synchronized void setPrefetchCount(int count) {
+        ourPrefetchCount = count;
+    }
+
+    private LogEntryPrefetcher createPrefetcher(long[] revisions, boolean discoverChangedPaths) {
+        int prefetchCount = getPrefetchCount();
+        if (myHandler == null || prefetchCount <= 0 || revisions.length < 2) {
+            return null;
+        }
+        return new LogEntryPrefetcher(revisions, discoverChangedPaths, prefetchCount);
+    }
+
     private SVNLogEntry fillLogEntry(long revision, boolean discoverChangedPaths) throws SVNException {
         Map changedPaths = null;
         SVNProperties entryRevProps = null;
@@ -487,6 +547,7 @@ public class FSLog {
         Map addedMergeInfoCatalog = new SVNHashMap();
         Map deletedMergeInfoCatalog = new SVNHashMap();
         FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+        FSPathHistoryIndex index = myFSFS.getPathHistoryIndex();
         
         collectChangedMergeInfo(addedMergeInfoCatalog, deletedMergeInfoCatalog, revision);
         
@@ -495,6 +556,9 @@ public class FSLog {
             if (deletedMergeInfoCatalog.containsKey(path)) {
                 continue;
             }
+            if (index != null && index.isMergeInfoUnchanged(path, revision)) {
+                continue;
+            }
             long[] appearedRevision = new long[] {-1};
             SVNLocationEntry prevLocation = null;
             try {
@@ -558,10 +622,22 @@ public class FSLog {
     }
     
     private void collectChangedMergeInfo(Map addedMergeInfo, Map deletedMergeInfo, long revision) throws SVNException {
+        FSPathHistoryIndex index = myFSFS.getPathHistoryIndex();
+        if (index != null && index.getMergeInfoChanges(revision, addedMergeInfo, deletedMergeInfo)) {
+            return;
+        }
+        collectChangedMergeInfo(myFSFS, getMergeInfoManager(), addedMergeInfo, deletedMergeInfo, revision);
+    }
+
+    /**
+     * Collects mergeinfo added and deleted on paths changed in <code>revision</code>,
+     * keyed by the changed path.
+     */
+    static void collectChangedMergeInfo(FSFS fsfs, SVNMergeInfoManager mergeInfoManager, Map addedMergeInfo, Map deletedMergeInfo, long revision) throws SVNException {
         if (revision == 0) {
             return;
         }
-        FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+        FSRevisionRoot root = fsfs.createRevisionRoot(revision);
         Map changedPaths = root.getChangedPaths();
         if (changedPaths == null || changedPaths.isEmpty()) {
             return;
@@ -589,7 +665,7 @@ public class FSLog {
                 }
             } else if (changeKind == FSPathChangeKind.FS_PATH_CHANGE_MODIFY) {
                 long[] appearedRevision = new long[] {-1};
-                SVNLocationEntry prevLocation = myFSFS.getPreviousLocation(changedPath, revision, appearedRevision);
+                SVNLocationEntry prevLocation = fsfs.getPreviousLocation(changedPath, revision, appearedRevision);
                 if (!(prevLocation != null && 
                         prevLocation.getPath() != null && prevLocation.getRevision() >= 0 && appearedRevision[0] == prevLocation.getRevision())) {
                     basePath = changedPath;
@@ -604,12 +680,12 @@ public class FSLog {
             
             FSRevisionRoot baseRoot = null;
             if (basePath != null && baseRevision >= 0) {
-                baseRoot = myFSFS.createRevisionRoot(baseRevision);
-                SVNProperties props = myFSFS.getProperties(baseRoot.getRevisionNode(basePath));
+                baseRoot = fsfs.createRevisionRoot(baseRevision);
+                SVNProperties props = fsfs.getProperties(baseRoot.getRevisionNode(basePath));
                 previousMergeInfoValue = props.getStringValue(SVNProperty.MERGE_INFO);
             }
 
-            SVNProperties props = myFSFS.getProperties(root.getRevisionNode(changedPath));
+            SVNProperties props = fsfs.getProperties(root.getRevisionNode(changedPath));
             if (props != null) {
                 mergeInfoValue = props.getStringValue(SVNProperty.MERGE_INFO);
             }
@@ -620,7 +696,7 @@ public class FSLog {
             
             if (previousMergeInfoValue != null && mergeInfoValue == null) {
               String[] queryPaths = new String[] { changedPath };
-              Map tmpCatalog = getMergeInfoManager().getMergeInfo(queryPaths, root, SVNMergeInfoInheritance.INHERITED, false);
+              Map tmpCatalog = mergeInfoManager.getMergeInfo(queryPaths, root, SVNMergeInfoInheritance.INHERITED, false);
               SVNMergeInfo tmpMergeInfo = (SVNMergeInfo) tmpCatalog.get(changedPath);
               if (tmpMergeInfo != null) {
                   mergeInfoValue = SVNMergeInfoUtil.formatMergeInfoToString(tmpMergeInfo.getMergeSourcesToMergeLists(), null);
@@ -628,7 +704,7 @@ public class FSLog {
             } else if (mergeInfoValue != null && previousMergeInfoValue == null && basePath != null && 
                     SVNRevision.isValidRevisionNumber(baseRevision)) {
                 String[] queryPaths = new String[] { basePath };
-                Map tmpCatalog = getMergeInfoManager().getMergeInfo(queryPaths, baseRoot, SVNMergeInfoInheritance.INHERITED, false);
+                Map tmpCatalog = mergeInfoManager.getMergeInfo(queryPaths, baseRoot, SVNMergeInfoInheritance.INHERITED, false);
                 SVNMergeInfo tmpMergeInfo = (SVNMergeInfo) tmpCatalog.get(basePath);
                 if (tmpMergeInfo != null) {
                     previousMergeInfoValue = SVNMergeInfoUtil.formatMergeInfoToString(tmpMergeInfo.getMergeSourcesToMergeLists(), null);
@@ -642,10 +718,10 @@ public class FSLog {
                 Map mergeInfo = null;
                 Map previousMergeInfo = null;
                 if (mergeInfoValue != null) {
-                    mergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(mergeInfoValue), null);
+                    mergeInfo = SVNMergeInfoManager.parseMergeInfo(mergeInfoValue);
                 }
                 if (previousMergeInfoValue != null) {
-                    previousMergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(previousMergeInfoValue), null);
+                    previousMergeInfo = SVNMergeInfoManager.parseMergeInfo(previousMergeInfoValue);
                 }
                 Map added = new SVNHashMap();
                 Map deleted = new SVNHashMap();
@@ -752,6 +828,26 @@ public class FSLog {
         return myMergeInfoManager;
     }
     
+    /**
+     * Fills log entries of the known sequence of revisions ahead of the handler,
+     * an entry that has not been claimed by a worker yet is filled by the caller.
+     */
+    private class LogEntryPrefetcher extends FSOrderedPrefetcher<SVNLogEntry, Object> {
+
+        private final long[] myRevisions;
+        private final boolean myIsDiscoverChangedPaths;
+
+        public LogEntryPrefetcher(long[] revisions, boolean discoverChangedPaths, int prefetchCount) {
+            super(revisions.length, prefetchCount, ourPrefetchThreadsCount);
+            myRevisions = revisions;
+            myIsDiscoverChangedPaths = discoverChangedPaths;
+        }
+
+        protected SVNLogEntry prefetch(int index, Object workerState) throws SVNException {
+            return fillLogEntry(myRevisions[index], myIsDiscoverChangedPaths);
+        }
+    }
+
     private class RangeListPath {
         String myPath;
         SVNMergeRangeList myRangeList;
@@ -0,0 +1,173 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Read-only memory mapping of a revision or pack file. Mappings are created once
+ * and shared by all threads, {@link FSFile} instances created over a mapping only
+ * keep their own position. Files larger than 1G are mapped in several chunks.
+ *
+ * <p/>
+ * Mapping is disabled by default and may be enabled with the <code>svnkit.fsfs.mmap</code>
+ * system property or {@link #setEnabled(boolean)}. Note that a mapped file is
+ * only unmapped when its mapping is garbage collected, which on Windows prevents
+ * the file from being deleted until then.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMappedFile {
+
+    public static final String MMAP_PROPERTY = "svnkit.fsfs.mmap";
+    public static final String MMAP_MAX_FILES_PROPERTY = "svnkit.fsfs.mmap.maxFiles";
+
+    private static final int CHUNK_SIZE = 1 << 30;
+
+    private static boolean ourIsEnabled = Boolean.getBoolean(MMAP_PROPERTY);
+    private static final int ourMaxFilesCount = Integer.getInteger(MMAP_MAX_FILES_PROPERTY, 512).intValue();
+
+    private static final Map<File, FSMappedFile> ourMappedFiles = new LinkedHashMap<File, FSMappedFile>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<File, FSMappedFile> eldest) {
+            return size() > ourMaxFilesCount;
+        }
+    };
+
+    private final File myFile;
+    private final long myLength;
+    private final long myLastModified;
+    private final ByteBuffer[] myChunks;
+
+    private FSMappedFile(File file, long length, long lastModified, ByteBuffer[] chunks) {
+        myFile = file;
+        myLength = length;
+        myLastModified = lastModified;
+        myChunks = chunks;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+        if (!enabled) {
+            synchronized (ourMappedFiles) {
+                ourMappedFiles.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns a shared mapping of <code>file</code>, or <code>null</code> if the file
+     * does not exist. A mapping is recreated when the file size or modification time
+     * has changed since it was mapped.
+     */
+    public static FSMappedFile getMappedFile(File file) throws SVNException {
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        synchronized (ourMappedFiles) {
+            FSMappedFile mappedFile = ourMappedFiles.get(file);
+            if (mappedFile != null && mappedFile.myLength == length && mappedFile.myLastModified == lastModified) {
+                return mappedFile;
+            }
+            if (lastModified == 0 && !file.isFile()) {
+                ourMappedFiles.remove(file);
+                return null;
+            }
+            mappedFile = map(file, length, lastModified);
+            ourMappedFiles.put(file, mappedFile);
+            return mappedFile;
+        }
+    }
+
+    /**
+     * Forgets mappings of all files in <code>directory</code>, called before
+     * the files are deleted.
+     */
+    public static void releaseDirectory(File directory) {
+        synchronized (ourMappedFiles) {
+            for (Iterator<File> files = ourMappedFiles.keySet().iterator(); files.hasNext();) {
+                if (directory.equals(files.next().getParentFile())) {
+                    files.remove();
+                }
+            }
+        }
+    }
+
+    public File getFile() {
+        return myFile;
+    }
+
+    public long length() {
+        return myLength;
+    }
+
+    public int read(long position) {
+        if (position >= myLength) {
+            return -1;
+        }
+        return myChunks[(int) (position / CHUNK_SIZE)].get((int) (position % CHUNK_SIZE)) & 0xFF;
+    }
+
+    public int read(long position, byte[] buffer, int offset, int length) {
+        if (position >= myLength) {
+            return -1;
+        }
+        int read = 0;
+        length = (int) Math.min(length, myLength - position);
+        while (read < length) {
+            final ByteBuffer chunk = myChunks[(int) (position / CHUNK_SIZE)].duplicate();
+            chunk.position((int) (position % CHUNK_SIZE));
+            final int couldRead = Math.min(chunk.remaining(), length - read);
+            chunk.get(buffer, offset + read, couldRead);
+            position += couldRead;
+            read += couldRead;
+        }
+        return read;
+    }
+
+    private static FSMappedFile map(File file, long length, long lastModified) throws SVNException {
+        FileInputStream inputStream = null;
+        try {
+            inputStream = SVNFileUtil.createFileInputStream(file);
+            final FileChannel channel = inputStream.getChannel();
+            final ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+            for (int i = 0; i < chunks.length; i++) {
+                final long chunkStart = (long) i * CHUNK_SIZE;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, Math.min(CHUNK_SIZE, length - chunkStart));
+            }
+            return new FSMappedFile(file, length, lastModified, chunks);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t map file ''{0}'': {1}", new Object[] {file, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(inputStream);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.ISVNThreadPool;
+import org.tmatesoft.svn.core.internal.wc.SVNClassLoader;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Computes items of a sequence ahead of their consumer on threads of a pool shared by
+ * all prefetchers. At most <code>prefetchCount</code> items past the one being consumed
+ * are computed, and items are handed to the consumer in order. An item the workers have
+ * not started yet is left to the consumer to compute itself.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public abstract class FSOrderedPrefetcher<T, W> implements Runnable {
+
+    private static ISVNThreadPool ourThreadPool;
+
+    private final int myCount;
+    private final int myPrefetchCount;
+    private final int myThreadsCount;
+    private final Map<Integer, Object> myResults;
+    private int myNextIndex;
+    private int myConsumedIndex;
+    private int myWorkersCount;
+    private boolean myIsDisposed;
+
+    protected FSOrderedPrefetcher(int count, int prefetchCount, int threadsCount) {
+        myCount = count;
+        myPrefetchCount = prefetchCount;
+        myThreadsCount = threadsCount;
+        myResults = new HashMap<Integer, Object>();
+    }
+
+    /**
+     * Computes the item at <code>index</code>, called on a pooled thread.
+     */
+    protected abstract T prefetch(int index, W workerState) throws SVNException;
+
+    /**
+     * Creates state reused by one worker for all items it computes.
+     */
+    protected W createWorkerState() {
+        return null;
+    }
+
+    /**
+     * Returns the item at <code>index</code>, waiting for it if it is being computed, or
+     * <span class="javakeyword">null</span> if the consumer has to compute it.
+     */
+    public synchronized T get(int index) throws SVNException {
+        myConsumedIndex = index;
+        if (index >= myNextIndex) {
+            myNextIndex = index + 1;
+            startWorkers();
+            return null;
+        }
+        startWorkers();
+        while (!myResults.containsKey(index)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Prefetch was interrupted");
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            }
+        }
+        Object result = myResults.remove(index);
+        if (result instanceof SVNException) {
+            throw (SVNException) result;
+        }
+        return (T) result;
+    }
+
+    /**
+     * Stops computing items and waits for the workers to finish the ones they are computing.
+     */
+    public synchronized void dispose() {
+        myIsDisposed = true;
+        boolean interrupted = false;
+        while (myWorkersCount > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        myResults.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        try {
+            W workerState = createWorkerState();
+            while (true) {
+                int index;
+                synchronized (this) {
+                    if (!hasWork()) {
+                        return;
+                    }
+                    index = myNextIndex++;
+                }
+                Object result;
+                try {
+                    result = prefetch(index, workerState);
+                } catch (SVNException e) {
+                    result = e;
+                } catch (RuntimeException e) {
+                    result = new SVNException(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getMessage()), e);
+                }
+                synchronized (this) {
+                    if (!myIsDisposed) {
+                        myResults.put(index, result);
+                    }
+                    notifyAll();
+                }
+            }
+        } finally {
+            synchronized (this) {
+                myWorkersCount--;
+                notifyAll();
+            }
+        }
+    }
+
+    private boolean hasWork() {
+        return !myIsDisposed && myNextIndex < myCount && myNextIndex <= myConsumedIndex + myPrefetchCount;
+    }
+
+    private void startWorkers() {
+        while (myWorkersCount < myThreadsCount && hasWork()) {
+            myWorkersCount++;
+            getThreadPool().run(this, true);
+        }
+    }
+
+    private static synchronized ISVNThreadPool getThreadPool() {
+        if (ourThreadPool == null) {
+            ourThreadPool = SVNClassLoader.getThreadPool();
+        }
+        return ourThreadPool;
+    }
+}
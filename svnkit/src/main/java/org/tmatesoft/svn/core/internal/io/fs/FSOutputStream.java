@@ -326,16 +326,13 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             final IFSRepresentationCacheManager reposCacheManager = fsfs.getRepositoryCacheManager();
             if (reposCacheManager != null) {
                 try {
-                    reposCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
-                        public void run() throws SVNException {
-                            final FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
-                            if (oldRep != null) {
-                                oldRep.setUniquifier(representation.getUniquifier());
-                                oldRep.setMD5HexDigest(representation.getMD5HexDigest());
-//                                myRevNode.setTextRepresentation(oldRep);
-                            }
-                        }
-                    });
+                    // the cache manager opens a read transaction itself unless the hash is known to be missing.
+                    final FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                    if (oldRep != null) {
+                        oldRep.setUniquifier(representation.getUniquifier());
+                        oldRep.setMD5HexDigest(representation.getMD5HexDigest());
+//                        myRevNode.setTextRepresentation(oldRep);
+                    }
                 } catch (SVNException e) {
                     if (e.getErrorMessage().getErrorCode() == SVNErrorCode.FS_CORRUPT || e.getErrorMessage().getErrorCode().getCategory() == SVNErrorCode.MALFUNC_CATEGORY) {
                         throw e;
@@ -383,15 +380,19 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             }
             hint = revFile;//TODO: this can speedup algorithm somehow
 
-            final long offset = fsfs.lookupOffsetInIndex(revFile, representation.getRevision(), representation.getItemIndex());
+            try {
+                final long offset = fsfs.lookupOffsetInIndex(revFile, representation.getRevision(), representation.getItemIndex());
 
-            final FSP2LEntry entry = lookupP2LEntry(revFile, representation.getRevision(), offset);
+                final FSP2LEntry entry = lookupP2LEntry(revFile, representation.getRevision(), offset);
 
-            if (entry == null ||
-                    entry.getType().getCode() < FSP2LProtoIndex.ItemType.FILE_REP.getCode() ||
-                    entry.getType().getCode() > FSP2LProtoIndex.ItemType.DIR_PROPS.getCode()) {
-                SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "No representation found at offset {0} for item %s in revision {1}", new Object[]{new Long(offset), new Long(representation.getItemIndex())});
-                SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+                if (entry == null ||
+                        entry.getType().getCode() < FSP2LProtoIndex.ItemType.FILE_REP.getCode() ||
+                        entry.getType().getCode() > FSP2LProtoIndex.ItemType.DIR_PROPS.getCode()) {
+                    SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "No representation found at offset {0} for item %s in revision {1}", new Object[]{new Long(offset), new Long(representation.getItemIndex())});
+                    SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+                }
+            } finally {
+                revFile.close();
             }
         } else {
             //TODO createRepresentationState(); this assigns the "hint"
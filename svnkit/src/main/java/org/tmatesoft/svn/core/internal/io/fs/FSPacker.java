@@ -73,7 +73,7 @@ public class FSPacker {
         }
 
         long minUnpackedRev = fsfs.getMinUnpackedRev();
-        long youngestRev = fsfs.getYoungestRevision();
+        long youngestRev = fsfs.readYoungestRevision();
         long completedShards = (youngestRev + 1) / maxFilesPerDirectory;
         long minUnpackedRevProp = 0;
         boolean packRevisionProperties = fsfs.getDBFormat() >= FSFS.MIN_PACKED_REVPROP_FORMAT;
@@ -110,6 +110,8 @@ public class FSPacker {
         String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
         SVNFileUtil.writeToFile(tmpFile, line, "UTF-8");
         SVNFileUtil.rename(tmpFile, finalPath);
+        FSMappedFile.releaseDirectory(revShardPath);
+        FSFilePool.releaseDirectory(revShardPath);
         SVNFileUtil.deleteAll(revShardPath, true, myCanceller);
         if (packRevisionProperties) {
             deleteRevPropShard(revpropShardPath, shard, fsfs.getMaxFilesPerDirectory());
@@ -147,6 +149,7 @@ public class FSPacker {
         } else {
             packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile);
         }
+        fsfs.invalidatePackManifest(shard);
     }
 
     private void packPhysicallyAddressed(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile) throws SVNException {
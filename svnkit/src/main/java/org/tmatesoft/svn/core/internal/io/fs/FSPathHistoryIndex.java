@@ -0,0 +1,614 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional index of changed paths kept in <code>db/path-history.db</code>.
+ *
+ * <p/>
+ * For every revision the index holds one row per changed path (with the change
+ * action and copy source) and one row with the <code>S</code> action per parent
+ * directory of a changed path which was not changed itself, since directories get
+ * a new node revision whenever something below them changes. This is enough to tell
+ * the revisions at which a node changed without walking its predecessors.
+ *
+ * <p/>
+ * Along with changed paths the index keeps mergeinfo added and deleted by every
+ * revision, in the <code>svn:mergeinfo</code> property format, so that mergeinfo aware
+ * log and blame do not have to read and compare mergeinfo of each examined revision.
+ *
+ * <p/>
+ * The index does not exist unless it has been built with
+ * {@link FSFS#buildPathHistoryIndex()}, after that it is brought up to date by every
+ * commit. Revisions committed by other tools are indexed by the next commit made with
+ * SVNKit, until then lookups of those revisions are not answered by the index.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPathHistoryIndex {
+
+    public static final String PATH_HISTORY_TABLE = "path_history";
+    public static final String MERGE_INFO_CHANGES_TABLE = "mergeinfo_changes";
+    public static final String INDEXED_REVISION_TABLE = "indexed_revision";
+
+    private static final String PATH_HISTORY_INDEX = "path_history_path_revision";
+    private static final String MERGE_INFO_CHANGES_INDEX = "mergeinfo_changes_revision_path";
+    private static final int PATH_HISTORY_DB_FORMAT = 2;
+    private static final String PATH_HISTORY_DB_SQL = "create table path_history (path text not null, " +
+                                                      "                           revision integer not null, " +
+                                                      "                           action text not null, " +
+                                                      "                           copyfrom_path text, " +
+                                                      "                           copyfrom_revision integer); ";
+    private static final String PATH_HISTORY_INDEX_SQL = "create index path_history_path_revision on path_history (path, revision); ";
+    private static final String MERGE_INFO_CHANGES_SQL = "create table mergeinfo_changes (revision integer not null, " +
+                                                         "                                path text not null, " +
+                                                         "                                added text not null, " +
+                                                         "                                deleted text not null); ";
+    private static final String MERGE_INFO_CHANGES_INDEX_SQL = "create index mergeinfo_changes_revision_path on mergeinfo_changes (revision, path); ";
+    private static final String INDEXED_REVISION_SQL = "create table indexed_revision (revision integer not null); ";
+
+    private static final String ACTION_SUBTREE = "S";
+    private static final int REVISIONS_PER_TRANSACTION = 1000;
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myTable;
+    private ISqlJetTable myMergeInfoTable;
+    private ISqlJetTable myRevisionTable;
+    private FSFS myFSFS;
+    private long myIndexedRevision;
+
+    private FSPathHistoryIndex(FSFS fsfs) {
+        myFSFS = fsfs;
+        myIndexedRevision = SVNRepository.INVALID_REVISION;
+    }
+
+    /**
+     * Returns <code>null</code> when the index could not be opened.
+     */
+    public static FSPathHistoryIndex open(FSFS fsfs) {
+        final FSPathHistoryIndex index = new FSPathHistoryIndex(fsfs);
+        try {
+            index.myDB = SqlJetDb.open(fsfs.getPathHistoryIndexFile(), true);
+            index.myDB.setSafetyLevel(SqlJetSafetyLevel.OFF);
+
+            checkFormat(index.myDB);
+            index.myTable = index.myDB.getTable(PATH_HISTORY_TABLE);
+            index.myMergeInfoTable = index.myDB.getTable(MERGE_INFO_CHANGES_TABLE);
+            index.myRevisionTable = index.myDB.getTable(INDEXED_REVISION_TABLE);
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            if (index.myDB != null) {
+                try {
+                    index.myDB.close();
+                } catch (SqlJetException inner) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, inner);
+                }
+            }
+            return null;
+        }
+        return index;
+    }
+
+    public static void createPathHistoryIndex(File path) throws SVNException {
+        SVNFileUtil.deleteFile(path);
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(path, true);
+            checkFormat(db);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        } finally {
+            if (db != null) {
+                try {
+                    db.close();
+                } catch (SqlJetException e) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                }
+            }
+        }
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version == 0) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(PATH_HISTORY_DB_FORMAT);
+                            db.createTable(PATH_HISTORY_DB_SQL);
+                            db.createIndex(PATH_HISTORY_INDEX_SQL);
+                            db.createTable(MERGE_INFO_CHANGES_SQL);
+                            db.createIndex(MERGE_INFO_CHANGES_INDEX_SQL);
+                            db.createTable(INDEXED_REVISION_SQL);
+                            return null;
+                        }
+                    });
+                } else if (version != PATH_HISTORY_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized, the index has to be rebuilt");
+                }
+                return null;
+            }
+        });
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myTable = null;
+                myMergeInfoTable = null;
+                myRevisionTable = null;
+                myDB = null;
+                myFSFS = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the youngest revision the index knows about, <code>-1</code> if none.
+     */
+    public long getIndexedRevision() throws SVNException {
+        Long revision = (Long) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return new Long(readIndexedRevision());
+            }
+        });
+        synchronized (this) {
+            myIndexedRevision = revision.longValue();
+        }
+        return revision.longValue();
+    }
+
+    /**
+     * Tells whether lookups at <code>revision</code> and older ones may be answered by the index.
+     */
+    public boolean isIndexed(long revision) throws SVNException {
+        synchronized (this) {
+            if (myIndexedRevision >= revision) {
+                return true;
+            }
+        }
+        return getIndexedRevision() >= revision;
+    }
+
+    /**
+     * Indexes revisions committed since the last update. Does not need the repository
+     * write lock, each batch of revisions starts from the indexed revision read in its own
+     * write transaction, so concurrent updates never index a revision twice.
+     */
+    public void update() throws SVNException {
+        final long youngestRevision = myFSFS.readYoungestRevision();
+        final long[] indexedRevision = new long[] {SVNRepository.INVALID_REVISION};
+        do {
+            runWriteTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    final long startRevision;
+                    try {
+                        startRevision = readIndexedRevision() + 1;
+                    } catch (SqlJetException e) {
+                        SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                        return;
+                    }
+                    final long endRevision = Math.min(youngestRevision, startRevision + REVISIONS_PER_TRANSACTION - 1);
+                    for (long rev = startRevision; rev <= endRevision; rev++) {
+                        indexRevision(rev);
+                    }
+                    if (endRevision >= startRevision) {
+                        writeIndexedRevision(endRevision);
+                    }
+                    indexedRevision[0] = Math.max(endRevision, startRevision - 1);
+                }
+            });
+        } while (indexedRevision[0] < youngestRevision);
+        synchronized (this) {
+            myIndexedRevision = Math.max(myIndexedRevision, indexedRevision[0]);
+        }
+    }
+
+    /**
+     * Returns history of the node at <code>path</code> in <code>revision</code> up to
+     * (and including) the revision at which the node or one of its parents was added,
+     * or <code>null</code> if the index has no answer. The history of the root directory
+     * is never indexed.
+     */
+    public HistorySegment getHistorySegment(final String path, final long revision) throws SVNException {
+        if ("/".equals(path) || !isIndexed(revision)) {
+            return null;
+        }
+        return (HistorySegment) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                String boundaryPath = null;
+                long boundaryRevision = SVNRepository.INVALID_REVISION;
+                String copyFromPath = null;
+                long copyFromRevision = SVNRepository.INVALID_REVISION;
+                for (String currentPath = path; !"/".equals(currentPath); currentPath = getParentPath(currentPath)) {
+                    ISqlJetCursor cursor = myTable.scope(PATH_HISTORY_INDEX, new Object[] {currentPath, new Long(0)},
+                            new Object[] {currentPath, new Long(revision)}).reverse();
+                    try {
+                        while (!cursor.eof()) {
+                            long rowRevision = cursor.getInteger(1);
+                            if (rowRevision <= boundaryRevision) {
+                                break;
+                            }
+                            String action = cursor.getString(2);
+                            if (isAddAction(action)) {
+                                boundaryPath = currentPath;
+                                boundaryRevision = rowRevision;
+                                copyFromPath = cursor.isNull(3) ? null : cursor.getString(3);
+                                copyFromRevision = cursor.isNull(4) ? SVNRepository.INVALID_REVISION : cursor.getInteger(4);
+                                break;
+                            }
+                            cursor.next();
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                if (boundaryPath == null) {
+                    return null;
+                }
+                if (copyFromPath != null && FSRepository.isValidRevision(copyFromRevision)) {
+                    if (!boundaryPath.equals(path)) {
+                        copyFromPath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(copyFromPath, SVNPathUtil.getPathAsChild(boundaryPath, path)));
+                    }
+                } else if (!boundaryPath.equals(path)) {
+                    // a parent was added without history, but not the path itself.
+                    return null;
+                } else {
+                    copyFromPath = null;
+                    copyFromRevision = SVNRepository.INVALID_REVISION;
+                }
+
+                List<Long> revisions = new ArrayList<Long>();
+                if (boundaryRevision < revision) {
+                    ISqlJetCursor cursor = myTable.scope(PATH_HISTORY_INDEX, new Object[] {path, new Long(boundaryRevision + 1)},
+                            new Object[] {path, new Long(revision)}).reverse();
+                    try {
+                        while (!cursor.eof()) {
+                            revisions.add(new Long(cursor.getInteger(1)));
+                            cursor.next();
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                long[] result = new long[revisions.size() + 1];
+                for (int i = 0; i < revisions.size(); i++) {
+                    result[i] = revisions.get(i).longValue();
+                }
+                result[revisions.size()] = boundaryRevision;
+                return new HistorySegment(path, result, copyFromPath, copyFromRevision);
+            }
+        });
+    }
+
+    /**
+     * Returns revisions in range <code>(startRevision, endRevision]</code>, in ascending
+     * order, at which <code>path</code> or one of its parents was deleted or replaced,
+     * <code>null</code> if the index has no answer.
+     */
+    public long[] getDeletionCandidates(final String path, final long startRevision, final long endRevision) throws SVNException {
+        if ("/".equals(path) || !isIndexed(endRevision)) {
+            return null;
+        }
+        if (startRevision >= endRevision) {
+            return new long[0];
+        }
+        return (long[]) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                Set<Long> candidates = new TreeSet<Long>();
+                for (String currentPath = path; !"/".equals(currentPath); currentPath = getParentPath(currentPath)) {
+                    ISqlJetCursor cursor = myTable.scope(PATH_HISTORY_INDEX, new Object[] {currentPath, new Long(startRevision + 1)},
+                            new Object[] {currentPath, new Long(endRevision)});
+                    try {
+                        while (!cursor.eof()) {
+                            String action = cursor.getString(2);
+                            if (isDeleteAction(action)) {
+                                candidates.add(new Long(cursor.getInteger(1)));
+                            }
+                            cursor.next();
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                long[] result = new long[candidates.size()];
+                int i = 0;
+                for (Iterator<Long> revisions = candidates.iterator(); revisions.hasNext();) {
+                    result[i++] = revisions.next().longValue();
+                }
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Fills mergeinfo added and deleted in <code>revision</code> keyed by the path it was
+     * changed on (see <code>FSLog.collectChangedMergeInfo</code>). Returns <code>false</code>
+     * if the index has no answer.
+     */
+    public boolean getMergeInfoChanges(final long revision, final Map addedMergeInfo, final Map deletedMergeInfo) throws SVNException {
+        if (!myFSFS.supportsMergeInfo() || !isIndexed(revision)) {
+            return false;
+        }
+        final Map added = new SVNHashMap();
+        final Map deleted = new SVNHashMap();
+        Boolean result = (Boolean) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                ISqlJetCursor cursor = myMergeInfoTable.lookup(MERGE_INFO_CHANGES_INDEX, new Object[] {new Long(revision)});
+                try {
+                    while (!cursor.eof()) {
+                        String path = cursor.getString(1);
+                        try {
+                            Map pathAdded = new SVNHashMap();
+                            pathAdded.putAll(SVNMergeInfoManager.parseMergeInfo(cursor.getString(2)));
+                            Map pathDeleted = new SVNHashMap();
+                            pathDeleted.putAll(SVNMergeInfoManager.parseMergeInfo(cursor.getString(3)));
+                            added.put(path, pathAdded);
+                            deleted.put(path, pathDeleted);
+                        } catch (SVNException e) {
+                            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                            return Boolean.FALSE;
+                        }
+                        cursor.next();
+                    }
+                } finally {
+                    cursor.close();
+                }
+                return Boolean.TRUE;
+            }
+        });
+        if (!result.booleanValue()) {
+            return false;
+        }
+        addedMergeInfo.putAll(added);
+        deletedMergeInfo.putAll(deleted);
+        return true;
+    }
+
+    /**
+     * Tells whether inherited mergeinfo of <code>path</code> in <code>revision</code> is
+     * known to be the same as in the previous revision, that is neither the path nor any of
+     * its parents was added, replaced or had its mergeinfo changed in <code>revision</code>.
+     */
+    public boolean isMergeInfoUnchanged(final String path, final long revision) throws SVNException {
+        if (!myFSFS.supportsMergeInfo() || !isIndexed(revision)) {
+            return false;
+        }
+        Boolean result = (Boolean) runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                for (String currentPath = path; ; currentPath = getParentPath(currentPath)) {
+                    ISqlJetCursor cursor = myMergeInfoTable.lookup(MERGE_INFO_CHANGES_INDEX, new Object[] {new Long(revision), currentPath});
+                    try {
+                        if (!cursor.eof()) {
+                            return Boolean.FALSE;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    if ("/".equals(currentPath)) {
+                        break;
+                    }
+                    cursor = myTable.lookup(PATH_HISTORY_INDEX, new Object[] {currentPath, new Long(revision)});
+                    try {
+                        if (!cursor.eof() && isAddAction(cursor.getString(2))) {
+                            return Boolean.FALSE;
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                return Boolean.TRUE;
+            }
+        });
+        return result.booleanValue();
+    }
+
+    private void indexRevision(long revision) throws SVNException {
+        FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+        Map changes = root.getChangedPaths();
+        Set<String> parents = new HashSet<String>();
+        try {
+            for (Iterator paths = changes.keySet().iterator(); paths.hasNext();) {
+                String path = (String) paths.next();
+                FSPathChange change = (FSPathChange) changes.get(path);
+                if ("/".equals(path)) {
+                    continue;
+                }
+                String copyFromPath = change.getCopyPath();
+                Long copyFromRevision = null;
+                if (copyFromPath != null && FSRepository.isValidRevision(change.getCopyRevision())) {
+                    copyFromRevision = new Long(change.getCopyRevision());
+                } else {
+                    copyFromPath = null;
+                }
+                myTable.insert(new Object[] {path, new Long(revision), String.valueOf(change.getType()), copyFromPath, copyFromRevision});
+                String parent = getParentPath(path);
+                while (!"/".equals(parent) && parents.add(parent)) {
+                    parent = getParentPath(parent);
+                }
+            }
+            for (Iterator<String> paths = parents.iterator(); paths.hasNext();) {
+                String parent = paths.next();
+                if (!changes.containsKey(parent)) {
+                    myTable.insert(new Object[] {parent, new Long(revision), ACTION_SUBTREE, null, null});
+                }
+            }
+            if (myFSFS.supportsMergeInfo()) {
+                Map addedMergeInfo = new SVNHashMap();
+                Map deletedMergeInfo = new SVNHashMap();
+                FSLog.collectChangedMergeInfo(myFSFS, new SVNMergeInfoManager(), addedMergeInfo, deletedMergeInfo, revision);
+                for (Iterator paths = addedMergeInfo.keySet().iterator(); paths.hasNext();) {
+                    String path = (String) paths.next();
+                    myMergeInfoTable.insert(new Object[] {new Long(revision), path,
+                            SVNMergeInfoUtil.formatMergeInfoToString((Map) addedMergeInfo.get(path), null),
+                            SVNMergeInfoUtil.formatMergeInfoToString((Map) deletedMergeInfo.get(path), null)});
+                }
+            }
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
+    private long readIndexedRevision() throws SqlJetException {
+        ISqlJetCursor cursor = myRevisionTable.open();
+        try {
+            if (!cursor.eof()) {
+                return cursor.getInteger(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        return SVNRepository.INVALID_REVISION;
+    }
+
+    private void writeIndexedRevision(long revision) throws SVNException {
+        try {
+            ISqlJetCursor cursor = myRevisionTable.open();
+            try {
+                if (cursor.eof()) {
+                    myRevisionTable.insert(new Object[] {new Long(revision)});
+                } else {
+                    cursor.update(new Object[] {new Long(revision)});
+                }
+            } finally {
+                cursor.close();
+            }
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
+    private static String getParentPath(String path) {
+        String parent = SVNPathUtil.removeTail(path);
+        return parent.length() == 0 ? "/" : parent;
+    }
+
+    private static boolean isAddAction(String action) {
+        return action.length() == 1 && (action.charAt(0) == SVNLogEntryPath.TYPE_ADDED || action.charAt(0) == SVNLogEntryPath.TYPE_REPLACED);
+    }
+
+    private static boolean isDeleteAction(String action) {
+        return action.length() == 1 && (action.charAt(0) == SVNLogEntryPath.TYPE_DELETED || action.charAt(0) == SVNLogEntryPath.TYPE_REPLACED);
+    }
+
+    private Object runReadTransaction(ISqlJetTransaction transaction) throws SVNException {
+        try {
+            return myDB.runReadTransaction(transaction);
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    private void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
+        try {
+            myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    try {
+                        transaction.run();
+                    } catch (SVNException e) {
+                        throw new SqlJetException(e);
+                    }
+                    return null;
+                }
+            });
+        } catch (SqlJetException e) {
+            if (e.getCause() instanceof SVNException) {
+                throw (SVNException) e.getCause();
+            }
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        SqlJetErrorCode sqlCode = e.getErrorCode();
+        SVNErrorCode errorCode = sqlCode == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR;
+        return SVNErrorMessage.create(errorCode, e.getMessage());
+    }
+
+    /**
+     * Revisions at which a node changed at one path, youngest first, the last one
+     * is the revision at which the node (or one of its parents) was added or copied.
+     */
+    public static class HistorySegment {
+
+        private String myPath;
+        private long[] myRevisions;
+        private String myCopyFromPath;
+        private long myCopyFromRevision;
+
+        private HistorySegment(String path, long[] revisions, String copyFromPath, long copyFromRevision) {
+            myPath = path;
+            myRevisions = revisions;
+            myCopyFromPath = copyFromPath;
+            myCopyFromRevision = copyFromRevision;
+        }
+
+        public String getPath() {
+            return myPath;
+        }
+
+        public long[] getRevisions() {
+            return myRevisions;
+        }
+
+        /**
+         * Source of the copy the segment starts with, <code>null</code> when the node was
+         * added without history.
+         */
+        public String getCopyFromPath() {
+            return myCopyFromPath;
+        }
+
+        public long getCopyFromRevision() {
+            return myCopyFromRevision;
+        }
+    }
+}
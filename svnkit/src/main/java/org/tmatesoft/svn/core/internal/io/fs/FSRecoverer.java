@@ -56,7 +56,7 @@ public class FSRecoverer {
         String nextNodeID = null;
         String nextCopyID = null;
         long maxRev = getLargestRevision();
-        long youngestRev = myOwner.getYoungestRevision();
+        long youngestRev = myOwner.readYoungestRevision();
         
         if (youngestRev > maxRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Expected current rev to be <= {0} but found {1}", 
@@ -109,6 +109,7 @@ public class FSRecoverer {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
+        myOwner.syncDirectory(myOwner.getDBRoot());
     }
     
     private void findMaxIDs(long rev, FSFile revFile, long offset, String[] maxNodeID, String[] maxCopyID) throws SVNException {
@@ -202,7 +203,7 @@ public class FSRecoverer {
         long right = 1;
         while (true) {
             try {
-                myOwner.getPackOrRevisionFSFile(right); 
+                myOwner.getPackOrRevisionFSFile(right).close();
             } catch (SVNException svne) {
                 if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_NO_SUCH_REVISION) {
                     break;
@@ -217,7 +218,7 @@ public class FSRecoverer {
         while (left + 1 < right) {
             long probe = left + (right - left)/2;
             try {
-                myOwner.getPackOrRevisionFSFile(probe); 
+                myOwner.getPackOrRevisionFSFile(probe).close();
                 left = probe;
             } catch (SVNException svne) {
                 if (svne.getErrorMessage().getErrorCode() == SVNErrorCode.FS_NO_SUCH_REVISION) {
@@ -18,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Set;
@@ -178,11 +179,11 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
 
             byte[] bytes = SVNPropertyValue.getPropertyAsBytes(propertyValue);
             if (isHooksEnabled() && FSHooks.isHooksEnabled() && !bypassPreRevpropHook) {
-                FSHooks.runPreRevPropChangeHook(myReposRootDir, propertyName, bytes, userName, revision, action);
+                FSHooks.runPreRevPropChangeHook(myFSFS, propertyName, bytes, userName, revision, action);
             }
             myFSFS.setRevisionProperty(revision, propertyName, propertyValue);
             if (isHooksEnabled() && FSHooks.isHooksEnabled() && !bypassPostRevpropHook) {
-                FSHooks.runPostRevPropChangeHook(myReposRootDir, propertyName, bytes, userName, revision, action);
+                FSHooks.runPostRevPropChangeHook(myFSFS, propertyName, bytes, userName, revision, action);
             }
         } finally {
             closeRepository();
@@ -479,7 +480,6 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             openRepository();
             path = getRepositoryPath(path);
 
-            File digestFile = myFSFS.getDigestFileFromRepositoryPath(path);
             final ArrayList locks = new ArrayList();
             ISVNLockHandler handler = new ISVNLockHandler() {
 
@@ -491,7 +491,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
                 }
             };
 
-            myFSFS.walkDigestFiles(digestFile, handler, false);
+            myFSFS.walkLocks(path, handler, false);
 
             return (SVNLock[]) locks.toArray(new SVNLock[locks.size()]);
         } finally {
@@ -506,25 +506,18 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
     public void lock(Map pathsToRevisions, String comment, boolean force, boolean isDAVComment, ISVNLockHandler handler) throws SVNException {
         try {
             openRepository();
+            if (pathsToRevisions.isEmpty()) {
+                return;
+            }
+            long youngestRevision = myFSFS.getYoungestRevision();
+            Map<String, Long> reposPathsToRevisions = new LinkedHashMap<String, Long>();
             for (Iterator paths = pathsToRevisions.keySet().iterator(); paths.hasNext();) {
                 String path = (String) paths.next();
                 Long revision = (Long) pathsToRevisions.get(path);
-                String reposPath = getRepositoryPath(path);
-                long curRevision = (revision == null || isInvalidRevision(revision.longValue())) ? myFSFS.getYoungestRevision() : revision.longValue();
-                SVNLock lock = null;
-                SVNErrorMessage error = null;
-                try {
-                    lock = myFSFS.lockPath(reposPath, null, getUserName(), comment, null, curRevision, force, isDAVComment);
-                } catch (SVNException svne) {
-                    error = svne.getErrorMessage();
-                    if (!FSErrors.isLockError(error)) {
-                        throw svne;
-                    }
-                }
-                if (handler != null) {
-                    handler.handleLock(reposPath, lock, error);
-                }
+                long curRevision = (revision == null || isInvalidRevision(revision.longValue())) ? youngestRevision : revision.longValue();
+                reposPathsToRevisions.put(getRepositoryPath(path), new Long(curRevision));
             }
+            myFSFS.lockPaths(reposPathsToRevisions, getUserName(), comment, null, force, isDAVComment, handler);
         } finally {
             closeRepository();
         }
@@ -533,23 +526,15 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
     public void unlock(Map pathToTokens, boolean force, ISVNLockHandler handler) throws SVNException {
         try {
             openRepository();
+            if (pathToTokens.isEmpty()) {
+                return;
+            }
+            Map<String, String> reposPathsToTokens = new LinkedHashMap<String, String>();
             for (Iterator paths = pathToTokens.keySet().iterator(); paths.hasNext();) {
                 String path = (String) paths.next();
-                String token = (String) pathToTokens.get(path);
-                String reposPath = getRepositoryPath(path);
-                SVNErrorMessage error = null;
-                try {
-                    myFSFS.unlockPath(reposPath, token, getUserName(), force, true);
-                } catch (SVNException svne) {
-                    error = svne.getErrorMessage();
-                    if (!FSErrors.isUnlockError(error)) {
-                        throw svne;
-                    }
-                }
-                if (handler != null) {
-                    handler.handleUnlock(reposPath, new SVNLock(reposPath, token, null, null, null, null), error);
-                }
+                reposPathsToTokens.put(getRepositoryPath(path), (String) pathToTokens.get(path));
             }
+            myFSFS.unlockPaths(reposPathsToTokens, getUserName(), force, true, handler);
         } finally {
             closeRepository();
         }
@@ -26,6 +26,23 @@ public class FSRepositoryFactory extends SVNRepositoryFactory {
         SVNRepositoryFactory.registerRepositoryFactory("^file://.*$", new FSRepositoryFactory());
     }
     
+    /**
+     * Registers a Java hook run for all repositories accessed with <code>file://</code>
+     * URLs in this JVM, in addition to their hook scripts.
+     *
+     * @since 1.9
+     */
+    public static void registerHook(IFSHook hook) {
+        FSHooks.registerHook(hook);
+    }
+
+    /**
+     * @since 1.9
+     */
+    public static void unregisterHook(IFSHook hook) {
+        FSHooks.unregisterHook(hook);
+    }
+
     protected SVNRepository createRepositoryImpl(SVNURL url, ISVNSession session) {
         return new FSRepository(url, session);
     }
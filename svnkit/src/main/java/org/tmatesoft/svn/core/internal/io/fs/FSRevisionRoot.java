@@ -11,12 +11,17 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Iterator;
 import java.util.Map;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
@@ -45,14 +50,44 @@ public class FSRevisionRoot extends FSRoot {
     }
 
     public Map getChangedPaths() throws SVNException {
+        final FSCache<FSCacheKey, FSPathChange[]> cache = FSCacheManager.getChangedPathsCache();
+        final FSCacheKey cacheKey = cache.isEnabled() ? new FSCacheKey(getOwner().getCacheNamespace(), getRevision(), 0) : null;
+        if (cacheKey != null) {
+            final FSPathChange[] cachedChanges = cache.get(cacheKey);
+            if (cachedChanges != null) {
+                final Map changes = new SVNHashMap();
+                for (int i = 0; i < cachedChanges.length; i++) {
+                    changes.put(cachedChanges[i].getPath(), copyChange(cachedChanges[i]));
+                }
+                return changes;
+            }
+        }
+        final Map changes;
         FSFile file = getOwner().getPackOrRevisionFSFile(getRevision());
         try {
             loadOffsets(file, FSID.ITEM_INDEX_CHANGES);
             file.seek(myChangesOffset);
-            return fetchAllChanges(file, true);
+            changes = fetchAllChanges(file, true);
         } finally {
             file.close();
         }
+        if (cacheKey != null) {
+            final FSPathChange[] cachedChanges = new FSPathChange[changes.size()];
+            long size = 64;
+            int i = 0;
+            for (Iterator values = changes.values().iterator(); values.hasNext(); i++) {
+                final FSPathChange change = (FSPathChange) values.next();
+                cachedChanges[i] = copyChange(change);
+                size += 192 + 2 * change.getPath().length() + (change.getCopyPath() != null ? 2 * change.getCopyPath().length() : 0);
+            }
+            cache.put(cacheKey, cachedChanges, size);
+        }
+        return changes;
+    }
+
+    private static FSPathChange copyChange(FSPathChange change) {
+        return new FSPathChange(change.getPath(), change.getRevNodeId(), change.getChangeKind(), change.isTextModified(), change.arePropertiesModified(),
+                change.getMergeInfoModified(), change.getCopyPath(), change.getCopyRevision(), change.getKind());
     }
 
     public FSCopyInheritance getCopyInheritance(FSParentPath child) throws SVNException{
@@ -64,7 +99,13 @@ public class FSRevisionRoot extends FSRoot {
         if (kind == SVNNodeKind.NONE) {
             SVNErrorManager.error(FSErrors.errorNotFound(this, path), SVNLogType.FSFS);
         }
-        return new FSNodeHistory(new SVNLocationEntry(getRevision(), SVNPathUtil.canonicalizeAbsolutePath(path)), 
+        path = SVNPathUtil.canonicalizeAbsolutePath(path);
+        FSPathHistoryIndex index = getOwner().getPathHistoryIndex();
+        FSPathHistoryIndex.HistorySegment segment = index != null ? index.getHistorySegment(path, getRevision()) : null;
+        if (segment != null) {
+            return new FSIndexedNodeHistory(path, getRevision(), segment, getOwner());
+        }
+        return new FSNodeHistory(new SVNLocationEntry(getRevision(), path), 
                 false, new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), getOwner());
     }
 
@@ -170,7 +170,7 @@ public class FSTransactionRoot extends FSRoot {
         caps.add("mergeinfo");
         String author = revisionProperties.getStringValue(SVNRevisionProperty.AUTHOR);
         if (owner != null && owner.isHooksEnabled()) {
-            FSHooks.runStartCommitHook(owner.getRepositoryRoot(), author, caps);
+            FSHooks.runStartCommitHook(owner, author, caps);
         }
         FSTransactionInfo txn = FSTransactionRoot.beginTransaction(baseRevision, FSTransactionRoot.SVN_FS_TXN_CHECK_LOCKS, owner);
         owner.changeTransactionProperties(txn.getTxnId(), revisionProperties);
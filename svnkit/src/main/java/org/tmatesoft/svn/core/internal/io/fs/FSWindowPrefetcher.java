@@ -0,0 +1,211 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedList;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSInputStream.FSRepresentationState;
+import org.tmatesoft.svn.core.internal.util.ISVNThreadPool;
+import org.tmatesoft.svn.core.internal.wc.SVNClassLoader;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Reads and decompresses svndiff windows of one representation of a delta chain
+ * ahead of {@link FSInputStream} on a pooled thread. Each representation of the
+ * chain has its own prefetcher, so windows of all representations are read and
+ * inflated in parallel, while windows are still combined one by one by the stream.
+ *
+ * <p/>
+ * Parallel reconstruction is disabled by default and may be enabled with the
+ * <code>svnkit.fsfs.parallelReconstruction</code> system property. It is only used for
+ * files of at least <code>svnkit.fsfs.parallelReconstruction.minSize</code> bytes (16M by default),
+ * <code>svnkit.fsfs.parallelReconstruction.readAhead</code> sets the number of windows
+ * read ahead for each representation.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSWindowPrefetcher implements Runnable {
+
+    public static final String PARALLEL_RECONSTRUCTION_PROPERTY = "svnkit.fsfs.parallelReconstruction";
+    public static final String MIN_SIZE_PROPERTY = "svnkit.fsfs.parallelReconstruction.minSize";
+    public static final String READ_AHEAD_PROPERTY = "svnkit.fsfs.parallelReconstruction.readAhead";
+
+    private static boolean ourIsEnabled = Boolean.getBoolean(PARALLEL_RECONSTRUCTION_PROPERTY);
+    private static long ourMinSize = Long.getLong(MIN_SIZE_PROPERTY, 16 * 1024 * 1024).longValue();
+    private static final int ourReadAhead = Math.max(1, Integer.getInteger(READ_AHEAD_PROPERTY, 8).intValue());
+
+    private static ISVNThreadPool ourThreadPool;
+
+    private final FSRepresentationState myState;
+    private final SVNDeltaCombiner myReader;
+    private final LinkedList<WindowEntry> myWindows;
+
+    private long myReadOffset;
+    private boolean myIsRunning;
+    private boolean myIsDisposed;
+    private SVNException myError;
+
+    FSWindowPrefetcher(FSRepresentationState state) {
+        myState = state;
+        myReader = new SVNDeltaCombiner();
+        myWindows = new LinkedList<WindowEntry>();
+        myReadOffset = state.myOffset;
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static synchronized long getMinSize() {
+        return ourMinSize;
+    }
+
+    public static synchronized void setMinSize(long minSize) {
+        ourMinSize = minSize;
+    }
+
+    static boolean isEnabledFor(long expandedSize, int chainLength) {
+        return isEnabled() && chainLength > 1 && expandedSize >= getMinSize();
+    }
+
+    private static synchronized ISVNThreadPool getThreadPool() {
+        if (ourThreadPool == null) {
+            ourThreadPool = SVNClassLoader.getThreadPool();
+        }
+        return ourThreadPool;
+    }
+
+    public synchronized void start() {
+        if (!myIsRunning && !myIsDisposed && myError == null && myReadOffset < myState.myEnd) {
+            myIsRunning = true;
+            getThreadPool().run(this, true);
+        }
+    }
+
+    /**
+     * Returns the next window of the representation, waiting for it to be read if necessary,
+     * and moves the offset of the representation state past that window.
+     */
+    public SVNDiffWindow readWindow() throws SVNException {
+        WindowEntry entry = null;
+        synchronized (this) {
+            if (myWindows.isEmpty()) {
+                start();
+            }
+            while (myWindows.isEmpty() && myIsRunning) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Reading of svndiff windows was interrupted");
+                    SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                }
+            }
+            if (myWindows.isEmpty()) {
+                if (myError != null) {
+                    throw myError;
+                }
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Reading one svndiff window read beyond the end of the representation");
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            entry = myWindows.removeFirst();
+            if (myWindows.size() <= ourReadAhead / 2) {
+                start();
+            }
+        }
+        myState.myOffset = entry.myEndOffset;
+        return entry.myWindow;
+    }
+
+    /**
+     * Waits for the running read to complete, after that the file of the
+     * representation state may be closed.
+     */
+    public synchronized void dispose() {
+        myIsDisposed = true;
+        boolean interrupted = false;
+        while (myIsRunning) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // the file must not be closed under the running read.
+                interrupted = true;
+            }
+        }
+        myWindows.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() {
+        boolean completed = false;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (myIsDisposed || myWindows.size() >= ourReadAhead || myReadOffset >= myState.myEnd) {
+                        completed = true;
+                        return;
+                    }
+                }
+                final SVNDiffWindow window = myReader.readWindow(myState.myFile, myState.myVersion);
+                final ByteBuffer data = ByteBuffer.allocate(window.getDataLength());
+                final WindowEntry entry = new WindowEntry(window.clone(data), myState.myFile.position());
+                synchronized (this) {
+                    myWindows.addLast(entry);
+                    myReadOffset = entry.myEndOffset;
+                    notifyAll();
+                }
+            }
+        } catch (SVNException e) {
+            synchronized (this) {
+                myError = e;
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, e.getMessage());
+                myError = new SVNException(err, e);
+            }
+        } finally {
+            synchronized (this) {
+                if (!completed && myError == null) {
+                    // an Error is thrown, do not leave the reader waiting for windows.
+                    myError = new SVNException(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Reading of svndiff windows failed"));
+                }
+                myIsRunning = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private static class WindowEntry {
+
+        final SVNDiffWindow myWindow;
+        final long myEndOffset;
+
+        WindowEntry(SVNDiffWindow window, long endOffset) {
+            myWindow = window;
+            myEndOffset = endOffset;
+        }
+    }
+}
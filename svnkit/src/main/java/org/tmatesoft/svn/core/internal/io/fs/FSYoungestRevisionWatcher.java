@@ -0,0 +1,240 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Tracks the youngest revision of a repository stored in <code>db/current</code>.
+ * There is one watcher per repository, shared by all FSFS instances, which notifies
+ * registered {@link IFSYoungestRevisionListener}s when the youngest revision changes.
+ *
+ * <p/>
+ * By default <code>db/current</code> is read on every request. When the
+ * <code>svnkit.fsfs.youngestRevision.ttl</code> system property is set to a positive
+ * number of milliseconds, the youngest revision is served from memory for that long,
+ * after that it is only read again when the size or modification time of the file has
+ * changed, or when the file was modified too recently for its timestamp to be trusted.
+ * In that mode listeners are also notified of commits made by other processes,
+ * which are looked for once per TTL while there are listeners. Callers holding the
+ * repository write lock must not trust a cached revision and use
+ * {@link #readYoungestRevision()} instead.
+ *
+ * <p/>
+ * The youngest revision known to a watcher never decreases, so that a read of
+ * <code>db/current</code> completed after a commit of this process does not hide that commit.
+ * Watchers are only kept while they are used by FSFS instances or have listeners.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSYoungestRevisionWatcher {
+
+    public static final String TTL_PROPERTY = "svnkit.fsfs.youngestRevision.ttl";
+
+    // file timestamps may have one second resolution, do not trust more recent ones
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private static long ourTTL = Long.getLong(TTL_PROPERTY, 0).longValue();
+
+    private static final Map<File, WeakReference<FSYoungestRevisionWatcher>> ourWatchers = new HashMap<File, WeakReference<FSYoungestRevisionWatcher>>();
+    private static final Set<FSYoungestRevisionWatcher> ourObservedWatchers = new HashSet<FSYoungestRevisionWatcher>();
+    private static Timer ourTimer;
+
+    private final File myRepositoryRoot;
+    private final File myCurrentFile;
+    private final List<IFSYoungestRevisionListener> myListeners;
+
+    private long myRevision;
+    private long myLastModified;
+    private long myLength;
+    private long myCheckTime;
+    private TimerTask myPollTask;
+
+    private FSYoungestRevisionWatcher(File repositoryRoot, File currentFile) {
+        myRepositoryRoot = repositoryRoot;
+        myCurrentFile = currentFile;
+        myListeners = new CopyOnWriteArrayList<IFSYoungestRevisionListener>();
+        myRevision = -1;
+    }
+
+    public static FSYoungestRevisionWatcher getWatcher(FSFS owner) {
+        final File currentFile = owner.getCurrentFile().getAbsoluteFile();
+        synchronized (ourWatchers) {
+            final WeakReference<FSYoungestRevisionWatcher> reference = ourWatchers.get(currentFile);
+            FSYoungestRevisionWatcher watcher = reference != null ? reference.get() : null;
+            if (watcher == null) {
+                removeCollectedWatchers();
+                watcher = new FSYoungestRevisionWatcher(owner.getRepositoryRoot(), currentFile);
+                ourWatchers.put(currentFile, new WeakReference<FSYoungestRevisionWatcher>(watcher));
+            }
+            return watcher;
+        }
+    }
+
+    private static void removeCollectedWatchers() {
+        for (Iterator<WeakReference<FSYoungestRevisionWatcher>> references = ourWatchers.values().iterator(); references.hasNext();) {
+            if (references.next().get() == null) {
+                references.remove();
+            }
+        }
+    }
+
+    public static synchronized long getTTL() {
+        return ourTTL;
+    }
+
+    public static synchronized void setTTL(long ttl) {
+        ourTTL = ttl;
+    }
+
+    public long getYoungestRevision() throws SVNException {
+        final long ttl = getTTL();
+        if (ttl > 0) {
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                if (myRevision >= 0 && now - myCheckTime < ttl) {
+                    return myRevision;
+                }
+                if (myRevision >= 0 && now - myLastModified > TIMESTAMP_RESOLUTION &&
+                        myCurrentFile.lastModified() == myLastModified && myCurrentFile.length() == myLength) {
+                    myCheckTime = now;
+                    return myRevision;
+                }
+            }
+        }
+        final long revision = readCurrentFile();
+        synchronized (this) {
+            return Math.max(revision, myRevision);
+        }
+    }
+
+    /**
+     * Reads the youngest revision from <code>db/current</code>, whatever the TTL is.
+     */
+    public long readYoungestRevision() throws SVNException {
+        return readCurrentFile();
+    }
+
+    /**
+     * Called after <code>db/current</code> has been written by this process.
+     */
+    public void revisionCommitted(long revision) {
+        update(revision, myCurrentFile.lastModified(), myCurrentFile.length());
+    }
+
+    public void addListener(IFSYoungestRevisionListener listener) {
+        synchronized (ourWatchers) {
+            // listeners are notified as long as they are registered, even if no FSFS uses the watcher.
+            myListeners.add(listener);
+            ourObservedWatchers.add(this);
+        }
+        synchronized (this) {
+            final long ttl = getTTL();
+            if (myPollTask == null && ttl > 0) {
+                myPollTask = new TimerTask() {
+                    public void run() {
+                        try {
+                            getYoungestRevision();
+                        } catch (SVNException e) {
+                            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                        }
+                    }
+                };
+                getTimer().schedule(myPollTask, ttl, ttl);
+            }
+        }
+    }
+
+    public void removeListener(IFSYoungestRevisionListener listener) {
+        synchronized (ourWatchers) {
+            myListeners.remove(listener);
+            if (myListeners.isEmpty()) {
+                ourObservedWatchers.remove(this);
+            }
+        }
+        synchronized (this) {
+            if (myListeners.isEmpty() && myPollTask != null) {
+                myPollTask.cancel();
+                myPollTask = null;
+            }
+        }
+    }
+
+    private long readCurrentFile() throws SVNException {
+        final long lastModified = myCurrentFile.lastModified();
+        final long length = myCurrentFile.length();
+        long revision = 0;
+        FSFile file = new FSFile(myCurrentFile);
+        try {
+            String line = file.readLine(180);
+            int spaceIndex = line.indexOf(' ');
+            if (spaceIndex > 0) {
+                revision = Long.parseLong(line.substring(0, spaceIndex));
+            } else {
+                revision = Long.parseLong(line);
+            }
+        } catch (NumberFormatException nfe) {
+            revision = 0;
+        } finally {
+            file.close();
+        }
+        update(revision, lastModified, length);
+        return revision;
+    }
+
+    private void update(long revision, long lastModified, long length) {
+        final long previousRevision;
+        synchronized (this) {
+            previousRevision = myRevision;
+            if (revision < previousRevision) {
+                // db/current was read before a more recent commit.
+                return;
+            }
+            myRevision = revision;
+            myLastModified = lastModified;
+            myLength = length;
+            myCheckTime = System.currentTimeMillis();
+        }
+        if (previousRevision >= 0 && previousRevision < revision) {
+            for (Iterator<IFSYoungestRevisionListener> listeners = myListeners.iterator(); listeners.hasNext();) {
+                final IFSYoungestRevisionListener listener = listeners.next();
+                try {
+                    listener.youngestRevisionChanged(myRepositoryRoot, previousRevision, revision);
+                } catch (RuntimeException e) {
+                    SVNDebugLog.getDefaultLog().logSevere(SVNLogType.FSFS, e);
+                }
+            }
+        }
+    }
+
+    private static synchronized Timer getTimer() {
+        if (ourTimer == null) {
+            ourTimer = new Timer("SVNKit youngest revision watcher", true);
+        }
+        return ourTimer;
+    }
+}
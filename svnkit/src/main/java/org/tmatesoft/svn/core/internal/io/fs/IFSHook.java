@@ -0,0 +1,47 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import org.tmatesoft.svn.core.SVNException;
+
+
+/**
+ * Repository hook implemented in Java and run in the same JVM, without starting
+ * a hook script process. Hooks are registered for all repositories with
+ * {@link FSRepositoryFactory#registerHook(IFSHook)} or for a single {@link FSFS}
+ * instance with {@link FSFS#addHook(IFSHook)}, and are run before the hook script
+ * of the same name, if any.
+ *
+ * <p/>
+ * Pre-hooks block the operation by throwing an exception. Post-commit hooks
+ * are run asynchronously, in order of revisions, after the commit has returned.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public interface IFSHook {
+
+    /**
+     * Tells whether this hook should be run for events of the given hook type,
+     * one of the <code>FSHooks.SVN_REPOS_HOOK_*</code> names.
+     */
+    public boolean isEnabled(String hookName);
+
+    /**
+     * Runs the hook.
+     *
+     * @return a custom lock token for the <code>pre-lock</code> hook,
+     *         ignored for other hooks
+     */
+    public String run(FSHookEvent event) throws SVNException;
+
+}
@@ -11,6 +11,8 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Collection;
+
 import org.tmatesoft.svn.core.SVNException;
 
 
@@ -22,6 +24,8 @@ public interface IFSRepresentationCacheManager {
     
     public void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException;
 
+    public void insert(Collection<FSRepresentation> representations) throws SVNException;
+
     public void runWriteTransaction(IFSSqlJetTransaction transaction) throws SVNException;
 
     public void runReadTransaction(IFSSqlJetTransaction transaction) throws SVNException;
@@ -0,0 +1,28 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+
+
+/**
+ * Receives notifications about changes of the youngest revision of a repository,
+ * see {@link FSFS#addYoungestRevisionListener(IFSYoungestRevisionListener)}.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public interface IFSYoungestRevisionListener {
+
+    public void youngestRevisionChanged(File repositoryRoot, long previousRevision, long youngestRevision);
+
+}
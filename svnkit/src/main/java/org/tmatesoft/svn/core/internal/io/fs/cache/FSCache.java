@@ -0,0 +1,168 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache bounded by the estimated size (in bytes) of the
+ * cached values rather than by the number of entries. All methods are
+ * synchronized, so a single instance may be shared between threads.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCache<K, V> {
+
+    private final String myName;
+    private final LinkedHashMap<K, Entry<V>> myEntries;
+
+    private long myMaxSize;
+    private long mySize;
+
+    private long myHitCount;
+    private long myMissCount;
+    private long myEvictionCount;
+
+    public FSCache(String name, long maxSize) {
+        myName = name;
+        myMaxSize = maxSize;
+        myEntries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    }
+
+    public String getName() {
+        return myName;
+    }
+
+    public synchronized V get(K key) {
+        final Entry<V> entry = myEntries.get(key);
+        if (entry == null) {
+            myMissCount++;
+            return null;
+        }
+        myHitCount++;
+        return entry.myValue;
+    }
+
+    public synchronized void put(K key, V value, long size) {
+        if (value == null || myMaxSize <= 0 || size > myMaxSize) {
+            return;
+        }
+        final Entry<V> oldEntry = myEntries.put(key, new Entry<V>(value, size));
+        if (oldEntry != null) {
+            mySize -= oldEntry.mySize;
+        }
+        mySize += size;
+        evict();
+    }
+
+    public synchronized V remove(K key) {
+        final Entry<V> entry = myEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        mySize -= entry.mySize;
+        return entry.myValue;
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        mySize = 0;
+    }
+
+    public synchronized boolean isEnabled() {
+        return myMaxSize > 0;
+    }
+
+    public synchronized long getMaxSize() {
+        return myMaxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        myMaxSize = maxSize;
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return mySize;
+    }
+
+    public synchronized int getEntriesCount() {
+        return myEntries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return myHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return myMissCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return myEvictionCount;
+    }
+
+    public synchronized void resetStatistics() {
+        myHitCount = 0;
+        myMissCount = 0;
+        myEvictionCount = 0;
+    }
+
+    public synchronized String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("{[");
+        buffer.append("Name:");
+        buffer.append(myName);
+        buffer.append("][");
+        buffer.append("Size:");
+        buffer.append(mySize);
+        buffer.append("/");
+        buffer.append(myMaxSize);
+        buffer.append("][");
+        buffer.append("Entries:");
+        buffer.append(myEntries.size());
+        buffer.append("][");
+        buffer.append("Hits:");
+        buffer.append(myHitCount);
+        buffer.append("][");
+        buffer.append("Misses:");
+        buffer.append(myMissCount);
+        buffer.append("][");
+        buffer.append("Evictions:");
+        buffer.append(myEvictionCount);
+        buffer.append("]}");
+        return buffer.toString();
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<K, Entry<V>>> entries = myEntries.entrySet().iterator(); mySize > myMaxSize && entries.hasNext();) {
+            final Entry<V> entry = entries.next().getValue();
+            entries.remove();
+            mySize -= entry.mySize;
+            myEvictionCount++;
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V myValue;
+        private final long mySize;
+
+        public Entry(V value, long size) {
+            myValue = value;
+            mySize = size;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+/**
+ * Key of an item cached for a committed revision. The namespace identifies
+ * the repository (see {@link org.tmatesoft.svn.core.internal.io.fs.FSFS#getCacheNamespace()}),
+ * so that entries of different repositories never clash in process-wide caches.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCacheKey {
+
+    private final String myNamespace;
+    private final long myRevision;
+    private final long myIndex;
+
+    public FSCacheKey(String namespace, long revision, long index) {
+        myNamespace = namespace;
+        myRevision = revision;
+        myIndex = index;
+    }
+
+    public String getNamespace() {
+        return myNamespace;
+    }
+
+    public long getRevision() {
+        return myRevision;
+    }
+
+    public long getIndex() {
+        return myIndex;
+    }
+
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != FSCacheKey.class) {
+            return false;
+        }
+        final FSCacheKey key = (FSCacheKey) obj;
+        return myRevision == key.myRevision && myIndex == key.myIndex && myNamespace.equals(key.myNamespace);
+    }
+
+    public int hashCode() {
+        int result = myNamespace.hashCode();
+        result = 31 * result + (int) (myRevision ^ (myRevision >>> 32));
+        result = 31 * result + (int) (myIndex ^ (myIndex >>> 32));
+        return result;
+    }
+
+    public String toString() {
+        return myNamespace + ":" + myRevision + "/" + myIndex;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNMergeRangeList;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChange;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevProps;
+
+/**
+ * Holds process-wide caches of immutable data read from committed revisions.
+ * The caches are shared by all FSFS instances, entries of different repositories
+ * are told apart by the namespace part of {@link FSCacheKey}.
+ *
+ * <p/>
+ * The maximal size of every cache (in bytes) may be set with a system property,
+ * zero size disables the cache.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCacheManager {
+
+    public static final String NODE_REVISIONS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.nodeRevisions.size";
+    public static final String DIR_CONTENTS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.dirContents.size";
+    public static final String PACK_MANIFESTS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.packManifests.size";
+    public static final String FULLTEXTS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.fulltexts.size";
+    public static final String FULLTEXTS_MAX_ITEM_SIZE_PROPERTY = "svnkit.fsfs.cache.fulltexts.maxItemSize";
+    public static final String L2P_INDEX_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.l2pIndex.size";
+    public static final String P2L_INDEX_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.p2lIndex.size";
+    public static final String REVISION_PROPERTIES_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.revisionProperties.size";
+    public static final String REVPROP_PACKS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.revpropPacks.size";
+    public static final String CHANGED_PATHS_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.changedPaths.size";
+    public static final String MERGE_INFO_CACHE_SIZE_PROPERTY = "svnkit.fsfs.cache.mergeInfo.size";
+
+    private static final long DEFAULT_NODE_REVISIONS_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_DIR_CONTENTS_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_PACK_MANIFESTS_CACHE_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_FULLTEXTS_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_FULLTEXTS_MAX_ITEM_SIZE = 1024 * 1024;
+    private static final long DEFAULT_L2P_INDEX_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_P2L_INDEX_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_REVISION_PROPERTIES_CACHE_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_REVPROP_PACKS_CACHE_SIZE = 8 * 1024 * 1024;
+    private static final long DEFAULT_CHANGED_PATHS_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final long DEFAULT_MERGE_INFO_CACHE_SIZE = 4 * 1024 * 1024;
+
+    private static FSCache<FSCacheKey, FSRevisionNode> ourNodeRevisionsCache;
+    private static FSCache<FSCacheKey, Map> ourDirContentsCache;
+    private static FSCache<FSCacheKey, long[]> ourPackManifestsCache;
+    private static FSCache<FSCacheKey, long[]> ourL2PIndexCache;
+    private static FSCache<String, byte[]> ourFulltextsCache;
+    private static long ourFulltextsMaxItemSize = getSizeProperty(FULLTEXTS_MAX_ITEM_SIZE_PROPERTY, DEFAULT_FULLTEXTS_MAX_ITEM_SIZE);
+    private static FSCache<FSCacheKey, long[]> ourP2LIndexCache;
+    private static FSCache<FSCacheKey, SVNProperties> ourRevisionPropertiesCache;
+    private static FSCache<String, SVNFSFSPackedRevProps> ourRevPropPacksCache;
+    private static FSCache<FSCacheKey, FSPathChange[]> ourChangedPathsCache;
+    private static FSCache<String, Map<String, SVNMergeRangeList>> ourMergeInfoCache;
+
+    public static synchronized FSCache<FSCacheKey, FSRevisionNode> getNodeRevisionsCache() {
+        if (ourNodeRevisionsCache == null) {
+            ourNodeRevisionsCache = new FSCache<FSCacheKey, FSRevisionNode>("node-revisions",
+                    getSizeProperty(NODE_REVISIONS_CACHE_SIZE_PROPERTY, DEFAULT_NODE_REVISIONS_CACHE_SIZE));
+        }
+        return ourNodeRevisionsCache;
+    }
+
+    public static void setNodeRevisionsCacheSize(long size) {
+        getNodeRevisionsCache().setMaxSize(size);
+    }
+
+    /**
+     * Directory entries (name to <code>FSEntry</code>) of committed directory
+     * representations, keyed by representation revision and item index.
+     */
+    public static synchronized FSCache<FSCacheKey, Map> getDirContentsCache() {
+        if (ourDirContentsCache == null) {
+            ourDirContentsCache = new FSCache<FSCacheKey, Map>("dir-contents",
+                    getSizeProperty(DIR_CONTENTS_CACHE_SIZE_PROPERTY, DEFAULT_DIR_CONTENTS_CACHE_SIZE));
+        }
+        return ourDirContentsCache;
+    }
+
+    public static void setDirContentsCacheSize(long size) {
+        getDirContentsCache().setMaxSize(size);
+    }
+
+    /**
+     * Offsets of revisions within pack files, keyed by the first revision of the shard.
+     */
+    public static synchronized FSCache<FSCacheKey, long[]> getPackManifestsCache() {
+        if (ourPackManifestsCache == null) {
+            ourPackManifestsCache = new FSCache<FSCacheKey, long[]>("pack-manifests",
+                    getSizeProperty(PACK_MANIFESTS_CACHE_SIZE_PROPERTY, DEFAULT_PACK_MANIFESTS_CACHE_SIZE));
+        }
+        return ourPackManifestsCache;
+    }
+
+    public static void setPackManifestsCacheSize(long size) {
+        getPackManifestsCache().setMaxSize(size);
+    }
+
+    /**
+     * Verified fulltexts of file representations, keyed by repository namespace,
+     * checksum and expanded size of the representation.
+     */
+    public static synchronized FSCache<String, byte[]> getFulltextsCache() {
+        if (ourFulltextsCache == null) {
+            ourFulltextsCache = new FSCache<String, byte[]>("fulltexts",
+                    getSizeProperty(FULLTEXTS_CACHE_SIZE_PROPERTY, DEFAULT_FULLTEXTS_CACHE_SIZE));
+        }
+        return ourFulltextsCache;
+    }
+
+    public static void setFulltextsCacheSize(long size) {
+        getFulltextsCache().setMaxSize(size);
+    }
+
+    /**
+     * Fulltexts larger than this size are never cached.
+     */
+    public static synchronized long getFulltextsMaxItemSize() {
+        return ourFulltextsMaxItemSize;
+    }
+
+    public static synchronized void setFulltextsMaxItemSize(long size) {
+        ourFulltextsMaxItemSize = size;
+    }
+
+    /**
+     * Decoded L2P index headers and pages of log-addressed revision and pack files,
+     * keyed by the first revision of the file and the offset of the page within the index
+     * (headers use -1).
+     */
+    public static synchronized FSCache<FSCacheKey, long[]> getL2PIndexCache() {
+        if (ourL2PIndexCache == null) {
+            ourL2PIndexCache = new FSCache<FSCacheKey, long[]>("l2p-index",
+                    getSizeProperty(L2P_INDEX_CACHE_SIZE_PROPERTY, DEFAULT_L2P_INDEX_CACHE_SIZE));
+        }
+        return ourL2PIndexCache;
+    }
+
+    public static void setL2PIndexCacheSize(long size) {
+        getL2PIndexCache().setMaxSize(size);
+    }
+
+    /**
+     * Decoded P2L index headers and pages, keyed the same way as L2P ones.
+     */
+    public static synchronized FSCache<FSCacheKey, long[]> getP2LIndexCache() {
+        if (ourP2LIndexCache == null) {
+            ourP2LIndexCache = new FSCache<FSCacheKey, long[]>("p2l-index",
+                    getSizeProperty(P2L_INDEX_CACHE_SIZE_PROPERTY, DEFAULT_P2L_INDEX_CACHE_SIZE));
+        }
+        return ourP2LIndexCache;
+    }
+
+    public static void setP2LIndexCacheSize(long size) {
+        getP2LIndexCache().setMaxSize(size);
+    }
+
+    /**
+     * Properties of packed revisions, keyed by revision and the revprop generation
+     * they were read at.
+     */
+    public static synchronized FSCache<FSCacheKey, SVNProperties> getRevisionPropertiesCache() {
+        if (ourRevisionPropertiesCache == null) {
+            ourRevisionPropertiesCache = new FSCache<FSCacheKey, SVNProperties>("revision-properties",
+                    getSizeProperty(REVISION_PROPERTIES_CACHE_SIZE_PROPERTY, DEFAULT_REVISION_PROPERTIES_CACHE_SIZE));
+        }
+        return ourRevisionPropertiesCache;
+    }
+
+    public static void setRevisionPropertiesCacheSize(long size) {
+        getRevisionPropertiesCache().setMaxSize(size);
+    }
+
+    /**
+     * Decompressed packed revprops files, keyed by repository namespace, revprop
+     * generation and pack file name.
+     */
+    public static synchronized FSCache<String, SVNFSFSPackedRevProps> getRevPropPacksCache() {
+        if (ourRevPropPacksCache == null) {
+            ourRevPropPacksCache = new FSCache<String, SVNFSFSPackedRevProps>("revprop-packs",
+                    getSizeProperty(REVPROP_PACKS_CACHE_SIZE_PROPERTY, DEFAULT_REVPROP_PACKS_CACHE_SIZE));
+        }
+        return ourRevPropPacksCache;
+    }
+
+    public static void setRevPropPacksCacheSize(long size) {
+        getRevPropPacksCache().setMaxSize(size);
+    }
+
+    /**
+     * Folded changed paths of committed revisions, keyed by revision.
+     */
+    public static synchronized FSCache<FSCacheKey, FSPathChange[]> getChangedPathsCache() {
+        if (ourChangedPathsCache == null) {
+            ourChangedPathsCache = new FSCache<FSCacheKey, FSPathChange[]>("changed-paths",
+                    getSizeProperty(CHANGED_PATHS_CACHE_SIZE_PROPERTY, DEFAULT_CHANGED_PATHS_CACHE_SIZE));
+        }
+        return ourChangedPathsCache;
+    }
+
+    public static void setChangedPathsCacheSize(long size) {
+        getChangedPathsCache().setMaxSize(size);
+    }
+
+    /**
+     * Parsed <code>svn:mergeinfo</code> property values, keyed by the value itself.
+     */
+    public static synchronized FSCache<String, Map<String, SVNMergeRangeList>> getMergeInfoCache() {
+        if (ourMergeInfoCache == null) {
+            ourMergeInfoCache = new FSCache<String, Map<String, SVNMergeRangeList>>("mergeinfo",
+                    getSizeProperty(MERGE_INFO_CACHE_SIZE_PROPERTY, DEFAULT_MERGE_INFO_CACHE_SIZE));
+        }
+        return ourMergeInfoCache;
+    }
+
+    public static void setMergeInfoCacheSize(long size) {
+        getMergeInfoCache().setMaxSize(size);
+    }
+
+    public static synchronized void clearAll() {
+        if (ourNodeRevisionsCache != null) {
+            ourNodeRevisionsCache.clear();
+        }
+        if (ourDirContentsCache != null) {
+            ourDirContentsCache.clear();
+        }
+        if (ourPackManifestsCache != null) {
+            ourPackManifestsCache.clear();
+        }
+        if (ourL2PIndexCache != null) {
+            ourL2PIndexCache.clear();
+        }
+        if (ourFulltextsCache != null) {
+            ourFulltextsCache.clear();
+        }
+        if (ourP2LIndexCache != null) {
+            ourP2LIndexCache.clear();
+        }
+        if (ourRevisionPropertiesCache != null) {
+            ourRevisionPropertiesCache.clear();
+        }
+        if (ourRevPropPacksCache != null) {
+            ourRevPropPacksCache.clear();
+        }
+        if (ourChangedPathsCache != null) {
+            ourChangedPathsCache.clear();
+        }
+        if (ourMergeInfoCache != null) {
+            ourMergeInfoCache.clear();
+        }
+    }
+
+    private static long getSizeProperty(String name, long defaultValue) {
+        final String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
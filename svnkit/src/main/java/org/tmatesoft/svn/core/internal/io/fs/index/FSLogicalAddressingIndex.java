@@ -6,11 +6,13 @@ import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.FSID;
-import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNLogType;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -21,8 +23,12 @@ public class FSLogicalAddressingIndex {
     public static final String L2P_STREAM_PREFIX = "L2P-INDEX\n";
     public static final String P2L_STREAM_PREFIX = "P2L-INDEX\n";
 
+    private static final long HEADER_CACHE_INDEX = -1;
+    private static final int P2L_ENTRY_FIELDS_COUNT = 6;
+
     private FSFile myFile;
     private long startRevision;
+    private String cacheNamespace;
     private FSFS fsfs;
 
     public FSLogicalAddressingIndex(FSFS fsfs, FSFile myFile) {
@@ -33,33 +39,33 @@ public class FSLogicalAddressingIndex {
 
     public long getStartRevision(long revision) {
         if (startRevision == -1) {
-            this.startRevision = (fsfs.isPackedRevision(revision)) ?
+            this.startRevision = isPackFile(revision) ?
                     (revision - (revision % fsfs.getMaxFilesPerDirectory())) : revision;
         }
         return startRevision;
     }
 
-    public long getOffsetByItemIndex(long revision, long itemIndex) throws SVNException {
-        L2PPageInfo pageInfo = getL2PPageInfo(revision, itemIndex);
-        //TODO: cache the result
-
-        final boolean isPackedRevision = fsfs.isPackedRevision(revision);
-        final boolean isCached = false;
-        long offset;
-        if (!isCached) {
-            final long lastRevision = pageInfo.getFirstRevision() + (isPackedRevision ? fsfs.getMaxFilesPerDirectory() : 1);
-            final PageTableEntry entry = pageInfo.getEntry();
-//            final long maxOffset = align(entry.offset + entry.size, fsfs.getBlockSize());
-//            final long minOffset = maxOffset - fsfs.getBlockSize();
-
-            final Page page = getL2PPage(entry);
-            //TODO: cache!
-            offset = getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
-        } else {
-            //TODO: set this to the cached value
-            offset = -1;
+    public FSCacheKey createCacheKey(long revision, long index) throws SVNException {
+        if (cacheNamespace == null) {
+            // the pack file of a shard and the rev file of its first revision share the start revision.
+            cacheNamespace = fsfs.getCacheNamespace() + (isPackFile(revision) ? ":pack" : ":rev");
+        }
+        return new FSCacheKey(cacheNamespace, getStartRevision(revision), index);
+    }
+
+    private boolean isPackFile(long revision) {
+        // the file may have been opened before the shard was packed, so look at the file itself.
+        final File file = myFile.getFile();
+        if (file != null) {
+            return FSFS.PACK_KIND_PACK.equals(file.getName());
         }
-        return offset;
+        return fsfs.isPackedRevision(revision);
+    }
+
+    public long getOffsetByItemIndex(long revision, long itemIndex) throws SVNException {
+        final L2PPageInfo pageInfo = getL2PPageInfo(revision, itemIndex);
+        final long[] page = getL2PPage(revision, pageInfo.getEntry());
+        return getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
     }
 
     public long getItemIndexByOffset(long offset) {
@@ -67,39 +73,11 @@ public class FSLogicalAddressingIndex {
     }
 
     public List<FSP2LEntry> lookupP2LEntries(long revision, long blockStart, long blockEnd) throws SVNException {
-        final boolean isCached = false;
-
         List<FSP2LEntry> entries = new ArrayList<FSP2LEntry>();
         P2LPageInfo pageInfo = getP2LKeys(revision, blockStart);
 
-        if (!isCached) {
-            long originalPageStart = pageInfo.getPageStart();
-            int leakingBucket = 4;
-            P2LPageInfo prefetchInfo = pageInfo;
-
-            long maxOffset = FSRepositoryUtil.align(pageInfo.getNextOffset(), fsfs.getBlockSize());
-            long minOffset = FSRepositoryUtil.align(pageInfo.getStartOffset(), fsfs.getBlockSize()) - fsfs.getBlockSize();
-
-            //TODO: block read?
-
-            final List<FSP2LEntry> pageEntries = getP2LPage(
-                    pageInfo.getFirstRevision(),
-                    pageInfo.getStartOffset(),
-                    pageInfo.getNextOffset(),
-                    pageInfo.getPageStart(),
-                    pageInfo.getPageSize());
-            if (pageEntries.size() > 0) {
-                FSP2LEntry entry = pageEntries.get(pageEntries.size() - 1);
-                if (entry.getOffset() + entry.getSize() > pageInfo.getPageSize() * pageInfo.getPageCount()) {
-                    SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Last P2L index entry extends beyond the last page in revision {0}", new Long(revision));
-                    SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
-                }
-            }
-            //cache_set()
-            appendP2LEntries(entries, pageEntries, blockStart, blockEnd);
-            //TODO: block read again?
-
-        }
+        final long[] page = getP2LPage(revision, pageInfo);
+        appendP2LEntries(entries, page, blockStart, blockEnd);
 
         assert entries.size() > 0;
 
@@ -131,29 +109,22 @@ public class FSLogicalAddressingIndex {
     }
 
     private P2LPageInfo getP2LPageInfo(long revision, long offset) throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
-        }
-        final P2LIndexHeader header = getP2LHeader();
+        final P2LIndexHeader header = getP2LHeader(revision);
         return createPageInfo(header, revision, offset);
     }
 
-    private P2LIndexHeader getP2LHeader() throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
+    private P2LIndexHeader getP2LHeader(long revision) throws SVNException {
+        final FSCacheKey cacheKey = createCacheKey(revision, HEADER_CACHE_INDEX);
+        final long[] cachedData = FSCacheManager.getP2LIndexCache().get(cacheKey);
+        if (cachedData != null) {
+            return new P2LIndexHeader(cachedData);
         }
 
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(0);
 
         final long firstRevision = packedNumbersStream.read();
-        if (firstRevision != startRevision) {
+        if (firstRevision != getStartRevision(revision)) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "Index rev / pack file revision numbers do not match");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
@@ -189,9 +160,8 @@ public class FSLogicalAddressingIndex {
             offsets[i] += offset;
         }
 
-        //TODO: save to cache here
-
-        final P2LIndexHeader p2LIndexHeader = new P2LIndexHeader(firstRevision, pageSize, pageCount, fileSize, offsets);
+        final P2LIndexHeader p2LIndexHeader = P2LIndexHeader.create(firstRevision, pageSize, pageCount, fileSize, offsets);
+        FSCacheManager.getP2LIndexCache().put(cacheKey, p2LIndexHeader.getData(), getCachedSize(p2LIndexHeader.getData()));
         return p2LIndexHeader;
     }
 
@@ -199,13 +169,13 @@ public class FSLogicalAddressingIndex {
         final P2LPageInfo pageInfo = new P2LPageInfo();
         if (offset / header.getPageSize() < header.getPageCount()) {
             pageInfo.setPageNumber(offset / header.getPageSize());
-            pageInfo.setStartOffset(header.getOffsets()[((int) pageInfo.getPageNumber())]);
-            pageInfo.setNextOffset(header.getOffsets()[((int) (pageInfo.getPageNumber() + 1))]);
+            pageInfo.setStartOffset(header.getOffset((int) pageInfo.getPageNumber()));
+            pageInfo.setNextOffset(header.getOffset((int) (pageInfo.getPageNumber() + 1)));
             pageInfo.setPageSize(header.getPageSize());
         } else {
             pageInfo.setPageNumber(header.getPageCount());
-            pageInfo.setStartOffset(header.getOffsets()[((int) pageInfo.getPageNumber())]);
-            pageInfo.setNextOffset(header.getOffsets()[((int) pageInfo.getPageNumber())]);
+            pageInfo.setStartOffset(header.getOffset((int) pageInfo.getPageNumber()));
+            pageInfo.setNextOffset(header.getOffset((int) pageInfo.getPageNumber()));
             pageInfo.setPageSize(0);
         }
         pageInfo.setFirstRevision(header.getFirstRevision());
@@ -214,26 +184,42 @@ public class FSLogicalAddressingIndex {
         return pageInfo;
     }
 
-    private void appendP2LEntries(List<FSP2LEntry> entries, List<FSP2LEntry> pageEntries, long blockStart, long blockEnd) {
-        FSP2LEntry entry;
-        int idx = searchLowerBound(pageEntries, blockStart);
+    private void appendP2LEntries(List<FSP2LEntry> entries, long[] page, long blockStart, long blockEnd) {
+        final int count = page.length / P2L_ENTRY_FIELDS_COUNT;
+        int idx = searchLowerBound(page, blockStart);
 
         if (idx > 0) {
-            entry = pageEntries.get(idx - 1);
-            if (entry.getOffset() + entry.getSize() > blockStart) {
+            final int base = (idx - 1) * P2L_ENTRY_FIELDS_COUNT;
+            if (page[base] + page[base + 1] > blockStart) {
                 idx--;
             }
         }
 
-        for (; idx < pageEntries.size(); idx++) {
-            entry = pageEntries.get(idx);
-            if (entry.getOffset() >= blockEnd) {
+        for (; idx < count; idx++) {
+            final int base = idx * P2L_ENTRY_FIELDS_COUNT;
+            if (page[base] >= blockEnd) {
                 break;
             }
-            entries.add(entry);
+            entries.add(new FSP2LEntry(page[base], page[base + 1], FSP2LProtoIndex.ItemType.fromCode((int) page[base + 2]),
+                    (int) page[base + 3], page[base + 4], page[base + 5]));
         }
     }
 
+    private static int searchLowerBound(long[] page, long offset) {
+        int lower = 0;
+        int upper = page.length / P2L_ENTRY_FIELDS_COUNT - 1;
+
+        while (lower <= upper) {
+            int attempt = lower + (upper - lower) / 2;
+            if (page[attempt * P2L_ENTRY_FIELDS_COUNT] < offset) {
+                lower = attempt + 1;
+            } else {
+                upper = attempt - 1;
+            }
+        }
+        return lower;
+    }
+
     public static int searchLowerBound(List<FSP2LEntry> list, long key) {
         int lower = 0;
         int upper = list.size() - 1;
@@ -257,7 +243,43 @@ public class FSLogicalAddressingIndex {
         return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
     }
 
-    private List<FSP2LEntry> getP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
+    private long[] getP2LPage(long revision, P2LPageInfo pageInfo) throws SVNException {
+        final FSCacheKey cacheKey = createCacheKey(revision, pageInfo.getStartOffset());
+        long[] page = FSCacheManager.getP2LIndexCache().get(cacheKey);
+        if (page != null) {
+            return page;
+        }
+
+        final List<FSP2LEntry> pageEntries = readP2LPage(
+                pageInfo.getFirstRevision(),
+                pageInfo.getStartOffset(),
+                pageInfo.getNextOffset(),
+                pageInfo.getPageStart(),
+                pageInfo.getPageSize());
+        if (pageEntries.size() > 0) {
+            FSP2LEntry entry = pageEntries.get(pageEntries.size() - 1);
+            if (entry.getOffset() + entry.getSize() > pageInfo.getPageSize() * pageInfo.getPageCount()) {
+                SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Last P2L index entry extends beyond the last page in revision {0}", new Long(revision));
+                SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+            }
+        }
+
+        page = new long[pageEntries.size() * P2L_ENTRY_FIELDS_COUNT];
+        for (int i = 0; i < pageEntries.size(); i++) {
+            final FSP2LEntry entry = pageEntries.get(i);
+            final int base = i * P2L_ENTRY_FIELDS_COUNT;
+            page[base] = entry.getOffset();
+            page[base + 1] = entry.getSize();
+            page[base + 2] = entry.getType().getCode();
+            page[base + 3] = entry.getChecksum();
+            page[base + 4] = entry.getRevision();
+            page[base + 5] = entry.getNumber();
+        }
+        FSCacheManager.getP2LIndexCache().put(cacheKey, page, getCachedSize(page));
+        return page;
+    }
+
+    private List<FSP2LEntry> readP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
         final List<FSP2LEntry> result = new ArrayList<FSP2LEntry>();
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(startOffset);
@@ -326,16 +348,21 @@ public class FSLogicalAddressingIndex {
         itemOffset[0] += entry.getSize();
     }
 
-    private long getL2PPageEntry(Page page, long pageOffset, long itemIndex, long revision) throws SVNException {
-        if (page.getEntryCount() <= pageOffset) {
+    private long getL2PPageEntry(long[] page, long pageOffset, long itemIndex, long revision) throws SVNException {
+        if (page.length <= pageOffset) {
             final SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Item index {0}" + " too large in revision {1}", itemIndex, revision);
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        final long[] offsets = page.getOffsets();
-        return offsets[((int) pageOffset)];
+        return page[((int) pageOffset)];
     }
 
-    private Page getL2PPage(PageTableEntry tableEntry) throws SVNException {
+    private long[] getL2PPage(long revision, PageTableEntry tableEntry) throws SVNException {
+        final FSCacheKey cacheKey = createCacheKey(revision, tableEntry.offset);
+        final long[] cachedOffsets = FSCacheManager.getL2PIndexCache().get(cacheKey);
+        if (cachedOffsets != null) {
+            return cachedOffsets;
+        }
+
         final long entryCount = tableEntry.entryCount;
         long lastValue = 0;
         final long[] offsets = new long[(int) entryCount];
@@ -352,12 +379,20 @@ public class FSLogicalAddressingIndex {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "L2P actual page size does not match page table value");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        return new Page(entryCount, offsets);
+        FSCacheManager.getL2PIndexCache().put(cacheKey, offsets, getCachedSize(offsets));
+        return offsets;
     }
 
     private L2PPageInfo getL2PPageInfo(long revision, long itemIndex) throws SVNException {
-        //TODO: cache the result
-        final L2PIndexHeader header = getL2PHeaderBody(revision);
+        final FSCacheKey cacheKey = createCacheKey(revision, HEADER_CACHE_INDEX);
+        final long[] cachedData = FSCacheManager.getL2PIndexCache().get(cacheKey);
+        final L2PIndexHeader header;
+        if (cachedData != null) {
+            header = new L2PIndexHeader(cachedData);
+        } else {
+            header = getL2PHeaderBody(revision);
+            FSCacheManager.getL2PIndexCache().put(cacheKey, header.getData(), getCachedSize(header.getData()));
+        }
         return createPageInfo(header, revision, itemIndex);
     }
 
@@ -367,9 +402,6 @@ public class FSLogicalAddressingIndex {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_REVISION, "Revision %ld not covered by item index", revision);
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        final PageTableEntry[] pageTable = header.getPageTable();
-        final long[] pageTableIndex = header.getPageTableIndex();
-
         L2PPageInfo pageInfo = new L2PPageInfo();
         pageInfo.setRevision(revision);
         pageInfo.setItemIndex(itemIndex);
@@ -378,9 +410,9 @@ public class FSLogicalAddressingIndex {
         if (itemIndex < header.getPageSize()) {
             pageInfo.setPageOffset((int) itemIndex);
             pageInfo.setPageNumber(0);
-            pageInfo.setEntry(pageTable[((int) pageTableIndex[((int) relativeRevision)])]);
+            pageInfo.setEntry(header.getPageTableEntry((int) header.getPageTableIndex((int) relativeRevision)));
         } else {
-            long maxItemIndex = header.getPageSize()*(pageTableIndex[((int) (relativeRevision + 1))] - pageTableIndex[((int) relativeRevision)]);
+            long maxItemIndex = header.getPageSize()*(header.getPageTableIndex((int) (relativeRevision + 1)) - header.getPageTableIndex((int) relativeRevision));
 
             if (itemIndex >= maxItemIndex) {
                 SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Item index {0} exceeds l2p limit " +
@@ -390,7 +422,7 @@ public class FSLogicalAddressingIndex {
 
             pageInfo.setPageOffset((int) (itemIndex % header.getPageSize()));
             pageInfo.setPageNumber((int) (itemIndex / header.getPageSize()));
-            pageInfo.setEntry(pageTable[((int) (pageTableIndex[((int) relativeRevision)] + pageInfo.getPageNumber()))]);
+            pageInfo.setEntry(header.getPageTableEntry((int) (header.getPageTableIndex((int) relativeRevision) + pageInfo.getPageNumber())));
         }
         return pageInfo;
     }
@@ -483,10 +515,14 @@ public class FSLogicalAddressingIndex {
             offset += pageTable[page].size;
         }
 
-        L2PIndexHeader indexHeader = new L2PIndexHeader(firstRevision, revisionCount, pageSize, pageTableIndex, pageTable);
+        L2PIndexHeader indexHeader = L2PIndexHeader.create(firstRevision, revisionCount, pageSize, pageTableIndex, pageTable);
         return indexHeader;
     }
 
+    private static long getCachedSize(long[] data) {
+        return 16 + 8 * (long) data.length;
+    }
+
     private FSPackedNumbersStream autoOpenP2LIndex() throws SVNException {
         myFile.ensureFooterLoaded();
         FSPackedNumbersStream packedNumbersStream = packedStreamOpen(P2L_STREAM_PREFIX);
@@ -524,38 +560,57 @@ public class FSLogicalAddressingIndex {
     }
 
     private static class L2PIndexHeader {
-        private long firstRevision;
-        private long revisionCount;
-        private long pageSize;
-        private long[] pageTableIndex;
-        private PageTableEntry[] pageTable;
-
-        public L2PIndexHeader(long firstRevision, long revisionCount, long pageSize, long[] pageTableIndex, PageTableEntry[] pageTable) {
-            this.firstRevision = firstRevision;
-            this.revisionCount = revisionCount;
-            this.pageSize = pageSize;
-            this.pageTableIndex = pageTableIndex;
-            this.pageTable = pageTable;
+        // first revision, revision count, page size, page count, page table index
+        // (revision count + 1 values) followed by offset, entry count and size of every page
+        private final long[] data;
+
+        public L2PIndexHeader(long[] data) {
+            this.data = data;
+        }
+
+        public static L2PIndexHeader create(long firstRevision, long revisionCount, long pageSize, long[] pageTableIndex, PageTableEntry[] pageTable) {
+            final long[] data = new long[4 + pageTableIndex.length + 3 * pageTable.length];
+            data[0] = firstRevision;
+            data[1] = revisionCount;
+            data[2] = pageSize;
+            data[3] = pageTable.length;
+            System.arraycopy(pageTableIndex, 0, data, 4, pageTableIndex.length);
+            int base = 4 + pageTableIndex.length;
+            for (int i = 0; i < pageTable.length; i++, base += 3) {
+                data[base] = pageTable[i].offset;
+                data[base + 1] = pageTable[i].entryCount;
+                data[base + 2] = pageTable[i].size;
+            }
+            return new L2PIndexHeader(data);
         }
 
         public long getFirstRevision() {
-            return firstRevision;
+            return data[0];
         }
 
         public long getRevisionCount() {
-            return revisionCount;
+            return data[1];
         }
 
         public long getPageSize() {
-            return pageSize;
+            return data[2];
+        }
+
+        public long getPageTableIndex(int relativeRevision) {
+            return data[4 + relativeRevision];
         }
 
-        public long[] getPageTableIndex() {
-            return pageTableIndex;
+        public PageTableEntry getPageTableEntry(int page) {
+            final int base = 4 + (int) getRevisionCount() + 1 + 3 * page;
+            final PageTableEntry entry = new PageTableEntry();
+            entry.offset = data[base];
+            entry.entryCount = data[base + 1];
+            entry.size = data[base + 2];
+            return entry;
         }
 
-        public PageTableEntry[] getPageTable() {
-            return pageTable;
+        public long[] getData() {
+            return data;
         }
     }
 
@@ -707,57 +762,45 @@ public class FSLogicalAddressingIndex {
     }
 
     private static class P2LIndexHeader {
-        private long firstRevision;
-        private long pageSize;
-        private long pageCount;
-        private long fileSize;
-        private long[] offsets;
+        // first revision, page size, page count, file size followed by page count + 1 offsets
+        private final long[] data;
 
-        public P2LIndexHeader(long firstRevision, long pageSize, long pageCount, long fileSize, long[] offsets) {
-            this.firstRevision = firstRevision;
-            this.pageSize = pageSize;
-            this.pageCount = pageCount;
-            this.fileSize = fileSize;
-            this.offsets = offsets;
+        public P2LIndexHeader(long[] data) {
+            this.data = data;
+        }
+
+        public static P2LIndexHeader create(long firstRevision, long pageSize, long pageCount, long fileSize, long[] offsets) {
+            final long[] data = new long[4 + offsets.length];
+            data[0] = firstRevision;
+            data[1] = pageSize;
+            data[2] = pageCount;
+            data[3] = fileSize;
+            System.arraycopy(offsets, 0, data, 4, offsets.length);
+            return new P2LIndexHeader(data);
         }
 
         public long getFirstRevision() {
-            return firstRevision;
+            return data[0];
         }
 
         public long getPageSize() {
-            return pageSize;
+            return data[1];
         }
 
         public long getPageCount() {
-            return pageCount;
+            return data[2];
         }
 
         public long getFileSize() {
-            return fileSize;
-        }
-
-        public long[] getOffsets() {
-            return offsets;
-        }
-    }
-
-    private static class Page {
-
-        long entryCount;
-        long[] offsets;
-
-        public Page(long entryCount, long[] offsets) {
-            this.entryCount = entryCount;
-            this.offsets = offsets;
+            return data[3];
         }
 
-        public long getEntryCount() {
-            return entryCount;
+        public long getOffset(int page) {
+            return data[4 + page];
         }
 
-        public long[] getOffsets() {
-            return offsets;
+        public long[] getData() {
+            return data;
         }
     }
 }
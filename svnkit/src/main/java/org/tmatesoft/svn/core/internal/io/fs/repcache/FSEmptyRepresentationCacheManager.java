@@ -11,6 +11,8 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
+import java.util.Collection;
+
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
@@ -46,6 +48,9 @@ public class FSEmptyRepresentationCacheManager implements IFSRepresentationCache
     public void insert(FSRepresentation representation, boolean rejectDup) throws SVNException {
     }
 
+    public void insert(Collection<FSRepresentation> representations) throws SVNException {
+    }
+
     /**
      * @param transaction
      * @throws SVNException
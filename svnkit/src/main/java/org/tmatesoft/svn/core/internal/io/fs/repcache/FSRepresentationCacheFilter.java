@@ -0,0 +1,262 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.repcache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * In-memory summary of the <code>rep_cache</code> table of a repository: a bloom filter
+ * of all hashes in the table, which tells for sure that a hash is not there, and a small
+ * LRU of recently looked up or inserted rows. There is one filter per repository, shared by
+ * all FSFS instances.
+ *
+ * <p/>
+ * The filter is only trusted while the file change counter in the header of
+ * <code>rep-cache.db</code> matches the one the filter was brought up to date with. Writes
+ * made through SVNKit keep it up to date, after writes made by other processes rows
+ * appended to the table since the filter was updated are added to it on the next lookup.
+ *
+ * <p/>
+ * The filter is enabled by default and may be disabled with the
+ * <code>svnkit.fsfs.repcache.filter</code> system property.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheFilter {
+
+    public static final String FILTER_PROPERTY = "svnkit.fsfs.repcache.filter";
+
+    private static final int RECENT_RECORDS_COUNT = 1024;
+    private static final int MIN_CAPACITY = 1024;
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASH_FUNCTIONS = 7;
+    private static final int MAX_BITS = 1 << 28;
+
+    private static boolean ourIsEnabled = Boolean.valueOf(System.getProperty(FILTER_PROPERTY, "true")).booleanValue();
+
+    private static final Map<File, FSRepresentationCacheFilter> ourFilters = new HashMap<File, FSRepresentationCacheFilter>();
+
+    private final File myFile;
+    private final Map<String, FSRepresentationCacheRecord> myRecentRecords;
+    private long[] myBits;
+    private int myBitsMask;
+    private int myCapacity;
+    private int myCount;
+    private long myLastRowId;
+    private long myChangeCounter;
+
+    private FSRepresentationCacheFilter(File file) {
+        myFile = file;
+        myRecentRecords = new LinkedHashMap<String, FSRepresentationCacheRecord>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, FSRepresentationCacheRecord> eldest) {
+                return size() > RECENT_RECORDS_COUNT;
+            }
+        };
+        myChangeCounter = -1;
+    }
+
+    public static FSRepresentationCacheFilter getFilter(File repCacheFile) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final File file = repCacheFile.getAbsoluteFile();
+        synchronized (ourFilters) {
+            FSRepresentationCacheFilter filter = ourFilters.get(file);
+            if (filter == null) {
+                filter = new FSRepresentationCacheFilter(file);
+                ourFilters.put(file, filter);
+            }
+            return filter;
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    /**
+     * Tells whether the filter reflects the current contents of the table, reads the
+     * header of the database file.
+     */
+    public synchronized boolean isCurrent() {
+        return myBits != null && myChangeCounter >= 0 && myChangeCounter == readChangeCounter();
+    }
+
+    public synchronized FSRepresentationCacheRecord getRecentRecord(String hash) {
+        return myRecentRecords.get(hash);
+    }
+
+    /**
+     * Returns <span class="javakeyword">false</span> when <code>hash</code> is certainly not in
+     * the table, as of the last update of the filter.
+     */
+    public synchronized boolean mightContain(String hash) {
+        if (myBits == null) {
+            return true;
+        }
+        int h1 = parseHex(hash, 0);
+        int h2 = parseHex(hash, 8) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = (h1 + i * h2) & myBitsMask;
+            if ((myBits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void addRecentRecord(FSRepresentationCacheRecord record) {
+        myRecentRecords.put(record.getHash(), record);
+    }
+
+    /**
+     * Adds a row inserted into the table through SVNKit.
+     */
+    public synchronized void add(FSRepresentationCacheRecord record, long rowId) {
+        addHash(record.getHash());
+        myRecentRecords.put(record.getHash(), record);
+        if (rowId > myLastRowId) {
+            myLastRowId = rowId;
+        }
+    }
+
+    /**
+     * Brings the filter up to date with the table, has to be called within a transaction.
+     */
+    public synchronized void update(ISqlJetTable table) throws SqlJetException {
+        long changeCounter = readChangeCounter();
+        if (myBits != null && changeCounter >= 0 && changeCounter == myChangeCounter) {
+            return;
+        }
+        // rows are never updated, but might be deleted when a repository is rolled back.
+        myRecentRecords.clear();
+        if (myBits == null || myCount > myCapacity || !addNewRows(table)) {
+            rebuild(table);
+        }
+        myChangeCounter = changeCounter;
+    }
+
+    /**
+     * Returns the change counter of the database file, to be passed to {@link #written(long)}
+     * once a write transaction is committed. Has to be called within that transaction.
+     */
+    public synchronized long beforeWrite() {
+        long changeCounter = readChangeCounter();
+        return myBits != null && changeCounter >= 0 && changeCounter == myChangeCounter ? changeCounter : -1;
+    }
+
+    /**
+     * Marks the filter up to date after a write transaction, unless rows might have been
+     * written by someone else meanwhile.
+     */
+    public synchronized void written(long changeCounterBeforeWrite) {
+        long changeCounter = readChangeCounter();
+        if (changeCounterBeforeWrite >= 0 && (changeCounter == changeCounterBeforeWrite || changeCounter == changeCounterBeforeWrite + 1)) {
+            myChangeCounter = changeCounter;
+        } else {
+            myChangeCounter = -1;
+        }
+    }
+
+    private boolean addNewRows(ISqlJetTable table) throws SqlJetException {
+        ISqlJetCursor cursor = table.open();
+        try {
+            if (myLastRowId > 0) {
+                if (!cursor.goTo(myLastRowId)) {
+                    return false;
+                }
+                cursor.next();
+            }
+            for (; !cursor.eof(); cursor.next()) {
+                addHash(cursor.getString(FSRepresentationCacheRecord.HASH_FIELD));
+                myLastRowId = cursor.getRowId();
+            }
+        } finally {
+            cursor.close();
+        }
+        return true;
+    }
+
+    private void rebuild(ISqlJetTable table) throws SqlJetException {
+        ISqlJetCursor cursor = table.open();
+        try {
+            long rowsCount = cursor.getRowCount();
+            myCapacity = (int) Math.min(Integer.MAX_VALUE / BITS_PER_ENTRY, Math.max(MIN_CAPACITY, rowsCount * 2));
+            int bitsCount = 64;
+            while (bitsCount < myCapacity * BITS_PER_ENTRY && bitsCount < MAX_BITS) {
+                bitsCount <<= 1;
+            }
+            myBits = new long[bitsCount >>> 6];
+            myBitsMask = bitsCount - 1;
+            myCount = 0;
+            myLastRowId = 0;
+        } finally {
+            cursor.close();
+        }
+        addNewRows(table);
+    }
+
+    private void addHash(String hash) {
+        if (myBits == null) {
+            return;
+        }
+        int h1 = parseHex(hash, 0);
+        int h2 = parseHex(hash, 8) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int bit = (h1 + i * h2) & myBitsMask;
+            myBits[bit >>> 6] |= 1L << bit;
+        }
+        myCount++;
+    }
+
+    private static int parseHex(String hash, int offset) {
+        // hashes are hex SHA-1 digests, which are uniformly distributed already.
+        int value = 0;
+        for (int i = offset; i < offset + 8 && i < hash.length(); i++) {
+            int digit = Character.digit(hash.charAt(i), 16);
+            value = (value << 4) | (digit < 0 ? hash.charAt(i) & 0xF : digit);
+        }
+        return value;
+    }
+
+    private long readChangeCounter() {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myFile, "r");
+            if (file.length() < 28) {
+                return -1;
+            }
+            // file change counter of the SQLite database header.
+            file.seek(24);
+            return file.readInt() & 0xFFFFFFFFL;
+        } catch (IOException e) {
+            return -1;
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+}
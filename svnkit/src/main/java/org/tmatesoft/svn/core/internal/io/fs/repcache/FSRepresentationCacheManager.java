@@ -12,10 +12,16 @@
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
 import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
 import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
 import org.tmatesoft.sqljet.core.table.ISqlJetTable;
@@ -24,6 +30,7 @@ import org.tmatesoft.sqljet.core.table.SqlJetDb;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSDurability;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
@@ -50,15 +57,17 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
     private FSFS myFSFS;
+    private FSRepresentationCacheFilter myFilter;
     
     public static IFSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
         final FSRepresentationCacheManager cacheObj = new FSRepresentationCacheManager();
         try {
             cacheObj.myRepCacheDB = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
-            cacheObj.myRepCacheDB.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            cacheObj.myRepCacheDB.setSafetyLevel(getSafetyLevel(fsfs.getDurability()));
             
             checkFormat(cacheObj.myRepCacheDB);
             cacheObj.myTable = cacheObj.myRepCacheDB.getTable(REP_CACHE_TABLE);
+            cacheObj.myFilter = FSRepresentationCacheFilter.getFilter(fsfs.getRepositoryCacheFile());
         } catch (SqlJetException e) {
             SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
             return new FSEmptyRepresentationCacheManager();
@@ -67,6 +76,15 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         return cacheObj;
     }
     
+    private static SqlJetSafetyLevel getSafetyLevel(FSDurability durability) {
+        if (durability == FSDurability.DIRECTORY) {
+            return SqlJetSafetyLevel.FULL;
+        } else if (durability == FSDurability.DATA) {
+            return SqlJetSafetyLevel.NORMAL;
+        }
+        return SqlJetSafetyLevel.OFF;
+    }
+
     public static void createRepresentationCache(File path) throws SVNException {
         SqlJetDb db = null;
         try {
@@ -128,14 +146,58 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         }
         
         try {
-            myTable.insert(new Object[] { representation.getSHA1HexDigest(), new Long(representation.getRevision()),
-                    new Long(representation.getItemIndex()), new Long(representation.getSize()),
-                    new Long(representation.getExpandedSize()) });
+            insertRecord(createRecord(representation), false);
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
     }
 
+    /**
+     * Inserts representations in a single write transaction, skipping those which are in
+     * the table already. Rows are inserted in the order of their keys.
+     */
+    public void insert(Collection<FSRepresentation> representations) throws SVNException {
+        final List<FSRepresentationCacheRecord> records = new ArrayList<FSRepresentationCacheRecord>(representations.size());
+        for (FSRepresentation representation : representations) {
+            if (representation.getSHA1HexDigest() != null) {
+                records.add(createRecord(representation));
+            }
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        Collections.sort(records, new Comparator<FSRepresentationCacheRecord>() {
+            public int compare(FSRepresentationCacheRecord o1, FSRepresentationCacheRecord o2) {
+                return o1.getHash().compareTo(o2.getHash());
+            }
+        });
+        runWriteTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                try {
+                    for (FSRepresentationCacheRecord record : records) {
+                        insertRecord(record, true);
+                    }
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                }
+            }
+        });
+    }
+
+    private void insertRecord(FSRepresentationCacheRecord record, boolean ignoreExisting) throws SqlJetException {
+        Object[] values = new Object[] { record.getHash(), new Long(record.getRevision()), new Long(record.getOffset()),
+                new Long(record.getSize()), new Long(record.getExpandedSize()) };
+        long rowId = ignoreExisting ? myTable.insertOr(SqlJetConflictAction.IGNORE, values) : myTable.insert(values);
+        if (myFilter != null) {
+            myFilter.add(record, rowId);
+        }
+    }
+
+    private static FSRepresentationCacheRecord createRecord(FSRepresentation representation) {
+        return new FSRepresentationCacheRecord(representation.getSHA1HexDigest(), representation.getRevision(),
+                representation.getItemIndex(), representation.getSize(), representation.getExpandedSize());
+    }
+
     public void close() throws SVNException {
         if (myRepCacheDB != null) {
             try {
@@ -146,12 +208,26 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                 myTable = null;
                 myRepCacheDB = null;
                 myFSFS = null;
+                myFilter = null;
             }
         }
     }
     
-    public FSRepresentation getRepresentationByHash(String hash) throws SVNException {
-        FSRepresentationCacheRecord cache = getByHash(hash);
+    /**
+     * Looks up a representation by its SHA-1 checksum. Unless the filter of the repository
+     * is disabled, hashes which are certainly not in the table and recently used ones are
+     * answered without reading the database. May be called outside of a transaction.
+     */
+    public FSRepresentation getRepresentationByHash(final String hash) throws SVNException {
+        FSRepresentationCacheRecord cache = null;
+        if (myFilter != null && myFilter.isCurrent()) {
+            cache = myFilter.getRecentRecord(hash);
+            if (cache == null && myFilter.mightContain(hash)) {
+                cache = lookup(hash);
+            }
+        } else {
+            cache = lookup(hash);
+        }
         if (cache != null) {
             FSRepresentation representation = new FSRepresentation();
             representation.setExpandedSize(cache.getExpandedSize());
@@ -164,6 +240,35 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         return null;
     }
 
+    private FSRepresentationCacheRecord lookup(final String hash) throws SVNException {
+        final FSRepresentationCacheRecord[] record = new FSRepresentationCacheRecord[1];
+        IFSSqlJetTransaction transaction = new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                if (myFilter == null) {
+                    record[0] = getByHash(hash);
+                    return;
+                }
+                try {
+                    myFilter.update(myTable);
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                }
+                if (myFilter.mightContain(hash)) {
+                    record[0] = getByHash(hash);
+                    if (record[0] != null) {
+                        myFilter.addRecentRecord(record[0]);
+                    }
+                }
+            }
+        };
+        if (myRepCacheDB.isInTransaction()) {
+            transaction.run();
+        } else {
+            runReadTransaction(transaction);
+        }
+        return record[0];
+    }
+
     private FSRepresentationCacheRecord getByHash(final String hash) throws SVNException {
         ISqlJetCursor lookup = null;
         try {
@@ -201,16 +306,26 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     public void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
         if (myRepCacheDB != null) {
             try {
-                myRepCacheDB.runWriteTransaction(new ISqlJetTransaction() {
-                    public Object run(SqlJetDb db) throws SqlJetException {
-                        try {
-                            transaction.run();
-                        } catch (SVNException e) {
-                            throw new SqlJetException(e);
+                final long[] changeCounter = new long[] {-1};
+                try {
+                    myRepCacheDB.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            if (myFilter != null) {
+                                changeCounter[0] = myFilter.beforeWrite();
+                            }
+                            try {
+                                transaction.run();
+                            } catch (SVNException e) {
+                                throw new SqlJetException(e);
+                            }
+                            return null;
                         }
-                        return null;
+                    });
+                } finally {
+                    if (myFilter != null) {
+                        myFilter.written(changeCounter[0]);
                     }
-                });
+                }
             } catch (SqlJetException e) {
                 SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
             }
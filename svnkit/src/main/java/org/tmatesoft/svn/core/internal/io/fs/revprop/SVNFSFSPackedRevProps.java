@@ -140,7 +140,7 @@ public class SVNFSFSPackedRevProps {
         return parseProperties(entry.data, entry.offset, entry.length);
     }
 
-    private long getTotalSize() {
+    public long getTotalSize() {
         long totalSize = 0;
         for (Entry entry : entries) {
             totalSize += entry.getSize();
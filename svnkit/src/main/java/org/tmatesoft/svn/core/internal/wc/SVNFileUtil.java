@@ -2352,6 +2352,91 @@ public class SVNFileUtil {
         }
     }
 
+    private static Method java7openFileChannelMethod = null;
+    private static Object java7readOptionParam = null;
+
+    static {
+        final ClassLoader loader = SVNFileUtil.class.getClassLoader();
+        try {
+            final Class<?> pathClazz = loader.loadClass("java.nio.file.Path");
+            final Class<?> openOption = loader.loadClass("java.nio.file.OpenOption");
+            final Class<?> standardOpenOption = loader.loadClass("java.nio.file.StandardOpenOption");
+            java7readOptionParam = Array.newInstance(openOption, 1);
+            Array.set(java7readOptionParam, 0, standardOpenOption.getField("READ").get(null));
+            java7openFileChannelMethod = FileChannel.class.getMethod("open", pathClazz, java7readOptionParam.getClass());
+        } catch (ClassNotFoundException e) {
+            java7openFileChannelMethod = null;
+        } catch (NoSuchMethodException e) {
+            java7openFileChannelMethod = null;
+        } catch (NoSuchFieldException e) {
+            java7openFileChannelMethod = null;
+        } catch (IllegalAccessException e) {
+            java7openFileChannelMethod = null;
+        } catch (SecurityException e) {
+            java7openFileChannelMethod = null;
+        }
+    }
+
+    /**
+     * Forces contents of the file to be written to the storage device.
+     */
+    public static void syncFile(File file) throws SVNException {
+        RandomAccessFile raFile = null;
+        try {
+            raFile = new RandomAccessFile(file, "rw");
+            raFile.getChannel().force(true);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t flush file ''{0}'' to disk: {1}",
+                    new Object[] {file, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, Level.FINE, SVNLogType.DEFAULT);
+        } finally {
+            closeFile(raFile);
+        }
+    }
+
+    /**
+     * Tells whether {@link #syncDirectory(File)} is able to flush directories on this platform.
+     */
+    public static boolean isDirectorySyncSupported() {
+        return java7openFileChannelMethod != null && java7toPathMethod != null && !isWindows;
+    }
+
+    /**
+     * Forces entries of the directory (e.g. files just renamed into it) to be written to the
+     * storage device. Does nothing where directories could not be opened, that is on
+     * Windows and on Java versions prior to 7.
+     */
+    public static void syncDirectory(File directory) throws SVNException {
+        if (!isDirectorySyncSupported()) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            final Object path = java7toPathMethod.invoke(directory);
+            channel = (FileChannel) java7openFileChannelMethod.invoke(null, path, java7readOptionParam);
+            channel.force(true);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t flush directory ''{0}'' to disk: {1}",
+                    new Object[] {directory, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, Level.FINE, SVNLogType.DEFAULT);
+        } catch (InvocationTargetException e) {
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can''t flush directory ''{0}'' to disk: {1}",
+                    new Object[] {directory, cause.getLocalizedMessage()});
+            SVNErrorManager.error(err, cause, Level.FINE, SVNLogType.DEFAULT);
+        } catch (IllegalAccessException e) {
+            SVNDebugLog.getDefaultLog().logFinest(SVNLogType.DEFAULT, e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    SVNDebugLog.getDefaultLog().logFinest(SVNLogType.DEFAULT, e);
+                }
+            }
+        }
+    }
+
     public static void setFileLastModifiedMicros(File file, long timeInMicros) {
         if (java7BasciFileAttributesClazz != null && timeInMicros >=0 && file != null) {
             try {
@@ -28,6 +28,8 @@ import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSParentPath;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -100,7 +102,7 @@ public class SVNMergeInfoManager {
                             "Node-revision #''{0}'' claims to have mergeinfo but doesn''t", entry.getId());
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                Map kidMergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(mergeInfoString), null);
+                Map kidMergeInfo = parseMergeInfo(mergeInfoString);
                 result.put(kidPath, kidMergeInfo);
             }
             if (kidNode.hasDescendantsWithMergeInfo()) {
@@ -151,16 +153,42 @@ public class SVNMergeInfoManager {
         }
         
         if (nearestAncestor == parentPath) {
-            return SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(mergeInfoString), null);
+            return parseMergeInfo(mergeInfoString);
         } 
         
-        Map tmpMergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(mergeInfoString), null); 
+        Map tmpMergeInfo = parseMergeInfo(mergeInfoString); 
         tmpMergeInfo = SVNMergeInfoUtil.getInheritableMergeInfo(tmpMergeInfo, null, 
                 SVNRepository.INVALID_REVISION, SVNRepository.INVALID_REVISION);
         mergeInfo = appendToMergedFroms(tmpMergeInfo, parentPath.getRelativePath(nearestAncestor));
         return mergeInfo;
     }
     
+    /**
+     * Parses <code>svn:mergeinfo</code> property value, parsed values are cached and
+     * every call returns a new copy.
+     */
+    public static Map<String, SVNMergeRangeList> parseMergeInfo(String mergeInfoString) throws SVNException {
+        final FSCache<String, Map<String, SVNMergeRangeList>> cache = FSCacheManager.getMergeInfoCache();
+        Map<String, SVNMergeRangeList> mergeInfo = cache.isEnabled() ? cache.get(mergeInfoString) : null;
+        if (mergeInfo == null) {
+            mergeInfo = SVNMergeInfoUtil.parseMergeInfo(new StringBuffer(mergeInfoString), null);
+            if (cache.isEnabled()) {
+                cache.put(mergeInfoString, copyMergeInfo(mergeInfo), 2 * mergeInfoString.length() + 64 * mergeInfo.size());
+            }
+            return mergeInfo;
+        }
+        return copyMergeInfo(mergeInfo);
+    }
+
+    private static Map<String, SVNMergeRangeList> copyMergeInfo(Map<String, SVNMergeRangeList> mergeInfo) {
+        Map<String, SVNMergeRangeList> copy = new TreeMap<String, SVNMergeRangeList>();
+        for (Iterator<Map.Entry<String, SVNMergeRangeList>> entries = mergeInfo.entrySet().iterator(); entries.hasNext();) {
+            Map.Entry<String, SVNMergeRangeList> entry = entries.next();
+            copy.put(entry.getKey(), entry.getValue().dup());
+        }
+        return copy;
+    }
+
     private Map appendToMergedFroms(Map mergeInfo, String pathComponent) {
         Map result = new TreeMap(); 
         for (Iterator pathsIter = mergeInfo.keySet().iterator(); pathsIter.hasNext();) {
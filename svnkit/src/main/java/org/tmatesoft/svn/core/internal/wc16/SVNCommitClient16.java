@@ -1,7 +1,7 @@
 package org.tmatesoft.svn.core.internal.wc16;
 
 import java.io.File;
-import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.util.*;
 
 import org.tmatesoft.svn.core.SVNCancelException;
@@ -1771,14 +1771,14 @@ public class SVNCommitClient16 extends SVNBasicDelegate {
             SVNTranslator.translate(file, tmpFile, charset, eolBytes, keywordsMap, special, false);
         }
         File importedFile = tmpFile != null ? tmpFile : file;
-        InputStream is = null;
+        RandomAccessFile raFile = null;
         String checksum = null;
         try {
-            is = SVNFileUtil.openFileForReading(importedFile, SVNLogType.WC);
+            raFile = SVNFileUtil.openRAFileForReading(importedFile);
             editor.applyTextDelta(filePath, null);
-            checksum = deltaGenerator.sendDelta(filePath, is, editor, true);
+            checksum = deltaGenerator.sendDelta(filePath, null, 0, raFile.getChannel(), editor, true);
         } finally {
-            SVNFileUtil.closeFile(is);
+            SVNFileUtil.closeFile(raFile);
             SVNFileUtil.deleteFile(tmpFile);
         }
         editor.closeFile(filePath, checksum);
@@ -34,11 +34,9 @@ import org.tmatesoft.svn.core.internal.wc.SVNEventFactory;
 import org.tmatesoft.svn.core.internal.wc.SVNFileType;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc.admin.SVNChecksumInputStream;
-import org.tmatesoft.svn.core.internal.wc.admin.SVNChecksumOutputStream;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext.MergeInfo;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext.MergePropertiesInfo;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext.TranslateInfo;
-import org.tmatesoft.svn.core.internal.wc17.SVNWCContext.WritableBaseInfo;
 import org.tmatesoft.svn.core.internal.wc17.db.*;
 import org.tmatesoft.svn.core.internal.wc17.db.ISVNWCDb.SVNWCDbKind;
 import org.tmatesoft.svn.core.internal.wc17.db.ISVNWCDb.SVNWCDbStatus;
@@ -1791,11 +1789,10 @@ public class SVNUpdateEditor17 implements ISVNUpdateEditor {
                 fb.sourceChecksumStream = (SVNChecksumInputStream) source;
             }
         }
-        WritableBaseInfo openWritableBase = myWCContext.openWritableBase(fb.localAbsolutePath, false, true);
-        OutputStream target = openWritableBase.stream;
-        fb.newTextBaseTmpAbsPath = openWritableBase.tempBaseAbspath;
-        myDeltaProcessor.applyTextDelta(source, target, true);
-        fb.newTextBaseSHA1ChecksumStream = openWritableBase.sha1ChecksumStream;
+        // the new text base is written to its file directly, both checksums are computed on the way.
+        File tempDirAbspath = myWCContext.getDb().getPristineTempDir(fb.localAbsolutePath);
+        fb.newTextBaseTmpAbsPath = SVNFileUtil.createUniqueFile(tempDirAbspath, "svn", ".tmp", true);
+        myDeltaProcessor.applyTextDelta(source, fb.newTextBaseTmpAbsPath, true, true);
     }
 
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
@@ -1818,8 +1815,9 @@ public class SVNUpdateEditor17 implements ISVNUpdateEditor {
             return;
         }
         myCurrentFile.newTextBaseMD5Digest = myDeltaProcessor.textDeltaEnd();
-        if (myCurrentFile.newTextBaseSHA1ChecksumStream != null) {
-            myCurrentFile.newTextBaseSHA1Checksum = new SvnChecksum(SvnChecksum.Kind.sha1, myCurrentFile.newTextBaseSHA1ChecksumStream.getDigest());
+        String newTextBaseSHA1Digest = myDeltaProcessor.getSHA1Checksum();
+        if (newTextBaseSHA1Digest != null) {
+            myCurrentFile.newTextBaseSHA1Checksum = new SvnChecksum(SvnChecksum.Kind.sha1, newTextBaseSHA1Digest);
         }
 
         if (myCurrentFile.expectedSourceChecksum != null && myCurrentFile.expectedSourceChecksum.getKind() == SvnChecksum.Kind.md5) {
@@ -1983,7 +1981,6 @@ public class SVNUpdateEditor17 implements ISVNUpdateEditor {
         // delta handling
         File newTextBaseTmpAbsPath;
         SVNChecksumInputStream sourceChecksumStream;
-        SVNChecksumOutputStream newTextBaseSHA1ChecksumStream;
 
         SvnChecksum expectedSourceChecksum;
         String newTextBaseMD5Digest;
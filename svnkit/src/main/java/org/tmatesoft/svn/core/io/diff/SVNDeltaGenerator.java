@@ -14,6 +14,8 @@ package org.tmatesoft.svn.core.io.diff;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -48,6 +50,8 @@ public class SVNDeltaGenerator {
     
     private byte[] mySourceBuffer;
     private byte[] myTargetBuffer;
+    private ByteBuffer mySourceChannelBuffer;
+    private ByteBuffer myTargetChannelBuffer;
     private int myMaximumBufferSize;
     
     /**
@@ -136,16 +140,7 @@ public class SVNDeltaGenerator {
      * @throws SVNException
      */
     public String sendDelta(String path, InputStream source, long sourceOffset, InputStream target, ISVNDeltaConsumer consumer, boolean computeChecksum) throws SVNException {
-        MessageDigest digest = null;
-        if (computeChecksum) {
-            try {
-                digest = MessageDigest.getInstance("MD5");
-            } catch (NoSuchAlgorithmException e) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "MD5 implementation not found: {0}", e.getLocalizedMessage());
-                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
-                return null;
-            }
-        }
+        MessageDigest digest = computeChecksum ? createDigest() : null;
         boolean windowSent = false;
         while(true) {
             int targetLength;
@@ -194,6 +189,72 @@ public class SVNDeltaGenerator {
         return SVNFileUtil.toHexDigest(digest);
     }
 
+    /**
+     * Generates a series of diff windows of fixed size comparing 
+     * target bytes (read from <code>target</code> channel) against source
+     * bytes (read from <code>source</code> channel), and sends produced windows to the provided 
+     * consumer. 
+     * 
+     * <p/>
+     * Both channels are read sequentially from their current positions directly into the two
+     * window buffers of this generator, which are allocated once at the maximum window size and
+     * then reused. As with the stream based methods, the memory used is bounded by the window
+     * size; this method only saves the stream layers between the files and the window buffers.
+     * 
+     * @param  path             a file repository path
+     * @param  source           a channel to read source bytes from, or <span class="javakeyword">null</span>
+     *                          to compare against an empty file
+     * @param  sourceOffset     an offset of the source view in the given <code>source</code> channel 
+     * @param  target           a channel to read target bytes from
+     * @param  consumer         a diff windows consumer
+     * @param  computeChecksum  <span class="javakeyword">true</span> to 
+     *                          compute a checksum 
+     * @return                  if <code>computeChecksum</code> is <span class="javakeyword">true</span>,  
+     *                          a string representing a hex form of the 
+     *                          MD5 checksum computed for the target contents; otherwise  <span class="javakeyword">null</span>
+     * @throws SVNException
+     * @since  1.9
+     */
+    public String sendDelta(String path, FileChannel source, long sourceOffset, FileChannel target, ISVNDeltaConsumer consumer, boolean computeChecksum) throws SVNException {
+        MessageDigest digest = computeChecksum ? createDigest() : null;
+        if (myTargetChannelBuffer == null) {
+            if (mySourceBuffer.length < myMaximumBufferSize) {
+                mySourceBuffer = new byte[myMaximumBufferSize];
+            }
+            if (myTargetBuffer.length < myMaximumBufferSize) {
+                myTargetBuffer = new byte[myMaximumBufferSize];
+            }
+            mySourceChannelBuffer = ByteBuffer.wrap(mySourceBuffer);
+            myTargetChannelBuffer = ByteBuffer.wrap(myTargetBuffer);
+        }
+        boolean windowSent = false;
+        while(true) {
+            int targetLength = readToBuffer(target, myTargetChannelBuffer);
+            if (targetLength <= 0) {
+                // send empty window, needed to create empty file. 
+                // only when no windows was sent at all.
+                if (!windowSent && consumer != null) {
+                    consumer.textDeltaChunk(path, SVNDiffWindow.EMPTY);
+                }
+                break;
+            }
+            int sourceLength = source != null ? readToBuffer(source, mySourceChannelBuffer) : 0;
+            if (sourceLength < 0) {
+                sourceLength = 0;
+            }
+            if (digest != null) {
+                digest.update(myTargetBuffer, 0, targetLength);
+            }
+            sendDelta(path, sourceOffset, mySourceBuffer, sourceLength, myTargetBuffer, targetLength, consumer);
+            windowSent = true;
+            sourceOffset += sourceLength;
+        }
+        if (consumer != null) {
+            consumer.textDeltaEnd(path);
+        }
+        return SVNFileUtil.toHexDigest(digest);
+    }
+
     /**
      * Generates a series of diff windows of fixed size comparing 
      * target bytes (read from <code>target</code> stream) against an empty file, and sends produced windows to 
@@ -275,6 +336,31 @@ public class SVNDeltaGenerator {
         algorithm.reset();
     }
     
+    private static MessageDigest createDigest() throws SVNException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "MD5 implementation not found: {0}", e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+        return null;
+    }
+
+    private static int readToBuffer(FileChannel channel, ByteBuffer buffer) throws SVNException {
+        buffer.clear();
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+        return buffer.position() > 0 ? buffer.position() : -1;
+    }
+
     private int readToBuffer(InputStream is, byte[] buffer) throws IOException {
         int read = SVNFileUtil.readIntoBuffer(is, buffer, 0, buffer.length);
         if (read <= 0) {
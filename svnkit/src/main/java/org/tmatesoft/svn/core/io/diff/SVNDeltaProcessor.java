@@ -12,13 +12,20 @@
 package org.tmatesoft.svn.core.io.diff;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
@@ -32,6 +39,7 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 public class SVNDeltaProcessor {
     
     private SVNDiffWindowApplyBaton myApplyBaton;
+    private String mySHA1Checksum;
 
     /**
      * Creates a processor. 
@@ -153,6 +161,114 @@ public class SVNDeltaProcessor {
         return SVNFileUtil.DUMMY_OUT;
     }
     
+    /**
+     * Starts processing deltas given a base file and a destination file, 
+     * writing resultant target bytes straight to the destination file.
+     * 
+     * <p>
+     * Checksums of the target bytes are calculated in the same pass as they 
+     * are written. The calculated MD5 checksum is returned by {@link #textDeltaEnd()}, 
+     * the SHA-1 checksum is available from {@link #getSHA1Checksum()} after that.
+     * 
+     * @param  baseFile               a base file to read base file contents 
+     *                                from, may be <span class="javakeyword">null</span> 
+     * @param  targetFile             a destination file where resultant 
+     *                                target bytes will be written
+     * @param  computeChecksum        <span class="javakeyword">true</span> to calculate
+     *                                an MD5 checksum of the target text
+     * @param  computeSHA1Checksum    <span class="javakeyword">true</span> to calculate
+     *                                a SHA-1 checksum of the target text
+     * @throws SVNException
+     * @since  1.9
+     */
+    public void applyTextDelta(File baseFile, File targetFile, boolean computeChecksum, boolean computeSHA1Checksum) throws SVNException {
+        reset();
+        FileChannel base = baseFile != null && baseFile.exists() ? SVNFileUtil.openRAFileForReading(baseFile).getChannel() : null;
+        FileChannel target = null;
+        try {
+            target = openTargetChannel(targetFile);
+        } finally {
+            if (target == null && base != null) {
+                try {
+                    base.close();
+                } catch (IOException e) {
+                    //
+                }
+            }
+        }
+        myApplyBaton = SVNDiffWindowApplyBaton.create(base, target, createDigest(computeChecksum, "MD5"), createDigest(computeSHA1Checksum, "SHA1"));
+    }
+
+    /**
+     * Starts processing deltas given a base file stream and a destination file, 
+     * writing resultant target bytes straight to the destination file.
+     * 
+     * <p>
+     * Checksums of the target bytes are calculated in the same pass as they 
+     * are written. The calculated MD5 checksum is returned by {@link #textDeltaEnd()}, 
+     * the SHA-1 checksum is available from {@link #getSHA1Checksum()} after that.
+     * 
+     * @param  baseIS                 an input stream to take base file contents 
+     *                                from 
+     * @param  targetFile             a destination file where resultant 
+     *                                target bytes will be written
+     * @param  computeChecksum        <span class="javakeyword">true</span> to calculate
+     *                                an MD5 checksum of the target text
+     * @param  computeSHA1Checksum    <span class="javakeyword">true</span> to calculate
+     *                                a SHA-1 checksum of the target text
+     * @throws SVNException
+     * @since  1.9
+     */
+    public void applyTextDelta(InputStream baseIS, File targetFile, boolean computeChecksum, boolean computeSHA1Checksum) throws SVNException {
+        reset();
+        FileChannel target = null;
+        try {
+            target = openTargetChannel(targetFile);
+        } finally {
+            if (target == null) {
+                SVNFileUtil.closeFile(baseIS);
+            }
+        }
+        baseIS = baseIS == null ? SVNFileUtil.DUMMY_IN : baseIS;
+        myApplyBaton = SVNDiffWindowApplyBaton.create(baseIS, target, createDigest(computeChecksum, "MD5"), createDigest(computeSHA1Checksum, "SHA1"));
+    }
+
+    /**
+     * Returns the SHA-1 checksum of the target text calculated by the last 
+     * {@link #textDeltaEnd()} call, if it was requested with 
+     * {@link #applyTextDelta(File, File, boolean, boolean)} or 
+     * {@link #applyTextDelta(InputStream, File, boolean, boolean)}.
+     * 
+     * @return  a hex representation of the SHA-1 checksum or 
+     *          <span class="javakeyword">null</span> 
+     * @since   1.9
+     */
+    public String getSHA1Checksum() {
+        return mySHA1Checksum;
+    }
+
+    private static FileChannel openTargetChannel(File targetFile) throws SVNException {
+        RandomAccessFile file = SVNFileUtil.openRAFileForWriting(targetFile, false);
+        try {
+            file.setLength(0);
+        } catch (IOException e) {
+            SVNFileUtil.closeFile(file);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not write to file ''{0}'': {1}", new Object[] {
+                    targetFile, e.getMessage()
+            });
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+        return file.getChannel();
+    }
+
+    private static MessageDigest createDigest(boolean compute, String algorithm) {
+        try {
+            return compute ? MessageDigest.getInstance(algorithm) : null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
     private void reset() {
         if (myApplyBaton != null) {
             myApplyBaton.close();
@@ -170,9 +286,11 @@ public class SVNDeltaProcessor {
      *          if checksum calculation was not required 
      */
     public String textDeltaEnd() {
+        SVNDiffWindowApplyBaton applyBaton = myApplyBaton;
         try {
-            return myApplyBaton.close();
+            return applyBaton.close();
         } finally { 
+            mySHA1Checksum = applyBaton.getSHA1Checksum();
             reset();
         }
     }
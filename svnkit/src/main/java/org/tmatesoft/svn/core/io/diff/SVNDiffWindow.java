@@ -16,11 +16,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.DeflaterOutputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -55,6 +55,12 @@ public class SVNDiffWindow {
      * @since 1.1, new in Subversion 1.4 
      */
     public static final byte[] SVN1_HEADER = new byte[] {'S', 'V', 'N', '\1'};
+
+    /**
+     * Bytes of the delta header of a diff window compressed with LZ4.
+     * @since 1.9, new in Subversion 1.10
+     */
+    public static final byte[] SVN2_HEADER = new byte[] {'S', 'V', 'N', '\2'};
     
     /**
      * An empty window (in particular, its instructions length = 0). Corresponds 
@@ -233,6 +239,10 @@ public class SVNDiffWindow {
      * @see                  #apply(byte[], byte[])
      */
     public void apply(SVNDiffWindowApplyBaton applyBaton) throws SVNException {
+        if (applyBaton.myTargetChannel != null) {
+            applyToChannel(applyBaton);
+            return;
+        }
         // here we have streams and buffer from the previous calls (or nulls).
         
         // 1. buffer for target.
@@ -242,35 +252,7 @@ public class SVNDiffWindow {
         applyBaton.myTargetViewSize = getTargetViewLength();
         
         // 2. buffer for source.
-        int length = 0;
-        if (getSourceViewOffset() != applyBaton.mySourceViewOffset || getSourceViewLength() > applyBaton.mySourceViewLength) {
-            byte[] oldSourceBuffer = applyBaton.mySourceBuffer;
-            // create a new buffer
-            applyBaton.mySourceBuffer = new byte[getSourceViewLength()];
-            // copy from the old buffer.
-            if (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength > getSourceViewOffset()) {
-                // copy overlapping part to the new buffer
-                int start = (int) (getSourceViewOffset() - applyBaton.mySourceViewOffset);
-                System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
-                length = (applyBaton.mySourceViewLength - start);
-            }            
-        }
-        if (length < getSourceViewLength()) {
-            // fill what remains.
-            try {
-                int toSkip = (int) (getSourceViewOffset() - (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength));
-                if (toSkip > 0) {
-                    applyBaton.mySourceStream.skip(toSkip);
-                }
-                SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, length, applyBaton.mySourceBuffer.length - length);
-            } catch (IOException e) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
-                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
-            }
-        }
-        // update offsets in baton.
-        applyBaton.mySourceViewLength = getSourceViewLength();
-        applyBaton.mySourceViewOffset = getSourceViewOffset();
+        readSourceView(applyBaton);
         
         // apply instructions.
         int tpos = 0;
@@ -314,6 +296,86 @@ public class SVNDiffWindow {
         }
     }
 
+    private void applyToChannel(SVNDiffWindowApplyBaton applyBaton) throws SVNException {
+        int targetLength = getTargetViewLength();
+        int sourceCopyOffset = getSourceCopyOffset();
+        try {
+            if (sourceCopyOffset >= 0) {
+                // the whole target view is a run of source bytes, no need to assemble it.
+                if (applyBaton.mySourceChannel != null && applyBaton.myDigest == null && applyBaton.mySHA1Digest == null) {
+                    applyBaton.transferFromSource(getSourceViewOffset() + sourceCopyOffset, targetLength);
+                    return;
+                }
+                readSourceView(applyBaton);
+                applyBaton.writeToTarget(applyBaton.mySourceBuffer, sourceCopyOffset, targetLength);
+                return;
+            }
+            readSourceView(applyBaton);
+            if (applyBaton.myTargetBuffer == null || applyBaton.myTargetBuffer.length < targetLength) {
+                applyBaton.myTargetBuffer = new byte[targetLength];
+            }
+            apply(applyBaton.mySourceBuffer, applyBaton.myTargetBuffer);
+            applyBaton.writeToTarget(applyBaton.myTargetBuffer, 0, targetLength);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+    }
+
+    private void readSourceView(SVNDiffWindowApplyBaton applyBaton) throws SVNException {
+        if (applyBaton.mySourceChannel != null) {
+            try {
+                applyBaton.readFromSource(getSourceViewOffset(), getSourceViewLength());
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+            return;
+        }
+        int length = 0;
+        if (getSourceViewOffset() != applyBaton.mySourceViewOffset || getSourceViewLength() > applyBaton.mySourceViewLength) {
+            byte[] oldSourceBuffer = applyBaton.mySourceBuffer;
+            // create a new buffer
+            applyBaton.mySourceBuffer = new byte[getSourceViewLength()];
+            // copy from the old buffer.
+            if (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength > getSourceViewOffset()) {
+                // copy overlapping part to the new buffer
+                int start = (int) (getSourceViewOffset() - applyBaton.mySourceViewOffset);
+                System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
+                length = (applyBaton.mySourceViewLength - start);
+            }            
+        }
+        if (length < getSourceViewLength()) {
+            // fill what remains.
+            try {
+                int toSkip = (int) (getSourceViewOffset() - (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength));
+                if (toSkip > 0) {
+                    applyBaton.mySourceStream.skip(toSkip);
+                }
+                SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, length, applyBaton.mySourceBuffer.length - length);
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+        }
+        // update offsets in baton.
+        applyBaton.mySourceViewLength = getSourceViewLength();
+        applyBaton.mySourceViewOffset = getSourceViewOffset();
+    }
+
+    private int getSourceCopyOffset() {
+        Iterator instructions = instructions(true);
+        if (!instructions.hasNext()) {
+            return -1;
+        }
+        SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
+        if (instruction.type != SVNDiffInstruction.COPY_FROM_SOURCE || instruction.length != getTargetViewLength() || 
+                instructions.hasNext()) {
+            return -1;
+        }
+        return instruction.offset;
+    }
+
     /**
      * Applies this window's instructions provided source and target view buffers. 
      * 
@@ -453,8 +515,27 @@ public class SVNDiffWindow {
      * @since                 1.1
      */
     public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+        writeTo(os, writeHeader, compress ? 1 : 0);
+    }
+
+    /**
+     * Formats and writes this window bytes to the specified output stream
+     * in the given svndiff format.
+     *
+     * @param os              an output stream to write the window to
+     * @param writeHeader     if <span class="javakeyword">true</span> a window
+     *                        header will be also written
+     * @param version         svndiff version to write: 0 for non-compressed windows
+     *                        ({@link #SVN_HEADER}), 1 for zlib compressed windows
+     *                        ({@link #SVN1_HEADER}) or 2 for LZ4 compressed windows
+     *                        ({@link #SVN2_HEADER})
+     * @throws IOException
+     * @since                 1.9
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, int version) throws IOException {
+        boolean compress = version == 1 || version == 2;
         if (writeHeader) {
-            os.write(compress ? SVN1_HEADER : SVN_HEADER);
+            os.write(version == 2 ? SVN2_HEADER : (compress ? SVN1_HEADER : SVN_HEADER));
         }
         if (!hasInstructions()) {
             return;
@@ -469,9 +550,9 @@ public class SVNDiffWindow {
         int instLength = 0;
         int dataLength = 0;
         if (compress) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength);
+            instructions = inflate(version, myData, myDataOffset, myInstructionsLength);
             instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            newData = inflate(version, myData, myDataOffset + myInstructionsLength, myNewDataLength);
             dataLength = newData.remaining();
             SVNDiffInstruction.writeInt(offsets, instLength);
             SVNDiffInstruction.writeInt(offsets, dataLength);
@@ -541,30 +622,23 @@ public class SVNDiffWindow {
         return clone;
     }
     
-    private static ByteBuffer inflate(byte[] src, int offset, int length) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(length*2 + 2);
+    private static ByteBuffer inflate(int version, byte[] src, int offset, int length) throws IOException {
+        // the length prefix takes at most 5 bytes.
+        final ByteBuffer buffer = ByteBuffer.allocate(length + 5);
         SVNDiffInstruction.writeInt(buffer, length);
-        if (length < 512) {
-            buffer.put(src, offset, length);
+        int compressedLength = -1;
+        // compressed data is only used when it is shorter than the original one.
+        if (version == 2) {
+            compressedLength = SVNDeltaCompression.compressLZ4(src, offset, length, buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), length - 1);
+        } else if (length >= 512) {
+            compressedLength = SVNDeltaCompression.compress(src, offset, length, buffer.array(),
+                    buffer.arrayOffset() + buffer.position(), length - buffer.position() - 1);
+        }
+        if (compressedLength >= 0) {
+            buffer.position(buffer.position() + compressedLength);
         } else {
-            DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
-                public void write(int b) throws IOException {
-                    buffer.put((byte) (b & 0xFF));
-                }
-                public void write(byte[] b, int off, int len) throws IOException {
-                    buffer.put(b, off, len);
-                }
-                public void write(byte[] b) throws IOException {
-                    write(b, 0, b.length);
-                }
-            });
-            out.write(src, offset, length);
-            out.finish();
-            if (buffer.position() >= length) {
-                buffer.clear();
-                SVNDiffInstruction.writeInt(buffer, length);
-                buffer.put(src, offset, length);
-            }
+            buffer.put(src, offset, length);
         }
         buffer.flip();
         return buffer;
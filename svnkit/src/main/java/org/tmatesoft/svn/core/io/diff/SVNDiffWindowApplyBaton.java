@@ -12,12 +12,19 @@
 package org.tmatesoft.svn.core.io.diff;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNLogType;
 
 /**
  * The <b>SVNDiffWindowApplyBaton</b> class is used to provide the source 
@@ -26,6 +33,10 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
  * for on-the-fly updating it with the bytes of the target view. So that when
  * a diff window's instructions are applied, the digest will be the checksum
  * for the full expanded text written to the target stream during delta application. 
+ * 
+ * <p>
+ * When created with a target file channel, windows are written straight to
+ * that channel, and an MD5 as well as a SHA-1 digest may be updated in the same pass.
  *  
  * @version 1.3
  * @author  TMate Software Ltd.
@@ -43,6 +54,14 @@ public class SVNDiffWindowApplyBaton {
     byte[] mySourceBuffer;
     byte[] myTargetBuffer;
     MessageDigest myDigest;
+
+    FileChannel mySourceChannel;
+    FileChannel myTargetChannel;
+    long myTargetPosition;
+    MessageDigest mySHA1Digest;
+    
+    private ByteBuffer mySourceByteBuffer;
+    private String mySHA1Checksum;
     
     /**
      * Creates a diff window apply baton whith source and target streams 
@@ -88,6 +107,57 @@ public class SVNDiffWindowApplyBaton {
         return baton;
     }
 
+    /**
+     * Creates a diff window apply baton which writes the full text straight 
+     * to the target channel, starting at its current position. 
+     * 
+     * @param  source           a source input stream (from where the source 
+     *                          views would be taken) 
+     * @param  target           a target channel where the full text is written
+     * @param  digest           an MD5 digest to update with the full text, or 
+     *                          <span class="javakeyword">null</span>
+     * @param  sha1Digest       a SHA-1 digest to update with the full text, or 
+     *                          <span class="javakeyword">null</span>
+     * @return                  a new <b>SVNDiffWindowApplyBaton</b> object
+     * @throws SVNException
+     * @since  1.9
+     */
+    public static SVNDiffWindowApplyBaton create(InputStream source, FileChannel target, MessageDigest digest, MessageDigest sha1Digest) throws SVNException {
+        SVNDiffWindowApplyBaton baton = create(source, (OutputStream) null, digest);
+        baton.mySHA1Digest = sha1Digest;
+        baton.myTargetChannel = target;
+        try {
+            baton.myTargetPosition = target.position();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+        return baton;
+    }
+
+    /**
+     * Creates a diff window apply baton which reads source views from the 
+     * source channel and writes the full text straight to the target channel, 
+     * starting at its current position. Target views that are plain copies of the 
+     * source are transferred between the channels when no digest is to be computed. 
+     * 
+     * @param  source           a source channel, or <span class="javakeyword">null</span> 
+     *                          for an empty source 
+     * @param  target           a target channel where the full text is written
+     * @param  digest           an MD5 digest to update with the full text, or 
+     *                          <span class="javakeyword">null</span>
+     * @param  sha1Digest       a SHA-1 digest to update with the full text, or 
+     *                          <span class="javakeyword">null</span>
+     * @return                  a new <b>SVNDiffWindowApplyBaton</b> object
+     * @throws SVNException
+     * @since  1.9
+     */
+    public static SVNDiffWindowApplyBaton create(FileChannel source, FileChannel target, MessageDigest digest, MessageDigest sha1Digest) throws SVNException {
+        SVNDiffWindowApplyBaton baton = create(source == null ? SVNFileUtil.DUMMY_IN : null, target, digest, sha1Digest);
+        baton.mySourceChannel = source;
+        return baton;
+    }
+
     private SVNDiffWindowApplyBaton() {
     }
     
@@ -102,6 +172,15 @@ public class SVNDiffWindowApplyBaton {
         mySourceStream = null;
         SVNFileUtil.closeFile(myTargetStream);
         myTargetStream = null;
+        closeChannel(mySourceChannel);
+        mySourceChannel = null;
+        closeChannel(myTargetChannel);
+        myTargetChannel = null;
+        if (mySHA1Digest != null) {
+            MessageDigest d = mySHA1Digest;
+            mySHA1Digest = null;
+            mySHA1Checksum = SVNFileUtil.toHexDigest(d);
+        }
         if (myDigest != null) {
             MessageDigest d = myDigest;
             myDigest = null;
@@ -110,4 +189,73 @@ public class SVNDiffWindowApplyBaton {
         return null;
     }
 
+    /**
+     * Returns the SHA-1 checksum of the full text, once this baton is closed.
+     * 
+     * @return a SHA-1 checksum in a hex representation, or <span class="javakeyword">null</span>
+     *         if no SHA-1 digest was supplied
+     * @since  1.9
+     */
+    public String getSHA1Checksum() {
+        return mySHA1Checksum;
+    }
+
+    void readFromSource(long offset, int length) throws IOException {
+        if (mySourceBuffer.length < length) {
+            mySourceBuffer = new byte[length];
+            mySourceByteBuffer = null;
+        }
+        if (mySourceByteBuffer == null) {
+            mySourceByteBuffer = ByteBuffer.wrap(mySourceBuffer);
+        }
+        mySourceByteBuffer.clear();
+        mySourceByteBuffer.limit(length);
+        while (mySourceByteBuffer.hasRemaining()) {
+            if (mySourceChannel.read(mySourceByteBuffer, offset + mySourceByteBuffer.position()) < 0) {
+                break;
+            }
+        }
+        mySourceViewOffset = offset;
+        mySourceViewLength = length;
+    }
+
+    void writeToTarget(byte[] buffer, int offset, int length) throws IOException {
+        if (myDigest != null) {
+            myDigest.update(buffer, offset, length);
+        }
+        if (mySHA1Digest != null) {
+            mySHA1Digest.update(buffer, offset, length);
+        }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+        while (byteBuffer.hasRemaining()) {
+            myTargetPosition += myTargetChannel.write(byteBuffer, myTargetPosition);
+        }
+    }
+
+    void transferFromSource(long offset, int length) throws IOException, SVNException {
+        // transferTo writes at the current position of the target channel.
+        myTargetChannel.position(myTargetPosition);
+        long transferred = 0;
+        while (transferred < length) {
+            long count = mySourceChannel.transferTo(offset + transferred, length - transferred, myTargetChannel);
+            if (count <= 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Unexpected end of source view");
+                SVNErrorManager.error(err, SVNLogType.DEFAULT);
+            }
+            transferred += count;
+        }
+        myTargetPosition += length;
+    }
+
+    private static void closeChannel(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+
 }
@@ -123,6 +123,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  * <tr bgcolor="#EAEAEA" align="left">
  * <td>doPack()</td><td>'svnadmin pack'</td>
  * </tr>
+ * <tr bgcolor="#EAEAEA" align="left">
+ * <td>doBuildPathHistoryIndex()</td><td>'jsvnadmin build-path-history'</td>
+ * </tr>
  * </table>
  *
  * @version 1.3
@@ -587,6 +590,28 @@ public class SVNAdminClient extends SVNAdminBasicClient {
 
     }
 
+    /**
+     * Builds (or rebuilds) the path history index of a repository.
+     *
+     * <p/>
+     * The index is stored in the <code>db/path-history.db</code> file of the repository and is
+     * kept up to date by subsequent commits. It lets path-restricted <code>log</code>,
+     * <code>blame</code> and deleted revision lookups find the revisions at which a path changed
+     * without walking through all its node revisions.
+     *
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.9
+     */
+    public void doBuildPathHistoryIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            fsfs.buildPathHistoryIndex();
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+
     /**
      * Completely synchronizes two repositories.
      *
@@ -752,7 +777,6 @@ public class SVNAdminClient extends SVNAdminBasicClient {
     public void doListLocks(File repositoryRoot) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
-            File digestFile = fsfs.getDigestFileFromRepositoryPath("/");
             ISVNLockHandler handler = new ISVNLockHandler() {
                 public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                     checkCancelled();
@@ -765,7 +789,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(digestFile, handler, false);
+            fsfs.walkLocks("/", handler, false);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1,11 +1,17 @@
 package org.tmatesoft.svn.test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
 import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNException;
@@ -14,6 +20,15 @@ import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSCommitQueue;
+import org.tmatesoft.svn.core.internal.io.fs.FSCommitStatistics;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheFilter;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNExternal;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext;
@@ -455,6 +470,194 @@ public class CommitTest {
         }
     }
 
+    @Test
+    public void testConcurrentCommitsWithCommitQueue() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentCommitsWithCommitQueue", options);
+        final boolean commitQueueEnabled = FSCommitQueue.isEnabled();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSCommitQueue.setEnabled(true);
+
+            final int threadsCount = 4;
+            final int commitsCount = 5;
+            final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+            final Thread[] threads = new Thread[threadsCount];
+            for (int i = 0; i < threadsCount; i++) {
+                final int threadIndex = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int j = 0; j < commitsCount; j++) {
+                                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                                commitBuilder.addFile("file" + threadIndex + "." + j, ("contents " + threadIndex + "." + j).getBytes());
+                                commitBuilder.commit();
+                            }
+                        } catch (Exception e) {
+                            errors.add(e);
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Assert.assertEquals(Collections.<Exception>emptyList(), errors);
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final long youngestRevision = fsfs.getYoungestRevision();
+                Assert.assertEquals(threadsCount * commitsCount, youngestRevision);
+
+                final FSCommitQueue commitQueue = FSCommitQueue.getCommitQueue(fsfs);
+                Assert.assertEquals(threadsCount * commitsCount, commitQueue.getFlushedCount());
+                Assert.assertTrue(commitQueue.getGroupsCount() <= threadsCount * commitsCount);
+
+                final IFSRepresentationCacheManager cacheManager = fsfs.getRepositoryCacheManager();
+                if (cacheManager != null) {
+                    final FSRevisionRoot root = fsfs.createRevisionRoot(youngestRevision);
+                    cacheManager.runReadTransaction(new IFSSqlJetTransaction() {
+                        public void run() throws SVNException {
+                            for (int i = 0; i < threadsCount; i++) {
+                                for (int j = 0; j < commitsCount; j++) {
+                                    final FSRepresentation representation = root.getRevisionNode("file" + i + "." + j).getTextRepresentation();
+                                    final FSRepresentation cachedRepresentation = cacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                                    Assert.assertNotNull(cachedRepresentation);
+                                    Assert.assertEquals(representation.getRevision(), cachedRepresentation.getRevision());
+                                }
+                            }
+                        }
+                    });
+                }
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSCommitQueue.setEnabled(commitQueueEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCommitStatisticsOfDurabilityModes() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCommitStatisticsOfDurabilityModes", options);
+        final String durability = System.getProperty(FSFS.DURABILITY_PROPERTY);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final FSCommitStatistics statistics = fsfs.getCommitStatistics();
+
+                System.setProperty(FSFS.DURABILITY_PROPERTY, "none");
+                statistics.reset();
+                final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+                commitBuilder1.addFile("file1");
+                commitBuilder1.commit();
+                Assert.assertEquals(1, statistics.getCommitsCount());
+                Assert.assertEquals(0, statistics.getFileSyncsCount());
+                Assert.assertEquals(0, statistics.getDirectorySyncsCount());
+
+                System.setProperty(FSFS.DURABILITY_PROPERTY, "data");
+                statistics.reset();
+                final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+                commitBuilder2.addFile("file2");
+                commitBuilder2.commit();
+                Assert.assertEquals(1, statistics.getCommitsCount());
+                // proto-revision, revision properties and db/current
+                Assert.assertEquals(3, statistics.getFileSyncsCount());
+                Assert.assertEquals(0, statistics.getDirectorySyncsCount());
+
+                System.setProperty(FSFS.DURABILITY_PROPERTY, "directory");
+                statistics.reset();
+                final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+                commitBuilder3.addFile("file3");
+                commitBuilder3.commit();
+                Assert.assertEquals(1, statistics.getCommitsCount());
+                Assert.assertEquals(3, statistics.getFileSyncsCount());
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+
+                // directories are not synced on Windows and on Java 6
+                Assume.assumeTrue(SVNFileUtil.isDirectorySyncSupported());
+                // revs and revprops shards and db
+                Assert.assertEquals(3, statistics.getDirectorySyncsCount());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            if (durability == null) {
+                System.clearProperty(FSFS.DURABILITY_PROPERTY);
+            } else {
+                System.setProperty(FSFS.DURABILITY_PROPERTY, durability);
+            }
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRepresentationCacheFilter() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepresentationCacheFilter", options);
+        final boolean filterEnabled = FSRepresentationCacheFilter.isEnabled();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSRepresentationCacheFilter.setEnabled(true);
+
+            final int filesCount = 20;
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < filesCount; i++) {
+                commitBuilder.addFile("file" + i, ("contents " + i).getBytes());
+            }
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final IFSRepresentationCacheManager cacheManager = fsfs.getRepositoryCacheManager();
+                Assume.assumeTrue(cacheManager != null);
+
+                final FSRevisionRoot root = fsfs.createRevisionRoot(fsfs.getYoungestRevision());
+                for (int i = 0; i < filesCount; i++) {
+                    final FSRepresentation representation = root.getRevisionNode("file" + i).getTextRepresentation();
+                    final FSRepresentation cachedRepresentation = cacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                    Assert.assertNotNull(cachedRepresentation);
+                    Assert.assertEquals(representation.getRevision(), cachedRepresentation.getRevision());
+                    Assert.assertEquals(representation.getSize(), cachedRepresentation.getSize());
+                }
+                final String missingHash = "0123456789abcdef0123456789abcdef01234567";
+                Assert.assertNull(cacheManager.getRepresentationByHash(missingHash));
+
+                // a row written by another process is found once the filter notices the change.
+                final SqlJetDb db = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
+                try {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getTable(FSRepresentationCacheManager.REP_CACHE_TABLE).insert(new Object[] {missingHash,
+                                    new Long(1), new Long(1), new Long(10), new Long(10)});
+                            return null;
+                        }
+                    });
+                } finally {
+                    db.close();
+                }
+                final FSRepresentation insertedRepresentation = cacheManager.getRepresentationByHash(missingHash);
+                Assert.assertNotNull(insertedRepresentation);
+                Assert.assertEquals(10, insertedRepresentation.getSize());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSRepresentationCacheFilter.setEnabled(filterEnabled);
+            sandbox.dispose();
+        }
+    }
+
     private String getTestName() {
         return "CommitTest";
     }
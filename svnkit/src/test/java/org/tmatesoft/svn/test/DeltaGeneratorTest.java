@@ -0,0 +1,288 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCompression;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class DeltaGeneratorTest {
+
+    @Test
+    public void testWindowsOfReusedGenerator() throws Exception {
+        final Random random = new Random(0);
+        final SVNDeltaGenerator generator = new SVNDeltaGenerator();
+        // the matches table grows with the source and is reused for smaller ones.
+        final int[] sourceSizes = {0, 100, 8192, 100 * 1024, 300, 50 * 1024, 64};
+        for (int i = 0; i < sourceSizes.length; i++) {
+            final byte[] source = new byte[sourceSizes[i]];
+            for (int j = 0; j < source.length; j++) {
+                source[j] = (byte) (i % 2 == 0 ? random.nextInt(256) : 'a' + random.nextInt(4));
+            }
+            final byte[] target = createTarget(source, random);
+
+            final WindowApplier applier = new WindowApplier(source, target.length);
+            generator.sendDelta("file", source, source.length, 0, target, target.length, applier);
+            Assert.assertArrayEquals("source of " + source.length + " bytes", target, applier.myTarget);
+        }
+    }
+
+    @Test
+    public void testCompressedWindowsWithCompressionLevels() throws Exception {
+        final Random random = new Random(0);
+        final byte[] source = new byte[0];
+        final byte[] target = new byte[64 * 1024];
+        for (int i = 0; i < target.length; i++) {
+            target[i] = (byte) ('a' + random.nextInt(4));
+        }
+        final int compressionLevel = SVNDeltaCompression.getCompressionLevel();
+        try {
+            final int[] levels = {0, 1, 9, -1};
+            final int[] lengths = new int[levels.length];
+            for (int i = 0; i < levels.length; i++) {
+                SVNDeltaCompression.setCompressionLevel(levels[i]);
+                final WindowWriter writer = new WindowWriter(1);
+                new SVNDeltaGenerator().sendDelta("file", source, 0, 0, target, target.length, writer);
+                final byte[] svndiff = writer.myOutput.toByteArray();
+                lengths[i] = svndiff.length;
+
+                final WindowApplier applier = new WindowApplier(source, target.length);
+                final SVNDeltaReader reader = new SVNDeltaReader();
+                // feed the reader in small chunks, as the network layers do.
+                for (int offset = 0; offset < svndiff.length; offset += 1000) {
+                    reader.nextWindow(svndiff, offset, Math.min(1000, svndiff.length - offset), "file", applier);
+                }
+                Assert.assertArrayEquals("compression level " + levels[i], target, applier.myTarget);
+            }
+            Assert.assertTrue(lengths[0] > target.length);
+            Assert.assertTrue(lengths[1] < target.length / 2);
+            Assert.assertTrue(lengths[2] <= lengths[1]);
+        } finally {
+            SVNDeltaCompression.setCompressionLevel(compressionLevel);
+        }
+    }
+
+    @Test
+    public void testSvndiff2Windows() throws Exception {
+        final Random random = new Random(0);
+        final byte[] source = new byte[100 * 1024];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) ('a' + random.nextInt(4));
+        }
+        final byte[] target = createTarget(source, random);
+        for (int i = 0; i < 1000; i++) {
+            target[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        final WindowWriter writer = new WindowWriter(2);
+        new SVNDeltaGenerator().sendDelta("file", source, source.length, 0, target, target.length, writer);
+        final byte[] svndiff = writer.myOutput.toByteArray();
+        Assert.assertArrayEquals(SVNDiffWindow.SVN2_HEADER, new byte[] {svndiff[0], svndiff[1], svndiff[2], svndiff[3]});
+
+        final WindowApplier applier = new WindowApplier(source, target.length);
+        final SVNDeltaReader reader = new SVNDeltaReader();
+        for (int offset = 0; offset < svndiff.length; offset += 1000) {
+            reader.nextWindow(svndiff, offset, Math.min(1000, svndiff.length - offset), "file", applier);
+        }
+        Assert.assertArrayEquals(target, applier.myTarget);
+
+        // windows of representations are read by the combiner.
+        final SVNDeltaCombiner combiner = new SVNDeltaCombiner();
+        final FSFile file = new FSFile(svndiff, 4, svndiff.length - 4);
+        try {
+            final SVNDiffWindow window = combiner.readWindow(file, 2);
+            final byte[] combinedTarget = new byte[target.length];
+            Assert.assertEquals(target.length, window.apply(source, combinedTarget));
+            Assert.assertArrayEquals(target, combinedTarget);
+        } finally {
+            file.close();
+        }
+    }
+
+    @Test
+    public void testChannelsLargerThanWindow() throws Exception {
+        final Random random = new Random(0);
+        final byte[] source = new byte[300 * 1024];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) ('a' + random.nextInt(4));
+        }
+        final byte[] target = createTarget(source, random);
+
+        final File sourceFile = SVNFileUtil.createTempFile("source", ".tmp");
+        final File targetFile = SVNFileUtil.createTempFile("target", ".tmp");
+        RandomAccessFile sourceRAFile = null;
+        RandomAccessFile targetRAFile = null;
+        try {
+            SVNFileUtil.writeToFile(sourceFile, source);
+            SVNFileUtil.writeToFile(targetFile, target);
+
+            final SVNDeltaGenerator generator = new SVNDeltaGenerator();
+            final WindowWriter streamWriter = new WindowWriter(0);
+            final String streamChecksum = generator.sendDelta("file", new ByteArrayInputStream(source), 0,
+                    new ByteArrayInputStream(target), streamWriter, true);
+
+            sourceRAFile = SVNFileUtil.openRAFileForReading(sourceFile);
+            targetRAFile = SVNFileUtil.openRAFileForReading(targetFile);
+            final WindowWriter channelWriter = new WindowWriter(0);
+            final String channelChecksum = generator.sendDelta("file", sourceRAFile.getChannel(), 0,
+                    targetRAFile.getChannel(), channelWriter, true);
+
+            Assert.assertEquals(SVNFileUtil.computeChecksum(targetFile), channelChecksum);
+            Assert.assertEquals(streamChecksum, channelChecksum);
+            Assert.assertArrayEquals(streamWriter.myOutput.toByteArray(), channelWriter.myOutput.toByteArray());
+            Assert.assertTrue(channelWriter.myWindowsCount > 1);
+        } finally {
+            SVNFileUtil.closeFile(sourceRAFile);
+            SVNFileUtil.closeFile(targetRAFile);
+            SVNFileUtil.deleteFile(sourceFile);
+            SVNFileUtil.deleteFile(targetFile);
+        }
+    }
+
+    @Test
+    public void testApplyToFileChannel() throws Exception {
+        final Random random = new Random(0);
+        final byte[] source = new byte[300 * 1024];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (byte) ('a' + random.nextInt(4));
+        }
+        final byte[] target = createTarget(source, random);
+
+        final File sourceFile = SVNFileUtil.createTempFile("source", ".tmp");
+        final File targetFile = SVNFileUtil.createTempFile("target", ".tmp");
+        try {
+            SVNFileUtil.writeToFile(sourceFile, source);
+            // the target file is truncated.
+            SVNFileUtil.writeToFile(targetFile, new byte[source.length * 2]);
+
+            final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+            processor.applyTextDelta(sourceFile, targetFile, true, true);
+            new SVNDeltaGenerator().sendDelta("file", source, source.length, 0, target, target.length, new WindowProcessor(processor));
+            final String checksum = processor.textDeltaEnd();
+            Assert.assertArrayEquals(target, SVNFileUtil.readFully(targetFile));
+            Assert.assertEquals(SVNFileUtil.computeChecksum(targetFile), checksum);
+            Assert.assertEquals(SVNFileUtil.toHexDigest(MessageDigest.getInstance("SHA1").digest(target)), processor.getSHA1Checksum());
+
+            // windows copying the source are transferred when no checksums are computed.
+            processor.applyTextDelta(sourceFile, targetFile, false, false);
+            new SVNDeltaGenerator().sendDelta("file", source, source.length, 0, source, source.length, new WindowProcessor(processor));
+            Assert.assertNull(processor.textDeltaEnd());
+            Assert.assertNull(processor.getSHA1Checksum());
+            Assert.assertArrayEquals(source, SVNFileUtil.readFully(targetFile));
+
+            processor.applyTextDelta(new ByteArrayInputStream(source), targetFile, false, true);
+            new SVNDeltaGenerator().sendDelta("file", source, source.length, 0, target, target.length, new WindowProcessor(processor));
+            Assert.assertNull(processor.textDeltaEnd());
+            Assert.assertEquals(SVNFileUtil.toHexDigest(MessageDigest.getInstance("SHA1").digest(target)), processor.getSHA1Checksum());
+            Assert.assertArrayEquals(target, SVNFileUtil.readFully(targetFile));
+        } finally {
+            SVNFileUtil.deleteFile(sourceFile);
+            SVNFileUtil.deleteFile(targetFile);
+        }
+    }
+
+    private static byte[] createTarget(byte[] source, Random random) {
+        final byte[] target = new byte[Math.max(source.length + 100, 200)];
+        int targetPosition = 0;
+        int sourcePosition = 0;
+        while (targetPosition < target.length) {
+            final int length = Math.min(random.nextInt(300) + 1, target.length - targetPosition);
+            if (random.nextBoolean() && sourcePosition + length <= source.length) {
+                System.arraycopy(source, sourcePosition, target, targetPosition, length);
+            } else {
+                for (int j = 0; j < length; j++) {
+                    target[targetPosition + j] = (byte) random.nextInt(256);
+                }
+            }
+            targetPosition += length;
+            sourcePosition += length;
+        }
+        return target;
+    }
+
+    private static class WindowWriter implements ISVNDeltaConsumer {
+
+        private final ByteArrayOutputStream myOutput = new ByteArrayOutputStream();
+        private final int myVersion;
+        private boolean myIsHeaderWritten;
+        private int myWindowsCount;
+
+        public WindowWriter(int version) {
+            myVersion = version;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            try {
+                diffWindow.writeTo(myOutput, !myIsHeaderWritten, myVersion);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            myIsHeaderWritten = true;
+            myWindowsCount++;
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+
+    private static class WindowProcessor implements ISVNDeltaConsumer {
+
+        private final SVNDeltaProcessor myProcessor;
+
+        public WindowProcessor(SVNDeltaProcessor processor) {
+            myProcessor = processor;
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            return myProcessor.textDeltaChunk(diffWindow);
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+
+    private static class WindowApplier implements ISVNDeltaConsumer {
+
+        private final byte[] mySource;
+        private final byte[] myTarget;
+
+        public WindowApplier(byte[] source, int targetLength) {
+            mySource = source;
+            myTarget = new byte[targetLength];
+        }
+
+        public void applyTextDelta(String path, String baseChecksum) throws SVNException {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+            Assert.assertEquals(myTarget.length, diffWindow.apply(mySource, myTarget));
+            return null;
+        }
+
+        public void textDeltaEnd(String path) throws SVNException {
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSEntry;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSFilePool;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
+
+public class FSCacheTest {
+
+    @Test
+    public void testEvictionBySize() throws Exception {
+        final FSCache<FSCacheKey, String> cache = new FSCache<FSCacheKey, String>("test", 100);
+        cache.put(new FSCacheKey("repos", 1, 0), "r1", 40);
+        cache.put(new FSCacheKey("repos", 2, 0), "r2", 40);
+
+        Assert.assertEquals("r1", cache.get(new FSCacheKey("repos", 1, 0)));
+
+        cache.put(new FSCacheKey("repos", 3, 0), "r3", 40);
+
+        Assert.assertNull(cache.get(new FSCacheKey("repos", 2, 0)));
+        Assert.assertEquals("r1", cache.get(new FSCacheKey("repos", 1, 0)));
+        Assert.assertEquals("r3", cache.get(new FSCacheKey("repos", 3, 0)));
+        Assert.assertNull(cache.get(new FSCacheKey("other", 3, 0)));
+
+        Assert.assertEquals(80, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+
+        cache.put(new FSCacheKey("repos", 4, 0), "too large", 101);
+        Assert.assertNull(cache.get(new FSCacheKey("repos", 4, 0)));
+    }
+
+    @Test
+    public void testNodeRevisionsAreShared() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testNodeRevisionsAreShared", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file");
+            commitBuilder.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            final FSCache<FSCacheKey, FSRevisionNode> cache = FSCacheManager.getNodeRevisionsCache();
+
+            final FSRevisionNode node = getNode(repositoryRoot, "/directory/file");
+            final long hitCount = cache.getHitCount();
+            final FSRevisionNode cachedNode = getNode(repositoryRoot, "/directory/file");
+
+            Assert.assertTrue(cache.getHitCount() > hitCount);
+            Assert.assertNotSame(node, cachedNode);
+            Assert.assertEquals(node.getId(), cachedNode.getId());
+            Assert.assertEquals(node.getFileMD5Checksum(), cachedNode.getFileMD5Checksum());
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDirContentsAreCopied() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testDirContentsAreCopied", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file");
+            commitBuilder.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            final FSCache<FSCacheKey, Map> cache = FSCacheManager.getDirContentsCache();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSRevisionNode node = getNode(repositoryRoot, "/directory");
+                final Map entries = fsfs.getDirContents(node);
+                entries.remove("file");
+
+                final long hitCount = cache.getHitCount();
+                final Map cachedEntries = fsfs.getDirContents(node);
+
+                Assert.assertTrue(cache.getHitCount() > hitCount);
+                Assert.assertEquals(1, cachedEntries.size());
+                Assert.assertEquals("file", ((FSEntry) cachedEntries.get("file")).getName());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testFulltextsAreCached() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testFulltextsAreCached", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file", "line1\nline2\n".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("file", "line1\nline2\nline3\n".getBytes());
+            commitBuilder2.commit();
+
+            final FSCache<String, byte[]> cache = FSCacheManager.getFulltextsCache();
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                Assert.assertEquals("line1\nline2\nline3\n", readFile(fsfs, 2, "/file"));
+                final long hitCount = cache.getHitCount();
+                Assert.assertEquals("line1\nline2\nline3\n", readFile(fsfs, 2, "/file"));
+                Assert.assertEquals(hitCount + 1, cache.getHitCount());
+                Assert.assertEquals("line1\nline2\n", readFile(fsfs, 1, "/file"));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexKeysOfPackAndRevisionFilesDiffer() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testIndexKeysOfPackAndRevisionFilesDiffer", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final File revisionFile = new File(fsfs.getDBRevsDir(), "0/0");
+                final File packFile = new File(fsfs.getDBRevsDir(), "0.pack/" + FSFS.PACK_KIND_PACK);
+
+                final FSCacheKey revisionKey = new FSLogicalAddressingIndex(fsfs, new FSFile(revisionFile)).createCacheKey(0, 0);
+                final FSCacheKey packKey0 = new FSLogicalAddressingIndex(fsfs, new FSFile(packFile)).createCacheKey(0, 0);
+                final FSCacheKey packKey1 = new FSLogicalAddressingIndex(fsfs, new FSFile(packFile)).createCacheKey(1, 0);
+
+                Assert.assertFalse(revisionKey.equals(packKey0));
+                // revision 1 is not packed yet, but its index is read from the pack file.
+                Assert.assertEquals(packKey0, packKey1);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testPooledFileIsNotReusedAfterReplacement() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testPooledFileIsNotReusedAfterReplacement", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final File file = new File(fsfs.getDBRoot(), "pooled");
+                TestUtil.writeFileContentsString(file, "old\n");
+
+                FSFile fsFile = FSFilePool.openFile(fsfs, file);
+                Assert.assertEquals("old", fsFile.readLine(80));
+                fsFile.close();
+
+                Assert.assertTrue(file.delete());
+                TestUtil.writeFileContentsString(file, "new contents\n");
+
+                fsFile = FSFilePool.openFile(fsfs, file);
+                Assert.assertEquals("new contents", fsFile.readLine(80));
+                fsFile.close();
+            } finally {
+                fsfs.close();
+                FSFilePool.clear();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String readFile(FSFS fsfs, long revision, String path) throws Exception {
+        final InputStream inputStream = fsfs.createRevisionRoot(revision).getFileStreamForPath(new SVNDeltaCombiner(), path);
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[3];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+            return new String(outputStream.toByteArray(), "UTF-8");
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private FSRevisionNode getNode(File repositoryRoot, String path) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            final FSRevisionRoot root = fsfs.createRevisionRoot(1);
+            return root.getRevisionNode(path);
+        } finally {
+            fsfs.close();
+        }
+    }
+}
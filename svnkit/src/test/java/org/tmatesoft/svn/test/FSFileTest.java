@@ -5,6 +5,7 @@ import org.junit.Test;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSMappedFile;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSPackedNumbersStream;
 
 import java.io.File;
@@ -53,6 +54,49 @@ public class FSFileTest {
         }
     }
 
+    @Test
+    public void testParseMappedFile() throws Exception {
+        final String content =
+                "K 10\n" +
+                        "svn:author\n" +
+                        "V 8\n" +
+                        "username\n" +
+                        "K 7\n" +
+                        "svn:log\n" +
+                        "V 7\n" +
+                        "Trunk.\n" +
+                        "\n" +
+                        "END\n";
+
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testParseMappedFile", options);
+        try {
+            final File directory = sandbox.createDirectory("directory");
+            final File fsFile = new File(directory, "fsfile");
+            TestUtil.writeFileContentsString(fsFile, content);
+
+            final FSMappedFile mappedFile = FSMappedFile.getMappedFile(fsFile);
+            Assert.assertSame(mappedFile, FSMappedFile.getMappedFile(fsFile));
+
+            final FSFile file = new FSFile(mappedFile);
+            final SVNProperties properties = file.readProperties(false, true);
+            Assert.assertEquals("Trunk.\n", properties.getStringValue(SVNRevisionProperty.LOG));
+            Assert.assertEquals("username", properties.getStringValue(SVNRevisionProperty.AUTHOR));
+            Assert.assertEquals(content.length(), file.position());
+            Assert.assertEquals(-1, file.read());
+
+            final FSFile anotherFile = new FSFile(mappedFile);
+            anotherFile.seek(5);
+            Assert.assertEquals("svn:author", anotherFile.readLine(80));
+
+            FSMappedFile.releaseDirectory(directory);
+            Assert.assertNull(FSMappedFile.getMappedFile(new File(directory, "missing")));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
     @Test
     public void testParseByteArray() throws Exception {
         final String content =
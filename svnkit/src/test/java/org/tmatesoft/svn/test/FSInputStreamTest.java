@@ -0,0 +1,123 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSWindowPrefetcher;
+
+public class FSInputStreamTest {
+
+    @Test
+    public void testParallelReconstruction() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testParallelReconstruction", options);
+        final boolean wasEnabled = FSWindowPrefetcher.isEnabled();
+        final long minSize = FSWindowPrefetcher.getMinSize();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final byte[][] contents = commitFileRevisions(url, 5);
+
+            FSWindowPrefetcher.setEnabled(true);
+            FSWindowPrefetcher.setMinSize(0);
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                for (int i = 0; i < contents.length; i++) {
+                    Assert.assertArrayEquals(contents[i], readFile(fsfs, i + 1, "/file"));
+                }
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSWindowPrefetcher.setEnabled(wasEnabled);
+            FSWindowPrefetcher.setMinSize(minSize);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCloseKeepsInterruptedStatus() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testCloseKeepsInterruptedStatus", options);
+        final boolean wasEnabled = FSWindowPrefetcher.isEnabled();
+        final long minSize = FSWindowPrefetcher.getMinSize();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final byte[][] contents = commitFileRevisions(url, 3);
+
+            FSWindowPrefetcher.setEnabled(true);
+            FSWindowPrefetcher.setMinSize(0);
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            try {
+                final InputStream inputStream = fsfs.createRevisionRoot(3).getFileStreamForPath(new SVNDeltaCombiner(), "/file");
+                final byte[] buffer = new byte[8192];
+                Assert.assertEquals(buffer.length, inputStream.read(buffer));
+                Thread.currentThread().interrupt();
+                try {
+                    inputStream.close();
+                } finally {
+                    // prefetching waits for the running reads, but does not swallow the interruption.
+                    Assert.assertTrue(Thread.interrupted());
+                }
+                Assert.assertArrayEquals(contents[2], readFile(fsfs, 3, "/file"));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSWindowPrefetcher.setEnabled(wasEnabled);
+            FSWindowPrefetcher.setMinSize(minSize);
+            sandbox.dispose();
+        }
+    }
+
+    private byte[][] commitFileRevisions(SVNURL url, int count) throws Exception {
+        // larger than the fulltext cache item limit and than a single svndiff window
+        final byte[][] contents = new byte[count][];
+        contents[0] = new byte[1536 * 1024];
+        new Random(0).nextBytes(contents[0]);
+        for (int i = 1; i < contents.length; i++) {
+            contents[i] = contents[i - 1].clone();
+            for (int j = 0; j < 16; j++) {
+                contents[i][(j * 97 * 1024 + i * 13) % contents[i].length] ^= 0x5A;
+            }
+        }
+
+        final CommitBuilder addBuilder = new CommitBuilder(url);
+        addBuilder.addFile("file", contents[0]);
+        addBuilder.commit();
+        for (int i = 1; i < contents.length; i++) {
+            final CommitBuilder changeBuilder = new CommitBuilder(url);
+            changeBuilder.changeFile("file", contents[i]);
+            changeBuilder.commit();
+        }
+        return contents;
+    }
+
+    private byte[] readFile(FSFS fsfs, long revision, String path) throws Exception {
+        final InputStream inputStream = fsfs.createRevisionRoot(revision).getFileStreamForPath(new SVNDeltaCombiner(), path);
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSEntry;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSIndexedNodeHistory;
+import org.tmatesoft.svn.core.internal.io.fs.FSNodeHistory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.SVNFileRevision;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+
+public class FSPathHistoryIndexTest {
+
+    @Test
+    public void testIndexedHistoryMatchesNodeHistory() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testIndexedHistoryMatchesNodeHistory", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/a/f1");
+            commitBuilder1.addFile("trunk/a/b/f2");
+            commitBuilder1.addFile("trunk/c/f3");
+            commitBuilder1.addDirectory("branches");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/a/f1", "f1 r2".getBytes());
+            commitBuilder2.commit();
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addDirectoryByCopying("branches/br", "trunk");
+            commitBuilder3.commit();
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/br/a/b/f2", "f2 r4 branch".getBytes());
+            commitBuilder4.changeFile("trunk/a/b/f2", "f2 r4 trunk".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.delete("trunk/c");
+            commitBuilder5.changeFile("trunk/a/f1", "f1 r5".getBytes());
+            commitBuilder5.commit();
+
+            new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildPathHistoryIndex(repositoryRoot);
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.addDirectoryByCopying("trunk/a2", "branches/br/a", 4);
+            commitBuilder6.commit();
+
+            final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+            commitBuilder7.replaceDirectoryByCopying("trunk/a/b", "branches/br/a/b");
+            commitBuilder7.commit();
+
+            final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+            commitBuilder8.addFile("trunk/c/f3", "new f3".getBytes());
+            commitBuilder8.commit();
+
+            final CommitBuilder commitBuilder9 = new CommitBuilder(url);
+            commitBuilder9.changeFile("trunk/a/b/f2", "f2 r9".getBytes());
+            commitBuilder9.setDirectoryProperty("trunk/a", "name", SVNPropertyValue.create("value"));
+            commitBuilder9.commit();
+
+            final CommitBuilder commitBuilder10 = new CommitBuilder(url);
+            commitBuilder10.replaceFileByCopying("trunk/a/f1", "trunk/a/f1", 2);
+            commitBuilder10.changeFile("branches/br/c/f3", "f3 r10".getBytes());
+            commitBuilder10.commit();
+
+            final File indexFile = new File(repositoryRoot, "db/path-history.db");
+            final File movedIndexFile = new File(repositoryRoot, "db/path-history.db.moved");
+            Assert.assertTrue(indexFile.isFile());
+
+            Assert.assertTrue(indexFile.renameTo(movedIndexFile));
+            final List<String> expected = collectHistories(repositoryRoot);
+            Assert.assertTrue(movedIndexFile.renameTo(indexFile));
+            final List<String> actual = collectHistories(repositoryRoot);
+
+            Assert.assertEquals(expected, actual);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                Assert.assertTrue(fsfs.createRevisionRoot(10).getNodeHistory("/trunk/a/f1") instanceof FSIndexedNodeHistory);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexedMergeInfoChangesMatchProperties() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testIndexedMergeInfoChangesMatchProperties", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/f", "f r1".getBytes());
+            commitBuilder1.addDirectory("branches");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addDirectoryByCopying("branches/b", "trunk");
+            commitBuilder2.commit();
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.changeFile("branches/b/f", "f r3".getBytes());
+            commitBuilder3.commit();
+
+            new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildPathHistoryIndex(repositoryRoot);
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/b/f", "f r4".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.changeFile("trunk/f", "f r4".getBytes());
+            commitBuilder5.setDirectoryProperty("trunk", SVNProperty.MERGE_INFO, SVNPropertyValue.create("/branches/b:3-4"));
+            commitBuilder5.commit();
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.changeFile("branches/b/f", "f r6".getBytes());
+            commitBuilder6.commit();
+
+            final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+            commitBuilder7.changeFile("trunk/f", "f r6".getBytes());
+            commitBuilder7.setFileProperty("trunk/f", SVNProperty.MERGE_INFO, SVNPropertyValue.create("/branches/b/f:3-4,6"));
+            commitBuilder7.commit();
+
+            final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+            commitBuilder8.setDirectoryProperty("trunk", SVNProperty.MERGE_INFO, SVNPropertyValue.create("/branches/b:3-4,6"));
+            commitBuilder8.commit();
+
+            final File indexFile = new File(repositoryRoot, "db/path-history.db");
+            final File movedIndexFile = new File(repositoryRoot, "db/path-history.db.moved");
+
+            Assert.assertTrue(indexFile.renameTo(movedIndexFile));
+            final List<String> expected = collectMergeHistory(url);
+            Assert.assertTrue(movedIndexFile.renameTo(indexFile));
+            final List<String> actual = collectMergeHistory(url);
+
+            Assert.assertEquals(expected, actual);
+            Assert.assertTrue(actual.contains("log /trunk 3 merged"));
+            Assert.assertTrue(actual.contains("blame 6 /branches/b/f merged"));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexCatchesUpWithRevisionsCommittedWithoutIt() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testIndexCatchesUpWithRevisionsCommittedWithoutIt", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final File repositoryRoot = new File(url.getPath());
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/f1");
+            commitBuilder1.commit();
+
+            new SVNAdminClient((ISVNAuthenticationManager) null, null).doBuildPathHistoryIndex(repositoryRoot);
+
+            final File indexFile = new File(repositoryRoot, "db/path-history.db");
+            final File movedIndexFile = new File(repositoryRoot, "db/path-history.db.moved");
+            Assert.assertTrue(indexFile.renameTo(movedIndexFile));
+            for (int i = 2; i < 5; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("trunk/f" + i);
+                commitBuilder.commit();
+            }
+            Assert.assertTrue(movedIndexFile.renameTo(indexFile));
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                Assert.assertEquals(1, fsfs.getPathHistoryIndex().getIndexedRevision());
+            } finally {
+                fsfs.close();
+            }
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.delete("trunk/f2");
+            commitBuilder5.commit();
+
+            final FSFS updatedFsfs = new FSFS(repositoryRoot);
+            updatedFsfs.open();
+            try {
+                Assert.assertEquals(5, updatedFsfs.getPathHistoryIndex().getIndexedRevision());
+                Assert.assertEquals(5, updatedFsfs.getDeletedRevision("/trunk/f2", 2, 5));
+                Assert.assertEquals(SVNRepository.INVALID_REVISION, updatedFsfs.getDeletedRevision("/trunk/f3", 3, 5));
+            } finally {
+                updatedFsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private List<String> collectMergeHistory(SVNURL url) throws Exception {
+        final List<String> history = new ArrayList<String>();
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            final String[] paths = new String[] {"/trunk", "/trunk/f"};
+            for (final String path : paths) {
+                repository.log(new String[] {path}, -1, 0, false, false, 0, true, null, new ISVNLogEntryHandler() {
+                    private int myDepth;
+
+                    public void handleLogEntry(SVNLogEntry logEntry) throws SVNException {
+                        if (logEntry.getRevision() < 0) {
+                            myDepth--;
+                            return;
+                        }
+                        history.add("log " + path + " " + logEntry.getRevision() + (myDepth > 0 ? " merged" : "") +
+                                (logEntry.isSubtractiveMerge() ? " subtractive" : ""));
+                        if (logEntry.hasChildren()) {
+                            myDepth++;
+                        }
+                    }
+                });
+            }
+            repository.getFileRevisions("/trunk/f", 0, -1, true, new ISVNFileRevisionHandler() {
+                public void openRevision(SVNFileRevision fileRevision) {
+                    history.add("blame " + fileRevision.getRevision() + " " + fileRevision.getPath() + (fileRevision.isResultOfMerge() ? " merged" : ""));
+                }
+
+                public void closeRevision(String token) {
+                }
+
+                public void applyTextDelta(String path, String baseChecksum) {
+                }
+
+                public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                    return null;
+                }
+
+                public void textDeltaEnd(String path) {
+                }
+            });
+        } finally {
+            repository.closeSession();
+        }
+        return history;
+    }
+
+    private List<String> collectHistories(File repositoryRoot) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            final long youngestRevision = fsfs.getYoungestRevision();
+            final List<String> histories = new ArrayList<String>();
+            for (long revision = 1; revision <= youngestRevision; revision++) {
+                final FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+                final List<String> paths = new ArrayList<String>();
+                collectPaths(fsfs, root, "/", paths);
+                for (String path : paths) {
+                    histories.add(path + "@" + revision + " " + getHistory(root, path, true) + " " + getHistory(root, path, false) +
+                            " deleted at " + fsfs.getDeletedRevision(path, revision, youngestRevision));
+                }
+            }
+            return histories;
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void collectPaths(FSFS fsfs, FSRevisionRoot root, String path, List<String> paths) throws Exception {
+        final FSRevisionNode node = root.getRevisionNode(path);
+        if (node.getType() != SVNNodeKind.DIR) {
+            return;
+        }
+        final Map entries = node.getDirEntries(fsfs);
+        for (Iterator names = entries.keySet().iterator(); names.hasNext();) {
+            final FSEntry entry = (FSEntry) entries.get(names.next());
+            final String childPath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(path, entry.getName()));
+            paths.add(childPath);
+            collectPaths(fsfs, root, childPath, paths);
+        }
+    }
+
+    private String getHistory(FSRevisionRoot root, String path, boolean crossCopies) throws Exception {
+        final StringBuilder history = new StringBuilder();
+        FSNodeHistory nodeHistory = root.getNodeHistory(path);
+        while ((nodeHistory = nodeHistory.getPreviousHistory(crossCopies)) != null) {
+            history.append(nodeHistory.getHistoryEntry().getPath()).append('@').append(nodeHistory.getHistoryEntry().getRevision()).append(' ');
+        }
+        return history.toString();
+    }
+}
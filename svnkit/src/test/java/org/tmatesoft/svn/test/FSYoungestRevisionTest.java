@@ -0,0 +1,199 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSYoungestRevisionWatcher;
+import org.tmatesoft.svn.core.internal.io.fs.IFSYoungestRevisionListener;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSYoungestRevisionTest {
+
+    @Test
+    public void testListenerIsNotifiedOfCommits() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testListenerIsNotifiedOfCommits", options);
+        final long ttl = FSYoungestRevisionWatcher.getTTL();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSYoungestRevisionWatcher.setTTL(60000);
+
+            final FSFS fsfs = new FSFS(new File(url.getPath()));
+            fsfs.open();
+            final List<Long> revisions = new ArrayList<Long>();
+            final IFSYoungestRevisionListener listener = new IFSYoungestRevisionListener() {
+                public void youngestRevisionChanged(File repositoryRoot, long previousRevision, long youngestRevision) {
+                    revisions.add(youngestRevision);
+                }
+            };
+            try {
+                Assert.assertEquals(0, fsfs.getYoungestRevision());
+                fsfs.addYoungestRevisionListener(listener);
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file");
+                commitBuilder.commit();
+
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+                Assert.assertEquals(1, revisions.size());
+                Assert.assertEquals(1, revisions.get(0).longValue());
+            } finally {
+                fsfs.removeYoungestRevisionListener(listener);
+                fsfs.close();
+            }
+        } finally {
+            FSYoungestRevisionWatcher.setTTL(ttl);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCommitAfterCommitOfOtherProcess() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testCommitAfterCommitOfOtherProcess", options);
+        final long ttl = FSYoungestRevisionWatcher.getTTL();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSYoungestRevisionWatcher.setTTL(60000);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1");
+            commitBuilder1.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+            } finally {
+                fsfs.close();
+            }
+
+            commitSecondRevisionAsOtherProcess(sandbox, repositoryRoot);
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addFile("file3");
+            final SVNCommitInfo commitInfo = commitBuilder3.commit();
+            Assert.assertEquals(3, commitInfo.getNewRevision());
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                Assert.assertEquals("other process", svnRepository.getRevisionPropertyValue(2, "svn:log").getString());
+                Assert.assertEquals(3, svnRepository.getLatestRevision());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSYoungestRevisionWatcher.setTTL(ttl);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRevisionOfOtherProcessExists() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testRevisionOfOtherProcessExists", options);
+        final long ttl = FSYoungestRevisionWatcher.getTTL();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSYoungestRevisionWatcher.setTTL(60000);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1");
+            commitBuilder1.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+
+                commitSecondRevisionAsOtherProcess(sandbox, repositoryRoot);
+
+                Assert.assertEquals("other process", fsfs.getRevisionProperties(2).getStringValue("svn:log"));
+                Assert.assertNotNull(fsfs.createRevisionRoot(2).getRevisionNode("/file2"));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSYoungestRevisionWatcher.setTTL(ttl);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testYoungestRevisionNeverDecreases() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testYoungestRevisionNeverDecreases", options);
+        final long ttl = FSYoungestRevisionWatcher.getTTL();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSYoungestRevisionWatcher.setTTL(60000);
+
+            final File repositoryRoot = new File(url.getPath());
+            final File currentFile = new File(repositoryRoot, "db/current");
+            final File oldCurrentFile = new File(repositoryRoot, "db/current.old");
+            SVNFileUtil.copyFile(currentFile, oldCurrentFile, false);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            final List<Long> revisions = new ArrayList<Long>();
+            final IFSYoungestRevisionListener listener = new IFSYoungestRevisionListener() {
+                public void youngestRevisionChanged(File repositoryRoot, long previousRevision, long youngestRevision) {
+                    revisions.add(youngestRevision);
+                }
+            };
+            try {
+                fsfs.addYoungestRevisionListener(listener);
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file");
+                commitBuilder.commit();
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+
+                // as if db/current was read just before the commit.
+                SVNFileUtil.copyFile(oldCurrentFile, currentFile, false);
+                Assert.assertEquals(0, fsfs.readYoungestRevision());
+
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+                Assert.assertEquals(1, revisions.size());
+                Assert.assertEquals(1, revisions.get(0).longValue());
+            } finally {
+                fsfs.removeYoungestRevisionListener(listener);
+                fsfs.close();
+            }
+        } finally {
+            FSYoungestRevisionWatcher.setTTL(ttl);
+            sandbox.dispose();
+        }
+    }
+
+    private void commitSecondRevisionAsOtherProcess(Sandbox sandbox, File repositoryRoot) throws Exception {
+        // commit r2 to a copy of the repository and put its files in place, as another process would.
+        final File copyRoot = sandbox.createDirectory("copy");
+        SVNFileUtil.copyDirectory(repositoryRoot, copyRoot, true, null);
+        final CommitBuilder commitBuilder2 = new CommitBuilder(SVNURL.fromFile(copyRoot));
+        commitBuilder2.setCommitMessage("other process");
+        commitBuilder2.addFile("file2");
+        commitBuilder2.commit();
+        final String[] paths = {"db/revs/0/2", "db/revprops/0/2", "db/txn-current", "db/current"};
+        for (String path : paths) {
+            final File copied = new File(copyRoot, path);
+            if (copied.exists()) {
+                SVNFileUtil.copyFile(copied, new File(repositoryRoot, path), false);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFileRevisionsFinder;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.SVNFileRevision;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class FileRevisionsTest {
+
+    @Test
+    public void testPrefetchedFileRevisions() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testPrefetchedFileRevisions", options);
+        final int prefetchCount = FSFileRevisionsFinder.getPrefetchCount();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final StringBuilder contents = new StringBuilder();
+            for (int i = 0; i < 20; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                contents.append("line ").append(i).append('\n');
+                if (i == 0) {
+                    commitBuilder.addFile("file", contents.toString().getBytes());
+                } else if (i % 5 == 0) {
+                    commitBuilder.setFileProperty("file", "prop", SVNPropertyValue.create("value" + i));
+                } else {
+                    commitBuilder.changeFile("file", contents.toString().getBytes());
+                }
+                commitBuilder.commit();
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                FSFileRevisionsFinder.setPrefetchCount(0);
+                final List<String> expectedRevisions = collectFileRevisions(svnRepository);
+
+                FSFileRevisionsFinder.setPrefetchCount(3);
+                final List<String> fileRevisions = collectFileRevisions(svnRepository);
+
+                Assert.assertEquals(20, fileRevisions.size());
+                Assert.assertEquals(expectedRevisions, fileRevisions);
+
+                // all file revisions requests share the same prefetch threads.
+                final Set<String> threadPools = TestUtil.getSVNKitThreadPools();
+                for (int i = 0; i < 5; i++) {
+                    Assert.assertEquals(expectedRevisions, collectFileRevisions(svnRepository));
+                }
+                final Set<String> newThreadPools = TestUtil.getSVNKitThreadPools();
+                newThreadPools.removeAll(threadPools);
+                Assert.assertTrue(newThreadPools.toString(), newThreadPools.isEmpty());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSFileRevisionsFinder.setPrefetchCount(prefetchCount);
+            sandbox.dispose();
+        }
+    }
+
+    private List<String> collectFileRevisions(SVNRepository svnRepository) throws SVNException {
+        final List<String> fileRevisions = new ArrayList<String>();
+        svnRepository.getFileRevisions("file", 0, -1, false, new ISVNFileRevisionHandler() {
+            private final SVNDeltaProcessor myDeltaProcessor = new SVNDeltaProcessor();
+            private ByteArrayOutputStream myBase = new ByteArrayOutputStream();
+            private ByteArrayOutputStream myTarget;
+            private String myRevision;
+
+            public void openRevision(SVNFileRevision fileRevision) {
+                myRevision = fileRevision.getRevision() + " " + fileRevision.getPath() + " " + fileRevision.getPropertiesDelta();
+                myTarget = null;
+            }
+
+            public void applyTextDelta(String path, String baseChecksum) {
+                myTarget = new ByteArrayOutputStream();
+                myDeltaProcessor.applyTextDelta(new ByteArrayInputStream(myBase.toByteArray()), myTarget, false);
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                return myDeltaProcessor.textDeltaChunk(diffWindow);
+            }
+
+            public void textDeltaEnd(String path) {
+                myDeltaProcessor.textDeltaEnd();
+                myBase = myTarget;
+            }
+
+            public void closeRevision(String token) {
+                fileRevisions.add(myRevision + (myTarget != null ? " " + new String(myTarget.toByteArray()) : ""));
+            }
+        });
+        return fileRevisions;
+    }
+}
@@ -5,19 +5,35 @@ import org.junit.Assume;
 import org.junit.Test;
 import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
 import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSHookEvent;
+import org.tmatesoft.svn.core.internal.io.fs.FSHooks;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.IFSHook;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 import org.tmatesoft.svn.core.wc2.SvnSetLock;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryCreate;
+import org.tmatesoft.svn.util.SVNLogType;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class HookTest {
 
@@ -111,6 +127,181 @@ public class HookTest {
         }
     }
 
+    @Test
+    public void testJavaHooks() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testJavaHooks", options);
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final Set<String> postCommitPools = Collections.synchronizedSet(new HashSet<String>());
+        final IFSHook hook = new IFSHook() {
+            public boolean isEnabled(String hookName) {
+                return !FSHooks.SVN_REPOS_HOOK_START_COMMIT.equals(hookName);
+            }
+
+            public String run(FSHookEvent event) throws SVNException {
+                if (FSHooks.SVN_REPOS_HOOK_PRE_REVPROP_CHANGE.equals(event.getHookName()) && "blocked".equals(event.getPropertyName())) {
+                    SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "blocked property"), SVNLogType.FSFS);
+                }
+                if (FSHooks.SVN_REPOS_HOOK_POST_COMMIT.equals(event.getHookName())) {
+                    final String threadName = Thread.currentThread().getName();
+                    postCommitPools.add(threadName.substring(0, Math.max(0, threadName.indexOf("-svnkit-thread-"))));
+                }
+                events.add(event.getHookName() + (event.getRevision() >= 0 ? " " + event.getRevision() : "") +
+                        (event.getPropertyName() != null ? " " + event.getPropertyName() + " " + event.getAction() : ""));
+                return null;
+            }
+        };
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSRepositoryFactory.registerHook(hook);
+
+            for (int i = 0; i < 3; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+            FSHooks.waitForPostCommitHooks(new File(url.getPath()));
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                svnRepository.setRevisionPropertyValue(2, "allowed", SVNPropertyValue.create("value"));
+                try {
+                    svnRepository.setRevisionPropertyValue(2, "blocked", SVNPropertyValue.create("value"));
+                    Assert.fail("An exception should be thrown");
+                } catch (SVNException e) {
+                    //expected
+                    Assert.assertEquals(SVNErrorCode.REPOS_HOOK_FAILURE, e.getErrorMessage().getErrorCode());
+                }
+                Assert.assertEquals("value", SVNPropertyValue.getPropertyAsString(svnRepository.getRevisionPropertyValue(2, "allowed")));
+                Assert.assertNull(svnRepository.getRevisionPropertyValue(2, "blocked"));
+            } finally {
+                svnRepository.closeSession();
+            }
+
+            Assert.assertEquals(Arrays.asList(
+                    "pre-commit", "post-commit 1",
+                    "pre-commit", "post-commit 2",
+                    "pre-commit", "post-commit 3",
+                    "pre-revprop-change 2 allowed A", "post-revprop-change 2 allowed A"), removePreCommitReordering(events));
+            // post-commit hooks of all commits are run by the same pool.
+            Assert.assertEquals(1, postCommitPools.size());
+        } finally {
+            FSRepositoryFactory.unregisterHook(hook);
+            sandbox.dispose();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPostCommitHooksAreRunAfterHookError() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPostCommitHooksAreRunAfterHookError", options);
+        final List<Long> revisions = Collections.synchronizedList(new ArrayList<Long>());
+        final IFSHook hook = new IFSHook() {
+            public boolean isEnabled(String hookName) {
+                return FSHooks.SVN_REPOS_HOOK_POST_COMMIT.equals(hookName);
+            }
+
+            public String run(FSHookEvent event) throws SVNException {
+                if (event.getRevision() == 1) {
+                    throw new AssertionError("post-commit hook error");
+                }
+                revisions.add(event.getRevision());
+                return null;
+            }
+        };
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSRepositoryFactory.registerHook(hook);
+
+            for (int i = 0; i < 3; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+                FSHooks.waitForPostCommitHooks(new File(url.getPath()));
+            }
+
+            Assert.assertEquals(Arrays.asList(2L, 3L), revisions);
+        } finally {
+            FSRepositoryFactory.unregisterHook(hook);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testPostCommitHooksOfConcurrentCommitsAreRunInOrder() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPostCommitHooksOfConcurrentCommitsAreRunInOrder", options);
+        final List<Long> revisions = Collections.synchronizedList(new ArrayList<Long>());
+        final IFSHook hook = new IFSHook() {
+            public boolean isEnabled(String hookName) {
+                return FSHooks.SVN_REPOS_HOOK_POST_COMMIT.equals(hookName);
+            }
+
+            public String run(FSHookEvent event) throws SVNException {
+                revisions.add(event.getRevision());
+                return null;
+            }
+        };
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            FSRepositoryFactory.registerHook(hook);
+
+            final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+            final Thread[] threads = new Thread[4];
+            for (int i = 0; i < threads.length; i++) {
+                final String directory = "directory" + i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int j = 0; j < 5; j++) {
+                                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                                commitBuilder.addFile(directory + "/file" + j);
+                                commitBuilder.commit();
+                            }
+                        } catch (Throwable th) {
+                            errors.add(th);
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            FSHooks.waitForPostCommitHooks(new File(url.getPath()));
+
+            Assert.assertTrue(errors.toString(), errors.isEmpty());
+            final List<Long> expected = new ArrayList<Long>();
+            for (long revision = 1; revision <= 20; revision++) {
+                expected.add(revision);
+            }
+            Assert.assertEquals(expected, revisions);
+        } finally {
+            FSRepositoryFactory.unregisterHook(hook);
+            sandbox.dispose();
+        }
+    }
+
+    private List<String> removePreCommitReordering(List<String> events) {
+        // post-commit hooks are asynchronous, they may be run after the next pre-commit.
+        final List<String> preCommits = new ArrayList<String>();
+        final List<String> others = new ArrayList<String>();
+        for (String event : events) {
+            (event.startsWith("pre-commit") ? preCommits : others).add(event);
+        }
+        final List<String> result = new ArrayList<String>();
+        for (String event : others) {
+            if (event.startsWith("post-commit")) {
+                result.add(preCommits.remove(0));
+            }
+            result.add(event);
+        }
+        return result;
+    }
+
     private String getTestName() {
         return "HookTest";
     }
@@ -3,6 +3,7 @@ package org.tmatesoft.svn.test;
 import org.junit.Assert;
 import org.junit.Test;
 import org.tmatesoft.svn.core.*;
+import org.tmatesoft.svn.core.internal.io.fs.FSLog;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
@@ -18,6 +19,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 public class LogTest {
 
@@ -106,6 +108,56 @@ public class LogTest {
         }
     }
 
+    @Test
+    public void testPrefetchedLogEntries() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPrefetchedLogEntries", options);
+        final int prefetchCount = FSLog.getPrefetchCount();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            for (int i = 0; i < 10; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                FSLog.setPrefetchCount(0);
+                final List<SVNLogEntry> expectedEntries = new ArrayList<SVNLogEntry>(svnRepository.log(new String[]{""}, null, 10, 1, true, true));
+                final List<SVNLogEntry> expectedFileEntries = new ArrayList<SVNLogEntry>(svnRepository.log(new String[]{"file5"}, null, 1, 10, true, true));
+
+                FSLog.setPrefetchCount(3);
+                final List<SVNLogEntry> logEntries = new ArrayList<SVNLogEntry>(svnRepository.log(new String[]{""}, null, 10, 1, true, true));
+                final List<SVNLogEntry> fileLogEntries = new ArrayList<SVNLogEntry>(svnRepository.log(new String[]{"file5"}, null, 1, 10, true, true));
+
+                Assert.assertEquals(10, logEntries.size());
+                Assert.assertEquals(expectedEntries.toString(), logEntries.toString());
+                Assert.assertEquals(expectedFileEntries.toString(), fileLogEntries.toString());
+                for (int i = 0; i < logEntries.size(); i++) {
+                    Assert.assertEquals(10 - i, logEntries.get(i).getRevision());
+                    Assert.assertEquals(expectedEntries.get(i).getChangedPaths().keySet(), logEntries.get(i).getChangedPaths().keySet());
+                }
+
+                // all log requests share the same prefetch threads.
+                final Set<String> threadPools = TestUtil.getSVNKitThreadPools();
+                for (int i = 0; i < 5; i++) {
+                    svnRepository.log(new String[]{""}, null, 10, 1, true, true);
+                }
+                final Set<String> newThreadPools = TestUtil.getSVNKitThreadPools();
+                newThreadPools.removeAll(threadPools);
+                Assert.assertTrue(newThreadPools.toString(), newThreadPools.size() <= 1);
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSLog.setPrefetchCount(prefetchCount);
+            sandbox.dispose();
+        }
+    }
+
     private String getTestName() {
         return getClass().getSimpleName();
     }
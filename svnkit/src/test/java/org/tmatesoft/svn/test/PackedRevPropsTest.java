@@ -206,6 +206,45 @@ public class PackedRevPropsTest {
         }
     }
 
+    @Test
+    public void testCachedPackedRevPropsAreInvalidated() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCachedPackedRevPropsAreInvalidated", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            updateCompressedFlag(repositoryRoot, true);
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            for (int i = 0; i < 20; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                new FSPacker(null).pack(fsfs);
+                fsfs.updateMinUnpackedRevProp();
+
+                final long generation = fsfs.getRevPropGeneration();
+                Assert.assertNull(fsfs.getRevisionProperties(5).getStringValue("test"));
+                fsfs.getRevisionProperties(5).put("test", "modified copy");
+                Assert.assertNull(fsfs.getRevisionProperties(5).getStringValue("test"));
+
+                fsfs.setRevisionProperty(5, "test", SVNPropertyValue.create("value"));
+                Assert.assertEquals(generation + 2, fsfs.getRevPropGeneration());
+                Assert.assertEquals("value", fsfs.getRevisionProperties(5).getStringValue("test"));
+                Assert.assertNull(fsfs.getRevisionProperties(6).getStringValue("test"));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
     private void updateCompressedFlag(File repositoryRoot, boolean compressed) throws SVNException {
         final FSFS fsfs = new FSFS(repositoryRoot);
         fsfs.open();
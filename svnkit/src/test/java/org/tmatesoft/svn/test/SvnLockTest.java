@@ -2,7 +2,11 @@ package org.tmatesoft.svn.test;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -10,12 +14,21 @@ import junit.framework.Assert;
 import org.junit.Test;
 import org.tmatesoft.svn.core.*;
 import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSHookEvent;
+import org.tmatesoft.svn.core.internal.io.fs.FSHooks;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.IFSHook;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileListUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
 import org.tmatesoft.svn.core.wc2.*;
+import org.tmatesoft.svn.util.SVNLogType;
 
 public class SvnLockTest {
     
@@ -153,6 +166,247 @@ public class SvnLockTest {
         }
     }
 
+    @Test
+    public void testLockDatabase() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLockDatabase", options);
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file1");
+            commitBuilder.addFile("directory/file2");
+            commitBuilder.addFile("directory/subdirectory/file3");
+            commitBuilder.addFile("directory2/file4");
+            commitBuilder.commit();
+
+            final File repositoryRoot = new File(url.getPath());
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            final File locksDirectory = fsfs.getDBLocksDir();
+            final File config = new File(fsfs.getDBRoot(), FSFS.PATH_CONFIG);
+            fsfs.close();
+
+            lock(url, "directory/file1");
+
+            TestUtil.writeFileContentsString(config, TestUtil.readFileContentsString(config) + "\n[" + FSFS.LOCKS_SECTION + "]\n" + FSFS.LOCK_STORAGE_OPTION + " = " + FSFS.LOCK_STORAGE_SQLITE + "\n");
+
+            // reading locks doesn't write to the repository, the lock is read from digest files.
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                final SVNLock existingLock = svnRepository.getLock("directory/file1");
+                Assert.assertNotNull(existingLock);
+                Assert.assertEquals(1, svnRepository.getLocks("").length);
+                Assert.assertFalse(new File(locksDirectory, FSFS.LOCKS_DB).exists());
+
+                // the first lock write moves the lock stored in digest files to the database.
+                lock(url, "directory/file2");
+                Assert.assertTrue(new File(locksDirectory, FSFS.LOCKS_DB).isFile());
+                Assert.assertEquals(1, SVNFileListUtil.listFiles(locksDirectory).length);
+                Assert.assertEquals(2, svnRepository.getLocks("").length);
+
+                lock(url, "directory/subdirectory/file3");
+                lock(url, "directory2/file4");
+
+                Assert.assertEquals(4, svnRepository.getLocks("").length);
+                Assert.assertEquals(3, svnRepository.getLocks("directory").length);
+                Assert.assertEquals(1, svnRepository.getLocks("directory/subdirectory").length);
+                Assert.assertEquals(1, svnRepository.getLocks("directory2").length);
+                Assert.assertEquals(1, svnRepository.getLocks("directory/file1").length);
+
+                final Map<String, String> pathsToTokens = new HashMap<String, String>();
+                pathsToTokens.put("directory/file1", existingLock.getID());
+                svnRepository.unlock(pathsToTokens, false, null);
+
+                Assert.assertNull(svnRepository.getLock("directory/file1"));
+                Assert.assertEquals(2, svnRepository.getLocks("directory").length);
+
+                try {
+                    lock(url, "directory/file2");
+                    Assert.fail("An exception should be thrown");
+                } catch (SVNException e) {
+                    //expected
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testLockAndUnlockManyPaths() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLockAndUnlockManyPaths", options);
+        final List<FSHookEvent> postHookEvents = Collections.synchronizedList(new ArrayList<FSHookEvent>());
+        final IFSHook hook = new IFSHook() {
+            public boolean isEnabled(String hookName) {
+                return FSHooks.SVN_REPOS_HOOK_POST_LOCK.equals(hookName) || FSHooks.SVN_REPOS_HOOK_POST_UNLOCK.equals(hookName);
+            }
+
+            public String run(FSHookEvent event) throws SVNException {
+                postHookEvents.add(event);
+                return null;
+            }
+        };
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final int filesCount = 50;
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < filesCount; i++) {
+                commitBuilder.addFile("directory/file" + i);
+            }
+            commitBuilder.commit();
+
+            FSRepositoryFactory.registerHook(hook);
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                final Map<String, Long> pathsToRevisions = new LinkedHashMap<String, Long>();
+                for (int i = 0; i < filesCount; i++) {
+                    pathsToRevisions.put("directory/file" + i, null);
+                }
+                pathsToRevisions.put("directory/missing", null);
+
+                final Map<String, SVNLock> locks = new HashMap<String, SVNLock>();
+                final Map<String, SVNErrorMessage> errors = new HashMap<String, SVNErrorMessage>();
+                final ISVNLockHandler handler = new ISVNLockHandler() {
+                    public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                        handle(path, lock, error);
+                    }
+
+                    public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                        handle(path, lock, error);
+                    }
+
+                    private void handle(String path, SVNLock lock, SVNErrorMessage error) {
+                        if (error != null) {
+                            errors.put(path, error);
+                        } else {
+                            locks.put(path, lock);
+                        }
+                    }
+                };
+                svnRepository.lock(pathsToRevisions, "comment", false, handler);
+
+                Assert.assertEquals(filesCount, locks.size());
+                Assert.assertEquals(1, errors.size());
+                Assert.assertEquals(SVNErrorCode.FS_OUT_OF_DATE, errors.get("/directory/missing").getErrorCode());
+                Assert.assertEquals(filesCount, svnRepository.getLocks("directory").length);
+                Assert.assertEquals(1, postHookEvents.size());
+                Assert.assertEquals(filesCount, postHookEvents.get(0).getPaths().length);
+
+                final Map<String, String> pathsToTokens = new LinkedHashMap<String, String>();
+                for (SVNLock lock : locks.values()) {
+                    pathsToTokens.put(lock.getPath(), lock.getID());
+                }
+                pathsToTokens.put("/directory/file0", "opaquelocktoken:wrong");
+                locks.clear();
+                errors.clear();
+                postHookEvents.clear();
+                svnRepository.unlock(pathsToTokens, false, handler);
+
+                Assert.assertEquals(filesCount - 1, locks.size());
+                Assert.assertEquals(1, errors.size());
+                Assert.assertEquals(1, svnRepository.getLocks("directory").length);
+                Assert.assertEquals(1, postHookEvents.size());
+                Assert.assertEquals(FSHooks.SVN_REPOS_HOOK_POST_UNLOCK, postHookEvents.get(0).getHookName());
+                Assert.assertEquals(filesCount - 1, postHookEvents.get(0).getPaths().length);
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSRepositoryFactory.unregisterHook(hook);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCommitReleasesLocksNotRejectedByHook() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCommitReleasesLocksNotRejectedByHook", options);
+        final IFSHook hook = new IFSHook() {
+            public boolean isEnabled(String hookName) {
+                return FSHooks.SVN_REPOS_HOOK_PRE_UNLOCK.equals(hookName);
+            }
+
+            public String run(FSHookEvent event) throws SVNException {
+                if ("/directory/file1".equals(event.getPaths()[0])) {
+                    SVNErrorManager.error(SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "unlock is rejected"), SVNLogType.FSFS);
+                }
+                return null;
+            }
+        };
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < 3; i++) {
+                commitBuilder.addFile("directory/file" + i);
+            }
+            commitBuilder.commit();
+            for (int i = 0; i < 3; i++) {
+                lock(url, "directory/file" + i);
+            }
+
+            FSRepositoryFactory.registerHook(hook);
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                final Map<String, String> pathsToTokens = new LinkedHashMap<String, String>();
+                for (SVNLock lock : svnRepository.getLocks("directory")) {
+                    pathsToTokens.put(lock.getPath().substring(1), lock.getID());
+                }
+                Assert.assertEquals(3, pathsToTokens.size());
+
+                final ISVNEditor editor = svnRepository.getCommitEditor("message", pathsToTokens, false, null);
+                editor.openRoot(-1);
+                editor.changeDirProperty("property", SVNPropertyValue.create("value"));
+                editor.closeDir();
+                final SVNCommitInfo commitInfo = editor.closeEdit();
+                Assert.assertEquals(2, commitInfo.getNewRevision());
+
+                final SVNLock[] locks = svnRepository.getLocks("directory");
+                Assert.assertEquals(1, locks.length);
+                Assert.assertEquals("/directory/file1", locks[0].getPath());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSRepositoryFactory.unregisterHook(hook);
+            sandbox.dispose();
+        }
+    }
+
+    private void lock(SVNURL url, String path) throws SVNException {
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+        try {
+            final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+            pathsToRevisions.put(path, null);
+            svnRepository.lock(pathsToRevisions, null, false, new ISVNLockHandler() {
+                public void handleLock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                    if (error != null) {
+                        SVNErrorManager.error(error, SVNLogType.CLIENT);
+                    }
+                }
+
+                public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
+                }
+            });
+        } finally {
+            svnRepository.closeSession();
+        }
+    }
+
     private String getTestName() {
         return getClass().getSimpleName();
     }
@@ -19,7 +19,9 @@ import org.tmatesoft.svn.util.SVNLogType;
 import java.io.*;
 import java.net.ServerSocket;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 public class TestUtil {
     public static File createDirectory(File parentPath, String suggestedName) {
@@ -234,4 +236,15 @@ public class TestUtil {
             db.close();
         }
     }
+
+    public static Set<String> getSVNKitThreadPools() {
+        final Set<String> pools = new HashSet<String>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            final int index = thread.getName().indexOf("-svnkit-thread-");
+            if (index > 0) {
+                pools.add(thread.getName().substring(0, index));
+            }
+        }
+        return pools;
+    }
 }